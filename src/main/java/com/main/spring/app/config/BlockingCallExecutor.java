@@ -0,0 +1,235 @@
+package com.main.spring.app.config;
+
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.ThreadManager;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Política única para las llamadas bloqueantes que quedan: las operaciones
+ * {@code *Async} del Admin SDK de Firebase (que bloquean en un hilo del SDK
+ * mientras hacen la petición HTTP) y la lectura/escritura de la caché de
+ * filtros en disco.
+ *
+ * Dos modos ({@code blocking.mode}), para poder comparar rendimiento:
+ * <ul>
+ * <li>{@code bounded}: pool fijo de {@code blocking.max-concurrency} hilos
+ * (por defecto 10 por núcleo).</li>
+ * <li>{@code virtual}: un hilo virtual por tarea; como mucho
+ * {@code blocking.max-concurrency} (por defecto 1000) se ejecutan a la vez y
+ * el resto espera aparcado.</li>
+ * </ul>
+ * En ambos casos caben como mucho {@code blocking.max-queue} tareas en
+ * espera; por encima se rechazan al momento ({@link RejectedExecutionException},
+ * 503 para el cliente) en lugar de acumular memoria y latencia.
+ *
+ * Métricas (tags {@code pool=blocking} y {@code mode}):
+ * {@code blocking.tasks.running}, {@code blocking.tasks.queued},
+ * {@code blocking.tasks.rejected} y {@code blocking.tasks.wait} (tiempo en
+ * cola).
+ */
+@Component
+public class BlockingCallExecutor {
+
+    private static final String POOL = "blocking";
+
+    private final ExecutorService delegate;
+    private final AdmissionExecutor executor;
+    private final Scheduler scheduler;
+
+    public BlockingCallExecutor(MeterRegistry meterRegistry,
+            @Value("${blocking.mode:bounded}") String mode,
+            @Value("${blocking.max-concurrency:0}") int maxConcurrency,
+            @Value("${blocking.max-queue:1000}") int maxQueue) {
+        int concurrency;
+        Semaphore permits;
+        if ("virtual".equals(mode)) {
+            concurrency = maxConcurrency > 0 ? maxConcurrency : 1000;
+            permits = new Semaphore(concurrency);
+            this.delegate = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(POOL + "-vt-", 0).factory());
+        } else if ("bounded".equals(mode)) {
+            concurrency = maxConcurrency > 0 ? maxConcurrency : 10 * Runtime.getRuntime().availableProcessors();
+            // El propio pool limita la concurrencia; su cola la acota la admisión
+            permits = null;
+            this.delegate = Executors.newFixedThreadPool(concurrency,
+                    Thread.ofPlatform().name(POOL + "-", 0).daemon(true).factory());
+        } else {
+            throw new IllegalStateException("blocking.mode debe ser 'bounded' o 'virtual': " + mode);
+        }
+
+        Tags tags = Tags.of("pool", POOL, "mode", mode);
+        Timer wait = Timer.builder("blocking.tasks.wait")
+                .description("Tiempo en cola antes de ejecutarse")
+                .tags(tags)
+                .register(meterRegistry);
+        this.executor = new AdmissionExecutor(delegate, permits, concurrency + maxQueue, wait);
+        this.scheduler = Schedulers.fromExecutorService(executor, POOL);
+
+        Gauge.builder("blocking.tasks.running", executor.running, AtomicInteger::get)
+                .tags(tags)
+                .register(meterRegistry);
+        Gauge.builder("blocking.tasks.queued", executor, AdmissionExecutor::queued)
+                .tags(tags)
+                .register(meterRegistry);
+        FunctionCounter.builder("blocking.tasks.rejected", executor.rejected, AtomicLong::get)
+                .description("Tareas rechazadas por saturación")
+                .tags(tags)
+                .register(meterRegistry);
+
+        System.out.println("Llamadas bloqueantes: modo " + mode + ", concurrencia " + concurrency
+                + ", cola " + maxQueue);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.dispose();
+        delegate.shutdown();
+    }
+
+    /**
+     * @return Scheduler para {@code subscribeOn} de las llamadas bloqueantes.
+     *         Si el pool está saturado la suscripción falla con
+     *         {@link RejectedExecutionException} (503 en
+     *         {@code GlobalExceptionHandler}).
+     */
+    public Scheduler scheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Executor del Admin SDK de Firebase: sus operaciones {@code *Async}
+     * corren en este pool en lugar del pool sin límite que crea el SDK.
+     */
+    public ThreadManager firebaseThreadManager() {
+        ThreadFactory sdkThreads = Thread.ofPlatform().name("firebase-", 0).daemon(true).factory();
+        return new ThreadManager() {
+            @Override
+            protected ExecutorService getExecutor(FirebaseApp app) {
+                return executor;
+            }
+
+            @Override
+            protected void releaseExecutor(FirebaseApp app, ExecutorService executorService) {
+                // Lo cierra este componente, no el SDK
+            }
+
+            @Override
+            protected ThreadFactory getThreadFactory() {
+                return sdkThreads;
+            }
+        };
+    }
+
+    /**
+     * Cuenta las tareas pendientes y en ejecución, y rechaza las que no
+     * caben antes de entregarlas al pool.
+     */
+    private static final class AdmissionExecutor extends AbstractExecutorService {
+
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+        private final int maxInFlight;
+        private final Timer wait;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicLong rejected = new AtomicLong();
+
+        AdmissionExecutor(ExecutorService delegate, Semaphore permits, int maxInFlight, Timer wait) {
+            this.delegate = delegate;
+            this.permits = permits;
+            this.maxInFlight = maxInFlight;
+            this.wait = wait;
+        }
+
+        int queued() {
+            return Math.max(0, inFlight.get() - running.get());
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (inFlight.incrementAndGet() > maxInFlight) {
+                inFlight.decrementAndGet();
+                rejected.incrementAndGet();
+                throw new RejectedExecutionException("Pool " + POOL + " saturado");
+            }
+
+            long submitted = System.nanoTime();
+            try {
+                delegate.execute(() -> {
+                    try {
+                        if (permits != null) {
+                            permits.acquireUninterruptibly();
+                        }
+                        try {
+                            wait.record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+                            running.incrementAndGet();
+                            try {
+                                task.run();
+                            } finally {
+                                running.decrementAndGet();
+                            }
+                        } finally {
+                            if (permits != null) {
+                                permits.release();
+                            }
+                        }
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Pool cerrado
+                inFlight.decrementAndGet();
+                rejected.incrementAndGet();
+                throw e;
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -4,7 +4,14 @@ import com.google.auth.oauth2.GoogleCredentials;
 import com.google.cloud.firestore.Firestore;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
+import com.google.firebase.ImplFirebaseTrampolines;
 import com.google.firebase.auth.FirebaseAuth;
+import com.main.spring.app.interfaces.auth.IdTokenVerifier;
+import com.main.spring.app.security.FirebaseAdminIdTokenVerifier;
+import com.main.spring.app.security.LocalIdTokenVerifier;
+import com.main.spring.app.security.SigningKeySource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
@@ -13,13 +20,14 @@ import org.springframework.core.io.Resource;
 import com.google.firebase.cloud.FirestoreClient;
 import java.io.IOException;
 import java.io.File;
+import java.time.Clock;
 
 @Configuration
 public class FirebaseConfig {
 
     // 1. Bean para inicializar la aplicación de Firebase
     @Bean
-    public FirebaseApp firebaseApp() throws IOException {
+    public FirebaseApp firebaseApp(BlockingCallExecutor blockingCalls) throws IOException {
         Resource resource;
         
         // Intentar primero desde el sistema de archivos (volumen montado en Docker)
@@ -34,6 +42,8 @@ public class FirebaseConfig {
         // Construir opciones con las credenciales
         FirebaseOptions options = FirebaseOptions.builder()
                 .setCredentials(GoogleCredentials.fromStream(resource.getInputStream()))
+                // Las operaciones *Async del SDK bloquean un hilo: que sea del pool acotado
+                .setThreadManager(blockingCalls.firebaseThreadManager())
                 // Aquí puedes configurar DatabaseUrl si usaras Realtime Database
                 .build();
 
@@ -51,6 +61,23 @@ public class FirebaseConfig {
         return FirebaseAuth.getInstance(firebaseApp);
     }
 
+    // Verificación de ID tokens: local (por defecto) o con el Admin SDK
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnProperty(name = "auth.id-token.verifier", havingValue = "local", matchIfMissing = true)
+    public LocalIdTokenVerifier localIdTokenVerifier(FirebaseApp firebaseApp, SigningKeySource signingKeySource,
+            @Value("${firebase.project-id:}") String projectId,
+            @Value("${auth.id-token.clock-skew-seconds:300}") long clockSkewSeconds) {
+        // Sin firebase.project-id, el del service account
+        String resolvedProjectId = projectId.isBlank() ? ImplFirebaseTrampolines.getProjectId(firebaseApp) : projectId;
+        return new LocalIdTokenVerifier(signingKeySource, resolvedProjectId, clockSkewSeconds, Clock.systemUTC());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "auth.id-token.verifier", havingValue = "admin")
+    public IdTokenVerifier firebaseAdminIdTokenVerifier(FirebaseAuth firebaseAuth) {
+        return new FirebaseAdminIdTokenVerifier(firebaseAuth);
+    }
+
     @Bean
     public Firestore firestoreDb(FirebaseApp firebaseApp) {
         // Spring inyecta el FirebaseApp y luego inicializamos el cliente de Firestore.
@@ -15,6 +15,7 @@ import reactor.core.publisher.Mono;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestControllerAdvice
 public class GlobalExceptionHandler {
@@ -65,6 +66,18 @@ public class GlobalExceptionHandler {
         return Mono.just(ResponseEntity.status(ex.getStatusCode()).body(errorResponse));
     }
 
+    // Pool de llamadas bloqueantes saturado (BlockingCallExecutor): reintentable
+    @ExceptionHandler(RejectedExecutionException.class)
+    public Mono<ResponseEntity<ErrorResponse>> handleRejectedExecution(RejectedExecutionException ex) {
+        ErrorResponse errorResponse = ErrorResponse.builder()
+                .status(HttpStatus.SERVICE_UNAVAILABLE.value())
+                .error("Service Unavailable")
+                .message("Servidor saturado, inténtalo de nuevo en unos segundos")
+                .build();
+
+        return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(errorResponse));
+    }
+
     // 2. Método para interceptar errores de validación (@Valid)
     @ExceptionHandler(WebExchangeBindException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
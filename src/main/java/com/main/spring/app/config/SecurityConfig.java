@@ -25,7 +25,8 @@ public class SecurityConfig {
         return http
                 .csrf(ServerHttpSecurity.CsrfSpec::disable)
                 .authorizeExchange(exchanges -> exchanges
-                        .pathMatchers("/api/auth/register", "/api/test/**", "/api/auth/login").permitAll()
+                        .pathMatchers("/api/auth/register", "/api/test/**", "/api/auth/login", "/api/auth/token",
+                                "/api/auth/refresh").permitAll()
                         .pathMatchers("/actuator/health", "/discovery").permitAll() // Permitir health check y discovery sin autenticación
                         .anyExchange().authenticated())
                 .addFilterAt(authenticationWebFilter, SecurityWebFiltersOrder.AUTHENTICATION)
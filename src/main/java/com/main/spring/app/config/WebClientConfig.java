@@ -1,14 +1,29 @@
 package com.main.spring.app.config;
 
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 import java.time.Duration;
 
+/**
+ * Un WebClient por servicio externo, cada uno con su propio pool de
+ * conexiones ({@code http.pool.<fastapi|supabase|firebase>.*}). Así una
+ * ráfaga hacia FastAPI no deja sin conexiones a Supabase ni al login.
+ *
+ * Los pools publican en Micrometer
+ * {@code reactor.netty.connection.provider.*} con la etiqueta {@code name}:
+ * conexiones activas, inactivas, totales, adquisiciones pendientes y el
+ * tiempo de espera para adquirir una conexión
+ * ({@code pending.connections.time}).
+ */
 @Configuration
 public class WebClientConfig {
 
@@ -20,10 +35,27 @@ public class WebClientConfig {
 
     private static final String FIREBASE_AUTH_BASE_URL = "https://identitytoolkit.googleapis.com/v1";
 
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider fastApiConnectionProvider(Environment environment) {
+        // El límite de concurrencia hacia FastAPI llega hasta 64 llamadas
+        return connectionProvider("fastapi", environment, 64);
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider supabaseConnectionProvider(Environment environment) {
+        return connectionProvider("supabase", environment, 32);
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider firebaseConnectionProvider(Environment environment) {
+        return connectionProvider("firebase", environment, 32);
+    }
+
     @Bean(name = "firebaseAuthWebClient")
-    public WebClient firebaseAuthWebClient(WebClient.Builder builder) {
+    public WebClient firebaseAuthWebClient(WebClient.Builder builder, Environment environment,
+            @Qualifier("firebaseConnectionProvider") ConnectionProvider connectionProvider) {
         // Configurar timeout para evitar esperas indefinidas
-        HttpClient httpClient = HttpClient.create()
+        HttpClient httpClient = httpClient("firebase", environment, connectionProvider)
                 .responseTimeout(Duration.ofSeconds(10)); // Timeout de respuesta de 10 segundos
 
         return builder
@@ -34,11 +66,53 @@ public class WebClientConfig {
 
     // 2. WebClient para el Servicio de FastAPI
     @Bean(name = "fastApiWebClient")
-    public WebClient fastApiWebClient(WebClient.Builder builder) {
+    public WebClient fastApiWebClient(WebClient.Builder builder, Environment environment,
+            @Qualifier("fastApiConnectionProvider") ConnectionProvider connectionProvider) {
         return builder
                 .baseUrl(fastApiUrl) // URL base: localhost:8000
-                // Configuramos el buffer grande para la subida o descarga de imágenes
-                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(50 * 1024 * 1024))
+                .clientConnector(new ReactorClientHttpConnector(httpClient("fastapi", environment, connectionProvider)))
+                // Las imágenes se transmiten como DataBuffer sin acumular; el límite
+                // solo aplica a respuestas pequeñas (JSON, mensajes de error)
+                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(2 * 1024 * 1024))
                 .build();
     }
+
+    // 3. WebClient para Supabase Storage (URLs absolutas por proyecto)
+    @Bean(name = "supabaseWebClient")
+    public WebClient supabaseWebClient(WebClient.Builder builder, Environment environment,
+            @Qualifier("supabaseConnectionProvider") ConnectionProvider connectionProvider) {
+        return builder
+                .clientConnector(new ReactorClientHttpConnector(httpClient("supabase", environment, connectionProvider)))
+                .build();
+    }
+
+    private static ConnectionProvider connectionProvider(String name, Environment environment,
+            int defaultMaxConnections) {
+        String prefix = "http.pool." + name + ".";
+        return ConnectionProvider.builder(name)
+                .maxConnections(environment.getProperty(prefix + "max-connections", Integer.class,
+                        defaultMaxConnections))
+                // Peticiones que esperan conexión libre; por encima fallan al momento
+                .pendingAcquireMaxCount(environment.getProperty(prefix + "pending-acquire-max-count", Integer.class,
+                        defaultMaxConnections * 4))
+                .pendingAcquireTimeout(Duration.ofMillis(environment.getProperty(
+                        prefix + "pending-acquire-timeout-ms", Long.class, 10_000L)))
+                // Cerrar conexiones inactivas antes de que lo haga el servidor o un proxy
+                .maxIdleTime(Duration.ofMillis(environment.getProperty(
+                        prefix + "max-idle-time-ms", Long.class, 30_000L)))
+                .maxLifeTime(Duration.ofMillis(environment.getProperty(
+                        prefix + "max-life-time-ms", Long.class, 300_000L)))
+                .evictInBackground(Duration.ofMillis(environment.getProperty(
+                        prefix + "evict-in-background-ms", Long.class, 30_000L)))
+                .metrics(true)
+                .build();
+    }
+
+    private static HttpClient httpClient(String name, Environment environment,
+            ConnectionProvider connectionProvider) {
+        boolean keepAlive = environment.getProperty("http.pool." + name + ".keep-alive", Boolean.class, true);
+        return HttpClient.create(connectionProvider)
+                .keepAlive(keepAlive)
+                .option(ChannelOption.SO_KEEPALIVE, keepAlive);
+    }
 }
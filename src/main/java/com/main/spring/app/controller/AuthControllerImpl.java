@@ -8,13 +8,17 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
+import com.main.spring.app.dto.FirebaseTokenResponse;
 import com.main.spring.app.interfaces.auth.AuthService;
 import com.main.spring.app.model.auth.LoginRequest;
+import com.main.spring.app.model.auth.RefreshTokenRequest;
 import com.main.spring.app.model.auth.RegisterRequest;
 
 import jakarta.validation.Valid;
 import reactor.core.publisher.Mono;
 
+import java.util.concurrent.RejectedExecutionException;
+
 @RestController
 @RequestMapping("/api/auth")
 public class AuthControllerImpl {
@@ -31,12 +35,25 @@ public class AuthControllerImpl {
 
         return authService.registerUser(request)
                 .onErrorResume(e -> {
+                    if (e instanceof ResponseStatusException) {
+                        return Mono.error(e);
+                    }
+                    // Pool de llamadas bloqueantes lleno (Admin SDK): reintentable
+                    if (isSaturated(e)) {
+                        return Mono.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                                "Servidor saturado, inténtalo de nuevo en unos segundos", e));
+                    }
+
                     String message = e.getMessage();
                     if (message != null && message.contains("EMAIL_ALREADY_EXISTS")) {
                         return Mono.error(
                                 new ResponseStatusException(HttpStatus.CONFLICT, "Email ya registrado en Firebase."));
                     }
-                    
+                    if (message != null && message.contains("USERNAME_ALREADY_EXISTS")) {
+                        return Mono.error(
+                                new ResponseStatusException(HttpStatus.CONFLICT, "Nombre de usuario no disponible."));
+                    }
+
                     Throwable cause = e.getCause();
                     if (cause != null) {
                         String causeMessage = cause.getMessage();       
@@ -72,32 +89,67 @@ public class AuthControllerImpl {
 
         System.out.println("Petición de login recibida para: " + request.getEmail());
         return authService.loginUser(request)
+                .onErrorResume(e -> Mono.error(loginError(e)));
+    }
+
+    // Igual que /login, pero con idToken, refreshToken, expiresIn y localId
+    @PostMapping("/token")
+    public Mono<FirebaseTokenResponse> loginUserWithTokens(@Valid @RequestBody LoginRequest request) {
+
+        System.out.println("Petición de login (tokens) recibida para: " + request.getEmail());
+        return authService.loginUserWithTokens(request)
+                .onErrorResume(e -> Mono.error(loginError(e)));
+    }
+
+    // Renueva el ID token sin contraseña; devuelve la misma forma que /token
+    @PostMapping("/refresh")
+    public Mono<FirebaseTokenResponse> refreshToken(@Valid @RequestBody RefreshTokenRequest request) {
+
+        return authService.refreshToken(request)
                 .onErrorResume(e -> {
                     String message = e.getMessage();
 
-                    if (message != null && message.contains("CREDENCIALES_INVALIDAS")) {
-                        return Mono
-                                .error(new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Credenciales inválidas."));
-                    }
-
-                    // Errores de conexión con Firebase
-                    if (message != null && message.contains("ERROR_CONEXION_FIREBASE")) {
-                        System.err.println("Error de conexión con Firebase: " + message);
-                        return Mono.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
-                                "No se puede conectar con el servicio de autenticación. Verifica tu conexión a internet."));
+                    if (message != null && message.contains("REFRESH_TOKEN_INVALIDO")) {
+                        return Mono.error(new ResponseStatusException(HttpStatus.UNAUTHORIZED,
+                                "Refresh token inválido o expirado. Inicia sesión de nuevo."));
                     }
+                    return Mono.error(loginError(e));
+                });
+    }
 
-                    // Errores de timeout
-                    if (message != null && message.contains("ERROR_TIMEOUT_FIREBASE")) {
-                        System.err.println("Timeout al conectar con Firebase: " + message);
-                        return Mono.error(new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT,
-                                "El servicio de autenticación no respondió a tiempo. Intenta nuevamente."));
-                    }
+    private static boolean isSaturated(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof RejectedExecutionException) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-                    // Si el error es un fallo de WebClient o un 500
-                    System.err.println("Error al contactar servicio o interno: " + message); // Log de debug
-                    return Mono.error(new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
-                            "Error interno del servidor al procesar login."));
-                });
+    private static ResponseStatusException loginError(Throwable e) {
+        String message = e.getMessage();
+
+        if (message != null && message.contains("CREDENCIALES_INVALIDAS")) {
+            return new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Credenciales inválidas.");
+        }
+
+        // Errores de conexión con Firebase
+        if (message != null && message.contains("ERROR_CONEXION_FIREBASE")) {
+            System.err.println("Error de conexión con Firebase: " + message);
+            return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "No se puede conectar con el servicio de autenticación. Verifica tu conexión a internet.");
+        }
+
+        // Errores de timeout
+        if (message != null && message.contains("ERROR_TIMEOUT_FIREBASE")) {
+            System.err.println("Timeout al conectar con Firebase: " + message);
+            return new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT,
+                    "El servicio de autenticación no respondió a tiempo. Intenta nuevamente.");
+        }
+
+        // Si el error es un fallo de WebClient o un 500
+        System.err.println("Error al contactar servicio o interno: " + message); // Log de debug
+        return new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+                "Error interno del servidor al procesar login.");
     }
 }
@@ -0,0 +1,37 @@
+package com.main.spring.app.controller;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.main.spring.app.dto.PageResponse;
+import com.main.spring.app.interfaces.feed.FeedService;
+import com.main.spring.app.schema.PostsSchema;
+
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequestMapping("/api/feed")
+public class FeedController {
+
+    private final FeedService feedService;
+
+    public FeedController(FeedService feedService) {
+        this.feedService = feedService;
+    }
+
+    @GetMapping
+    public Mono<PageResponse<PostsSchema>> getFeed(
+            @RequestParam(value = "limit", defaultValue = "20") int limit, // Tamaño de página
+            @RequestParam(value = "cursor", required = false) String cursor, // nextCursor de la página anterior
+            Authentication authentication // JWT validado
+    ) {
+        // 1. Extraer UID del JWT
+        String userId = (String) authentication.getPrincipal();
+
+        // 2. Delegar al servicio
+        return feedService.getFeed(userId, limit, cursor);
+    }
+}
@@ -1,27 +1,49 @@
 package com.main.spring.app.controller;
 
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.server.ResponseStatusException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.main.spring.app.dto.BatchItemResult;
+import com.main.spring.app.model.PipelineStep;
 import com.main.spring.app.service.ImageProcessingService;
+import com.main.spring.app.service.cpu.CpuFilters;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api/process")
 public class ImageProcessingController {
 
         private final ImageProcessingService imageProcessingService;
+        private final ObjectMapper objectMapper;
 
-        public ImageProcessingController(ImageProcessingService imageProcessingService) {
+        public ImageProcessingController(ImageProcessingService imageProcessingService, ObjectMapper objectMapper) {
                 this.imageProcessingService = imageProcessingService;
+                this.objectMapper = objectMapper;
         }
 
         @PostMapping(value = "/canny", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.IMAGE_PNG_VALUE)
-        public Mono<ResponseEntity<byte[]>> processCanny(
+        public ResponseEntity<Flux<DataBuffer>> processCanny(
+                        @RequestHeader(value = HttpHeaders.CONTENT_LENGTH, required = false) Long contentLength,
                         @RequestPart("file") FilePart file,
                         @RequestPart(value = "kernel_size", required = false) String kernelSize,
                         @RequestPart(value = "sigma", required = false) String sigma,
@@ -29,66 +51,54 @@ public class ImageProcessingController {
                         @RequestPart(value = "high_threshold", required = false) String highThreshold,
                         @RequestPart(value = "use_auto", required = false) String useAuto) {
 
-                Integer kSize = kernelSize != null ? Integer.parseInt(kernelSize) : 5;
+                Integer kSize = kernelSize(kernelSize, 5);
                 Float s = sigma != null ? Float.parseFloat(sigma) : 1.4f;
                 Boolean auto = useAuto != null ? Boolean.parseBoolean(useAuto) : false;
 
-                return imageProcessingService.processCanny(file, kSize, s, lowThreshold, highThreshold, auto)
-                                .map(bytes -> ResponseEntity
-                                                .ok()
-                                                .contentType(MediaType.IMAGE_PNG)
-                                                .body(bytes));
+                return png(imageProcessingService.processCanny(file, contentLength, kSize, s, lowThreshold, highThreshold, auto));
         }
 
         @PostMapping(value = "/gaussian", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.IMAGE_PNG_VALUE)
-        public Mono<ResponseEntity<byte[]>> processGaussian(
+        public ResponseEntity<Flux<DataBuffer>> processGaussian(
+                        @RequestHeader(value = HttpHeaders.CONTENT_LENGTH, required = false) Long contentLength,
                         @RequestPart("file") FilePart file,
                         @RequestPart(value = "kernel_size", required = false) String kernelSize,
                         @RequestPart(value = "sigma", required = false) String sigma,
                         @RequestPart(value = "use_auto", required = false) String useAuto) {
 
-                Integer kSize = kernelSize != null ? Integer.parseInt(kernelSize) : 5;
+                Integer kSize = kernelSize(kernelSize, 5);
                 Float s = sigma != null ? Float.parseFloat(sigma) : 1.4f;
                 Boolean auto = useAuto != null ? Boolean.parseBoolean(useAuto) : false;
 
-                return imageProcessingService.processGaussian(file, kSize, s, auto)
-                                .map(bytes -> ResponseEntity
-                                                .ok()
-                                                .contentType(MediaType.IMAGE_PNG)
-                                                .body(bytes));
+                return png(imageProcessingService.processGaussian(file, contentLength, kSize, s, auto));
         }
 
         @PostMapping(value = "/negative", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.IMAGE_PNG_VALUE)
-        public Mono<ResponseEntity<byte[]>> processNegative(
+        public ResponseEntity<Flux<DataBuffer>> processNegative(
+                        @RequestHeader(value = HttpHeaders.CONTENT_LENGTH, required = false) Long contentLength,
                         @RequestPart("file") FilePart file) {
 
-                return imageProcessingService.processNegative(file)
-                                .map(bytes -> ResponseEntity
-                                                .ok()
-                                                .contentType(MediaType.IMAGE_PNG)
-                                                .body(bytes));
+                return png(imageProcessingService.processNegative(file, contentLength));
         }
 
         @PostMapping(value = "/emboss", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.IMAGE_PNG_VALUE)
-        public Mono<ResponseEntity<byte[]>> processEmboss(
+        public ResponseEntity<Flux<DataBuffer>> processEmboss(
+                        @RequestHeader(value = HttpHeaders.CONTENT_LENGTH, required = false) Long contentLength,
                         @RequestPart("file") FilePart file,
                         @RequestPart(value = "kernel_size", required = false) String kernelSize,
                         @RequestPart(value = "bias_value", required = false) String biasValue,
                         @RequestPart(value = "use_auto", required = false) String useAuto) {
 
-                Integer kSize = kernelSize != null ? Integer.parseInt(kernelSize) : 3;
+                Integer kSize = kernelSize(kernelSize, 3);
                 Integer bias = biasValue != null ? Integer.parseInt(biasValue) : 128;
                 Boolean auto = useAuto != null ? Boolean.parseBoolean(useAuto) : false;
 
-                return imageProcessingService.processEmboss(file, kSize, bias, auto)
-                                .map(bytes -> ResponseEntity
-                                                .ok()
-                                                .contentType(MediaType.IMAGE_PNG)
-                                                .body(bytes));
+                return png(imageProcessingService.processEmboss(file, contentLength, kSize, bias, auto));
         }
 
         @PostMapping(value = "/watermark", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.IMAGE_PNG_VALUE)
-        public Mono<ResponseEntity<byte[]>> processWatermark(
+        public ResponseEntity<Flux<DataBuffer>> processWatermark(
+                        @RequestHeader(value = HttpHeaders.CONTENT_LENGTH, required = false) Long contentLength,
                         @RequestPart("file") FilePart file,
                         @RequestPart(value = "scale", required = false) String scale,
                         @RequestPart(value = "transparency", required = false) String transparency,
@@ -98,15 +108,12 @@ public class ImageProcessingController {
                 Float tr = transparency != null ? Float.parseFloat(transparency) : 0.3f;
                 Float sp = spacing != null ? Float.parseFloat(spacing) : 0.5f;
 
-                return imageProcessingService.processWatermark(file, sc, tr, sp)
-                                .map(bytes -> ResponseEntity
-                                                .ok()
-                                                .contentType(MediaType.IMAGE_PNG)
-                                                .body(bytes));
+                return png(imageProcessingService.processWatermark(file, contentLength, sc, tr, sp));
         }
 
         @PostMapping(value = "/ripple", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.IMAGE_PNG_VALUE)
-        public Mono<ResponseEntity<byte[]>> processRipple(
+        public ResponseEntity<Flux<DataBuffer>> processRipple(
+                        @RequestHeader(value = HttpHeaders.CONTENT_LENGTH, required = false) Long contentLength,
                         @RequestPart("file") FilePart file,
                         @RequestPart(value = "edge_threshold", required = false) String edgeThreshold,
                         @RequestPart(value = "color_levels", required = false) String colorLevels,
@@ -116,21 +123,143 @@ public class ImageProcessingController {
                 Integer levels = colorLevels != null ? Integer.parseInt(colorLevels) : 8;
                 Float sat = saturation != null ? Float.parseFloat(saturation) : 1.2f;
 
-                return imageProcessingService.processRipple(file, edge, levels, sat)
-                                .map(bytes -> ResponseEntity
-                                                .ok()
-                                                .contentType(MediaType.IMAGE_PNG)
-                                                .body(bytes));
+                return png(imageProcessingService.processRipple(file, contentLength, edge, levels, sat));
         }
 
         @PostMapping(value = "/collage", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.IMAGE_PNG_VALUE)
-        public Mono<ResponseEntity<byte[]>> processCollage(
+        public ResponseEntity<Flux<DataBuffer>> processCollage(
+                        @RequestHeader(value = HttpHeaders.CONTENT_LENGTH, required = false) Long contentLength,
                         @RequestPart("file") FilePart file) {
 
-                return imageProcessingService.processCollage(file)
-                                .map(bytes -> ResponseEntity
-                                                .ok()
-                                                .contentType(MediaType.IMAGE_PNG)
-                                                .body(bytes));
+                return png(imageProcessingService.processCollage(file, contentLength));
+        }
+
+        /**
+         * Varios filtros sobre una sola subida. {@code steps} es un JSON con
+         * los pasos en orden, ej:
+         * {@code [{"filter":"gaussian","params":{"sigma":"2"}},{"filter":"emboss"}]}
+         */
+        @PostMapping(value = "/pipeline", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.IMAGE_PNG_VALUE)
+        public ResponseEntity<Flux<DataBuffer>> processPipeline(
+                        @RequestPart("file") FilePart file,
+                        @RequestPart("steps") String steps) {
+
+                List<PipelineStep> parsedSteps;
+                try {
+                        parsedSteps = objectMapper.readValue(steps, new TypeReference<List<PipelineStep>>() {
+                        });
+                } catch (JsonProcessingException e) {
+                        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Formato de pasos inválido");
+                }
+
+                return png(imageProcessingService.processPipeline(file, parsedSteps));
+        }
+
+        /**
+         * Un mismo filtro sobre varias imágenes ({@code files}). {@code spec} es
+         * un JSON con el filtro y sus parámetros, ej:
+         * {@code {"filter":"emboss","params":{"bias_value":"100"}}}.
+         *
+         * Responde {@code multipart/mixed}: una parte por imagen en orden de
+         * finalización, con {@code X-Batch-Index} (posición en la petición) y
+         * {@code X-Batch-Status}. Las imágenes con error llevan un JSON con el
+         * motivo en lugar del PNG.
+         */
+        @PostMapping(value = "/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = "multipart/mixed")
+        public ResponseEntity<Flux<DataBuffer>> processBatch(
+                        @RequestPart("files") Flux<FilePart> files,
+                        @RequestPart("spec") String spec) {
+
+                PipelineStep parsedSpec;
+                try {
+                        parsedSpec = objectMapper.readValue(spec, PipelineStep.class);
+                } catch (JsonProcessingException e) {
+                        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Formato de spec inválido");
+                }
+
+                String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+                Flux<DataBuffer> body = imageProcessingService.processBatch(files, parsedSpec)
+                                .map(result -> batchPart(result, boundary))
+                                .concatWith(Mono.fromSupplier(() -> DefaultDataBufferFactory.sharedInstance
+                                                .wrap(("--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII))));
+
+                return ResponseEntity
+                                .ok()
+                                .contentType(new MediaType("multipart", "mixed", Map.of("boundary", boundary)))
+                                .body(body);
+        }
+
+        private DataBuffer batchPart(BatchItemResult result, String boundary) {
+                HttpHeaders headers = new HttpHeaders();
+                headers.setContentDisposition(ContentDisposition.attachment()
+                                .filename(partFilename(result.getFilename()))
+                                .build());
+                headers.set("X-Batch-Index", String.valueOf(result.getIndex()));
+                headers.set("X-Batch-Status", String.valueOf(result.getStatus()));
+
+                byte[] content;
+                if (result.getImage() != null) {
+                        headers.setContentType(MediaType.IMAGE_PNG);
+                        content = result.getImage();
+                } else {
+                        headers.setContentType(MediaType.APPLICATION_JSON);
+                        content = errorJson(result);
+                }
+
+                StringBuilder head = new StringBuilder("--").append(boundary).append("\r\n");
+                headers.forEach((name, values) -> values
+                                .forEach(value -> head.append(name).append(": ").append(value).append("\r\n")));
+                head.append("\r\n");
+
+                byte[] headBytes = head.toString().getBytes(StandardCharsets.UTF_8);
+                byte[] part = new byte[headBytes.length + content.length + 2];
+                System.arraycopy(headBytes, 0, part, 0, headBytes.length);
+                System.arraycopy(content, 0, part, headBytes.length, content.length);
+                part[part.length - 2] = '\r';
+                part[part.length - 1] = '\n';
+                return DefaultDataBufferFactory.sharedInstance.wrap(part);
+        }
+
+        // El nombre llega del cliente y puede traer CR/LF ya decodificados de un
+        // filename* (RFC 5987): se quitan para no partir la cabecera de la parte
+        private static String partFilename(String filename) {
+                String safe = filename != null ? filename.codePoints()
+                                .filter(c -> !Character.isISOControl(c))
+                                .collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append)
+                                .toString().strip() : "";
+                return safe.isEmpty() ? "image" : safe;
+        }
+
+        private byte[] errorJson(BatchItemResult result) {
+                try {
+                        return objectMapper.writeValueAsBytes(Map.of(
+                                        "index", result.getIndex(),
+                                        "status", result.getStatus(),
+                                        "message", result.getMessage() != null ? result.getMessage() : ""));
+                } catch (JsonProcessingException e) {
+                        throw new IllegalStateException(e);
+                }
+        }
+
+        // Mismo límite que el motor en CPU: un kernel mayor no cambia el resultado
+        // y dispara el coste por píxel
+        private static Integer kernelSize(String value, int defaultValue) {
+                try {
+                        int kernelSize = value != null ? Integer.parseInt(value.trim()) : defaultValue;
+                        if (kernelSize >= 1 && kernelSize <= CpuFilters.MAX_KERNEL_SIZE) {
+                                return kernelSize;
+                        }
+                } catch (NumberFormatException e) {
+                        // 400 abajo
+                }
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Valor inválido para kernel_size");
+        }
+
+        // La imagen se escribe al cliente a medida que llega de FastAPI
+        private static ResponseEntity<Flux<DataBuffer>> png(Flux<DataBuffer> body) {
+                return ResponseEntity
+                                .ok()
+                                .contentType(MediaType.IMAGE_PNG)
+                                .body(body);
         }
 }
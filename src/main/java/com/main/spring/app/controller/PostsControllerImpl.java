@@ -8,18 +8,19 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
+import com.main.spring.app.dto.PageResponse;
 import com.main.spring.app.interfaces.posts.PostService;
 import com.main.spring.app.schema.PostsSchema;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.Authentication;
 
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import java.util.Map;
 
@@ -57,10 +58,14 @@ public class PostsControllerImpl {
     }
 
     @GetMapping("/by-author/{authorUid}") // 👈 Endpoint GET con Path Variable
-    public Flux<PostsSchema> getPostsByAuthor(@PathVariable String authorUid) {
-        
+    public Mono<PageResponse<PostsSchema>> getPostsByAuthor(
+            @PathVariable String authorUid,
+            @RequestParam(value = "limit", defaultValue = "20") int limit, // Tamaño de página
+            @RequestParam(value = "cursor", required = false) String cursor // nextCursor de la página anterior
+    ) {
+
         // El Controller solo delega la consulta al Service
-        return postService.getPostsByAuthor(authorUid);
+        return postService.getPostsByAuthor(authorUid, limit, cursor);
     }
 
     @DeleteMapping("/{postId}") // 👈 Endpoint DELETE con Path Variable
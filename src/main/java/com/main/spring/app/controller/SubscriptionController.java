@@ -1,13 +1,17 @@
 package com.main.spring.app.controller;
 
+import com.main.spring.app.dto.PageResponse;
+import com.main.spring.app.dto.UserSearchResponse;
 import com.main.spring.app.interfaces.subscriptions.SubscriptionService;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -48,5 +52,22 @@ public class SubscriptionController {
         // 2. Delegar al servicio
         return subscriptionService.unsubscribe(followerUid, userId);
     }
-}
 
+    @GetMapping("/{userId}/following")
+    public Mono<PageResponse<UserSearchResponse>> getFollowing(
+            @PathVariable String userId,
+            @RequestParam(value = "limit", defaultValue = "20") int limit, // Tamaño de página
+            @RequestParam(value = "cursor", required = false) String cursor // nextCursor de la página anterior
+    ) {
+        return subscriptionService.getFollowing(userId, limit, cursor);
+    }
+
+    @GetMapping("/{userId}/followers")
+    public Mono<PageResponse<UserSearchResponse>> getFollowers(
+            @PathVariable String userId,
+            @RequestParam(value = "limit", defaultValue = "20") int limit, // Tamaño de página
+            @RequestParam(value = "cursor", required = false) String cursor // nextCursor de la página anterior
+    ) {
+        return subscriptionService.getFollowers(userId, limit, cursor);
+    }
+}
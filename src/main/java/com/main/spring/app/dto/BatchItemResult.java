@@ -0,0 +1,20 @@
+package com.main.spring.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Resultado de una imagen de {@code /api/process/batch}. Si {@code status}
+ * no es 200, {@code image} es null y {@code message} explica el error.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchItemResult {
+    private int index;
+    private String filename;
+    private int status;
+    private String message;
+    private byte[] image;
+}
@@ -0,0 +1,22 @@
+package com.main.spring.app.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Sobre de paginación por cursor.
+ *
+ * {@code nextCursor} es opaco para el cliente: basta con reenviarlo en la
+ * siguiente petición. Es {@code null} cuando no hay más resultados.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PageResponse<T> {
+
+    private List<T> items;
+    private String nextCursor;
+}
@@ -0,0 +1,21 @@
+package com.main.spring.app.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.Data;
+
+/**
+ * Respuesta de {@code securetoken.googleapis.com/v1/token} al renovar con un
+ * refresh token (campos en snake_case).
+ */
+@Data
+public class SecureTokenResponse {
+    @JsonProperty("id_token")
+    private String idToken;
+    @JsonProperty("refresh_token")
+    private String refreshToken; // Puede rotar: el cliente debe guardar el nuevo
+    @JsonProperty("expires_in")
+    private String expiresIn;
+    @JsonProperty("user_id")
+    private String userId;
+}
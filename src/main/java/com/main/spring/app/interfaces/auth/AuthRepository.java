@@ -1,5 +1,6 @@
 package com.main.spring.app.interfaces.auth;
 
+import com.main.spring.app.dto.FirebaseTokenResponse;
 import com.main.spring.app.model.auth.LoginRequest;
 import com.main.spring.app.model.auth.RegisterRequest;
 
@@ -10,5 +11,9 @@ public interface AuthRepository {
     
     Mono<String> loginUser(LoginRequest request);
 
+    Mono<FirebaseTokenResponse> signInWithPassword(LoginRequest request);
+
+    Mono<FirebaseTokenResponse> refreshToken(String refreshToken);
+
     Mono<String> getUidFromToken(String token);
 }
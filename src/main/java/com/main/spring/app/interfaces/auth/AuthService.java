@@ -1,6 +1,8 @@
 package com.main.spring.app.interfaces.auth;
 
+import com.main.spring.app.dto.FirebaseTokenResponse;
 import com.main.spring.app.model.auth.LoginRequest;
+import com.main.spring.app.model.auth.RefreshTokenRequest;
 import com.main.spring.app.model.auth.RegisterRequest;
 
 import reactor.core.publisher.Mono;
@@ -9,4 +11,6 @@ public interface AuthService {
     
     Mono<String> registerUser(RegisterRequest request);
     Mono<String> loginUser(LoginRequest request);
+    Mono<FirebaseTokenResponse> loginUserWithTokens(LoginRequest request);
+    Mono<FirebaseTokenResponse> refreshToken(RefreshTokenRequest request);
 }
@@ -0,0 +1,19 @@
+package com.main.spring.app.interfaces.auth;
+
+import com.main.spring.app.security.VerifiedIdToken;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Verificación de ID tokens de Firebase. Implementaciones:
+ * {@code LocalIdTokenVerifier} (por defecto, sin llamadas bloqueantes) y
+ * {@code FirebaseAdminIdTokenVerifier} ({@code auth.id-token.verifier=admin}).
+ */
+public interface IdTokenVerifier {
+
+    /**
+     * @return el token verificado; error {@code BadCredentialsException} si
+     *         la firma o algún claim no es válido.
+     */
+    Mono<VerifiedIdToken> verify(String idToken);
+}
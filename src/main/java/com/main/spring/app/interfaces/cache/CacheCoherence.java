@@ -0,0 +1,9 @@
+package com.main.spring.app.interfaces.cache;
+
+import reactor.core.publisher.Mono;
+
+public interface CacheCoherence {
+    boolean isEnabled();
+
+    Mono<Void> publishInvalidation(String collection, String documentId);
+}
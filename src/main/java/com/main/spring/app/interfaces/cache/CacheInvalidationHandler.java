@@ -0,0 +1,9 @@
+package com.main.spring.app.interfaces.cache;
+
+public interface CacheInvalidationHandler {
+    String collection();
+
+    void invalidate(String documentId);
+
+    void invalidateAll();
+}
@@ -0,0 +1,11 @@
+package com.main.spring.app.interfaces.counters;
+
+import reactor.core.publisher.Mono;
+
+public interface CounterAggregator {
+    boolean isEnabled();
+
+    Mono<Void> add(String postId, String field, long delta);
+
+    Mono<Void> flush();
+}
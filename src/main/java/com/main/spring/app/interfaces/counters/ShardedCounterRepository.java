@@ -0,0 +1,24 @@
+package com.main.spring.app.interfaces.counters;
+
+import com.google.cloud.firestore.UpdateBuilder;
+import com.main.spring.app.schema.PostsSchema;
+
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface ShardedCounterRepository {
+    boolean isEnabled();
+
+    Mono<Void> increment(String postId, String field, int delta);
+
+    void increment(UpdateBuilder<?> writer, String postId, String field, long delta);
+
+    void reportFailure(String postId, Throwable error);
+
+    Mono<Boolean> rollUp(String postId);
+
+    Mono<PostsSchema> withShardTotals(PostsSchema post);
+
+    Mono<List<PostsSchema>> withShardTotals(List<PostsSchema> posts);
+}
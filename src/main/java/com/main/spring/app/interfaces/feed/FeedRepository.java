@@ -0,0 +1,16 @@
+package com.main.spring.app.interfaces.feed;
+
+import com.main.spring.app.dto.PageResponse;
+import com.main.spring.app.schema.PostsSchema;
+
+import reactor.core.publisher.Mono;
+
+public interface FeedRepository {
+    Mono<Integer> fanOutPost(String postId, int maxFollowers, int batchSize);
+
+    Mono<PageResponse<PostsSchema>> getFeed(String userId, int pageSize, String cursor);
+
+    Mono<Void> removeAuthorFromTimeline(String userId, String authorUid);
+
+    Mono<Integer> removePostFromTimelines(String postId, String authorUid, int batchSize);
+}
@@ -0,0 +1,16 @@
+package com.main.spring.app.interfaces.feed;
+
+import com.main.spring.app.dto.PageResponse;
+import com.main.spring.app.schema.PostsSchema;
+
+import reactor.core.publisher.Mono;
+
+public interface FeedService {
+    Mono<PageResponse<PostsSchema>> getFeed(String userId, int pageSize, String cursor);
+
+    void fanOutPostAsync(String postId);
+
+    void removeAuthorFromFeedAsync(String userId, String authorUid);
+
+    void removePostFromFeedsAsync(String postId, String authorUid);
+}
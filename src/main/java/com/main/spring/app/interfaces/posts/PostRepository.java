@@ -2,9 +2,9 @@ package com.main.spring.app.interfaces.posts;
 
 import org.springframework.http.codec.multipart.FilePart;
 
+import com.main.spring.app.dto.PageResponse;
 import com.main.spring.app.schema.PostsSchema;
 
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 public interface PostRepository {
@@ -14,7 +14,7 @@ public interface PostRepository {
 
     Mono<Void> updateCommentCount(String postId, int increment);
 
-    Flux<PostsSchema> getPostsByAuthor(String authorUid);
+    Mono<PageResponse<PostsSchema>> getPostsByAuthor(String authorUid, int pageSize, String cursor);
 
     Mono<PostsSchema> getPostById(String postId);
 
@@ -2,14 +2,14 @@ package com.main.spring.app.interfaces.posts;
 
 import org.springframework.http.codec.multipart.FilePart;
 
+import com.main.spring.app.dto.PageResponse;
 import com.main.spring.app.schema.PostsSchema;
 
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 public interface PostService {
     Mono<String> createPost(FilePart filePart, String caption, String authorUid);
-    Flux<PostsSchema> getPostsByAuthor(String authorUid);
+    Mono<PageResponse<PostsSchema>> getPostsByAuthor(String authorUid, int pageSize, String cursor);
     Mono<String> deletePost(String postId, String authorUid);
     Mono<String> updateCaption(String postId, String caption, String authorUid);
 }
@@ -1,13 +1,14 @@
 package com.main.spring.app.interfaces.subscriptions;
 
-import reactor.core.publisher.Flux;
+import com.main.spring.app.dto.PageResponse;
+
 import reactor.core.publisher.Mono;
 
 public interface SubscriptionRepository {
     Mono<Void> subscribe(String followerUid, String followingUid);
     Mono<Void> unsubscribe(String followerUid, String followingUid);
-    Flux<String> getFollowing(String userId);
-    Flux<String> getFollowers(String userId);
+    Mono<PageResponse<String>> getFollowing(String userId, int pageSize, String cursor);
+    Mono<PageResponse<String>> getFollowers(String userId, int pageSize, String cursor);
     Mono<Boolean> isSubscribed(String followerUid, String followingUid);
 }
 
@@ -0,0 +1,13 @@
+package com.main.spring.app.interfaces.users;
+
+import com.main.spring.app.schema.UserSchema;
+
+public interface UserProfileCache {
+    UserSchema getById(String userId);
+
+    UserSchema getByEmail(String email);
+
+    void put(UserSchema user);
+
+    void invalidate(String userId);
+}
@@ -2,6 +2,9 @@ package com.main.spring.app.interfaces.users;
 
 import com.main.spring.app.dto.UserSearchResponse;
 import org.springframework.http.codec.multipart.FilePart;
+
+import java.util.Collection;
+
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -10,6 +13,8 @@ public interface UserRepository {
 
     Mono<com.main.spring.app.schema.UserSchema> getUserById(String userId);
 
+    Flux<com.main.spring.app.schema.UserSchema> getUsersByIds(Collection<String> userIds);
+
     Mono<Void> updatePhotoUrl(String userId, String photoUrl);
 
     Mono<Void> updateBio(String userId, String bio);
@@ -0,0 +1,15 @@
+package com.main.spring.app.model;
+
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * Un paso de {@code /api/process/pipeline}: filtro y sus parámetros, con los
+ * mismos nombres que el endpoint individual del filtro.
+ */
+@Data
+public class PipelineStep {
+    private String filter;
+    private Map<String, String> params;
+}
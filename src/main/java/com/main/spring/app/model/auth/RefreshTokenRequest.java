@@ -0,0 +1,12 @@
+package com.main.spring.app.model.auth;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.Data;
+
+@Data
+public class RefreshTokenRequest {
+
+    @NotBlank(message = "El refresh token no puede estar vacío")
+    private String refreshToken;
+
+}
@@ -1,88 +1,175 @@
 package com.main.spring.app.repository;
 
 import com.main.spring.app.dto.FirebaseTokenResponse;
+import com.main.spring.app.dto.SecureTokenResponse;
 import com.main.spring.app.interfaces.auth.AuthRepository;
+import com.main.spring.app.interfaces.auth.IdTokenVerifier;
+import com.main.spring.app.repository.support.FirestoreErrors;
+import com.main.spring.app.repository.support.ReactiveFirestore;
+import com.main.spring.app.repository.support.Saga;
+import com.main.spring.app.repository.support.SearchTokens;
 import com.google.firebase.auth.FirebaseAuthException;
 import com.main.spring.app.model.auth.RegisterRequest;
 import com.main.spring.app.schema.UserSchema;
+import com.main.spring.app.security.VerifiedIdToken;
 import com.main.spring.app.model.auth.LoginRequest;
+import com.google.cloud.firestore.DocumentReference;
 import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteResult;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.UserRecord;
 
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 import org.springframework.http.MediaType;
+import reactor.core.Exceptions;
 import reactor.core.publisher.Mono;
 
-import java.util.Objects;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Map;
 
 @Repository
 public class AuthRepositoryImpl implements AuthRepository {
 
+    private static final String SECURE_TOKEN_URL = "https://securetoken.googleapis.com/v1/token";
+
     private final FirebaseAuth firebaseAuth;
     private final WebClient webClient;
     private final String firebaseApiKey;
     private final Firestore firestoreDb;
+    private final IdTokenVerifier idTokenVerifier;
 
     public AuthRepositoryImpl(
             FirebaseAuth firebaseAuth,
             @Qualifier("firebaseAuthWebClient") WebClient firebaseAuthWebClient,
             @Value("${firebase.api.key}") String firebaseApiKey,
-            Firestore firestoreDb) {
+            Firestore firestoreDb,
+            IdTokenVerifier idTokenVerifier) {
 
         this.firebaseAuth = firebaseAuth;
         this.webClient = firebaseAuthWebClient;
         this.firebaseApiKey = firebaseApiKey;
         this.firestoreDb = firestoreDb;
+        this.idTokenVerifier = idTokenVerifier;
     }
 
+    /**
+     * Registro como saga de pasos independientes que se lanzan a la vez:
+     * <ol>
+     * <li>crear el usuario en Firebase Auth,</li>
+     * <li>reservar el username en {@code Usernames} ({@code create}: falla si
+     * ya existe),</li>
+     * <li>crear el perfil en {@code Users}, con su índice de búsqueda.</li>
+     * </ol>
+     * El UID se genera aquí (id automático de Firestore, válido como UID de
+     * Firebase) para que ningún paso espere a otro: la latencia es la del paso
+     * más lento. Si alguno falla, se borra lo que los demás hayan creado y no
+     * quedan cuentas huérfanas.
+     */
     @Override
     public Mono<String> registerUser(RegisterRequest request) {
 
-        return Mono.fromCallable(() -> {
-            try {
-                UserRecord.CreateRequest createRequest = new UserRecord.CreateRequest()
-                        .setEmail(request.getUsr_email())
-                        .setPassword(request.getUsr_password())
-                        .setDisplayName(request.getUsr_username());
+        return Mono.defer(() -> {
+            String userUid = firestoreDb.collection("Users").document().getId();
+            DocumentReference profileRef = firestoreDb.collection("Users").document(userUid);
+            DocumentReference usernameRef = firestoreDb.collection("Usernames")
+                    .document(usernameKey(request.getUsr_username()));
+
+            UserRecord.CreateRequest createRequest = new UserRecord.CreateRequest()
+                    .setUid(userUid)
+                    .setEmail(request.getUsr_email())
+                    .setPassword(request.getUsr_password())
+                    .setDisplayName(request.getUsr_username());
+
+            UserSchema userProfile = new UserSchema(
+                    request.getUsr_username(),
+                    request.getUsr_email(),
+                    request.getUsr_photoUrl(),
+                    request.getUsr_bio());
+            userProfile.setUsr_searchTokens(
+                    SearchTokens.forUser(request.getUsr_username(), request.getUsr_email()));
+
+            Saga saga = new Saga("registro " + userUid);
 
-                UserRecord userRecord = firebaseAuth.createUser(createRequest);
-                String userUid = Objects.requireNonNull(userRecord.getUid(),
-                        "UID de Firebase no puede ser nulo después de la creación.");
+            Mono<UserRecord> createUser = saga.step(
+                    ReactiveFirestore.toMono(() -> firebaseAuth.createUserAsync(createRequest)),
+                    () -> ReactiveFirestore.toMono(() -> firebaseAuth.deleteUserAsync(userUid)));
 
-                UserSchema userProfile = new UserSchema(
-                        request.getUsr_username(),
-                        request.getUsr_email(),
-                        request.getUsr_photoUrl(),
-                        request.getUsr_bio());
+            Mono<WriteResult> reserveUsername = saga.step(
+                    ReactiveFirestore.toMono(() -> usernameRef.create(Map.of("uid", userUid)))
+                            .onErrorMap(e -> FirestoreErrors.hasCode(e, "ALREADY_EXISTS"),
+                                    e -> new RuntimeException("USERNAME_ALREADY_EXISTS")),
+                    () -> ReactiveFirestore.toMono(() -> usernameRef.delete()).then());
 
-                firestoreDb.collection("Users").document(userUid).set(userProfile).get();
+            Mono<WriteResult> createProfile = saga.step(
+                    ReactiveFirestore.toMono(() -> profileRef.create(userProfile)),
+                    () -> ReactiveFirestore.toMono(() -> profileRef.delete()).then());
+
+            // whenDelayError: todos los pasos terminan antes de compensar
+            return saga.run(Mono.whenDelayError(createUser, reserveUsername, createProfile)
+                    .thenReturn("User registered successfully"));
+        }).onErrorMap(AuthRepositoryImpl::registrationError);
+    }
+
+    /**
+     * Con varios pasos fallidos a la vez, el email duplicado tiene prioridad
+     * sobre el username duplicado y este sobre cualquier otro error.
+     */
+    private static Throwable registrationError(Throwable error) {
+        List<Throwable> errors = Exceptions.unwrapMultiple(error);
 
-                return "User registered successfully";
-            } catch (FirebaseAuthException e) {
-                String errorCodeStr = e.getErrorCode() != null ? e.getErrorCode().name() : null;
+        for (Throwable e : errors) {
+            if (e instanceof FirebaseAuthException firebaseEx) {
+                String errorCodeStr = firebaseEx.getErrorCode() != null ? firebaseEx.getErrorCode().name() : null;
                 if (errorCodeStr != null && (errorCodeStr.equals("ALREADY_EXISTS") ||
                         errorCodeStr.equals("EMAIL_EXISTS"))) {
-                    throw new RuntimeException("EMAIL_ALREADY_EXISTS");
+                    return new RuntimeException("EMAIL_ALREADY_EXISTS");
                 }
-
-                throw new RuntimeException("Error de Firebase: " + e.getMessage(), e);
-            } catch (Exception e) {
-                if (e.getCause() != null) {
-                    System.out.println("Causa: " + e.getCause().getClass().getName());
-                    System.out.println("Causa mensaje: " + e.getCause().getMessage());
-                }
-                throw e;
             }
-        });
+        }
+        for (Throwable e : errors) {
+            if ("USERNAME_ALREADY_EXISTS".equals(e.getMessage())) {
+                return e;
+            }
+        }
+
+        Throwable e = errors.get(0);
+        if (e instanceof FirebaseAuthException) {
+            return new RuntimeException("Error de Firebase: " + e.getMessage(), e);
+        }
+        System.err.println("ERROR: Fallo al registrar usuario. Causa: "
+                + (e.getCause() != null ? e.getCause() : e));
+        return e;
+    }
+
+    /**
+     * Id del documento de reserva: el username normalizado (sin tildes ni
+     * mayúsculas, ver {@link SearchTokens#normalize}), codificado para que
+     * '/' o '.' no formen rutas.
+     */
+    static String usernameKey(String username) {
+        return URLEncoder.encode(SearchTokens.normalize(username), StandardCharsets.UTF_8)
+                .replace(".", "%2E");
     }
 
     @Override
     public Mono<String> loginUser(LoginRequest request) {
+        return signInWithPassword(request)
+                .map(response -> response.getIdToken());
+    }
+
+    /**
+     * Login con email y contraseña. Devuelve la respuesta completa de
+     * identitytoolkit, refresh token incluido, para que el cliente renueve
+     * con {@link #refreshToken(String)} sin volver a enviar la contraseña.
+     */
+    @Override
+    public Mono<FirebaseTokenResponse> signInWithPassword(LoginRequest request) {
 
         Map<String, String> body = Map.of(
                 "email", request.getEmail(),
@@ -104,27 +191,60 @@ public class AuthRepositoryImpl implements AuthRepository {
 
                 .bodyToMono(FirebaseTokenResponse.class)
 
-                .map(response -> response.getIdToken())
-                
                 // Manejo de errores de conexión/DNS
-                .onErrorResume(e -> {
-                    String errorMessage = e.getMessage();
-                    if (errorMessage != null) {
-                        // Error de DNS o conexión
-                        if (errorMessage.contains("Failed to resolve") || 
-                            errorMessage.contains("Name resolution") ||
-                            errorMessage.contains("Connection refused") ||
-                            errorMessage.contains("Network is unreachable")) {
-                            throw new RuntimeException("ERROR_CONEXION_FIREBASE: No se puede conectar con Firebase. Verifica tu conexión a internet.");
-                        }
-                        // Error de timeout
-                        if (errorMessage.contains("timeout") || errorMessage.contains("Timeout")) {
-                            throw new RuntimeException("ERROR_TIMEOUT_FIREBASE: La conexión con Firebase tardó demasiado. Intenta nuevamente.");
-                        }
-                    }
-                    // Re-lanzar otros errores
-                    throw new RuntimeException("ERROR_FIREBASE: " + errorMessage, e);
-                });
+                .onErrorResume(AuthRepositoryImpl::firebaseConnectionError);
+    }
+
+    /**
+     * Renueva el ID token con el refresh token (API securetoken de Google).
+     * Es una sola llamada ligera, sin contraseña. La respuesta se devuelve con
+     * la misma forma que el login; el refresh token puede cambiar.
+     */
+    @Override
+    public Mono<FirebaseTokenResponse> refreshToken(String refreshToken) {
+
+        return webClient.post()
+                // URL absoluta: el WebClient apunta a identitytoolkit
+                .uri(SECURE_TOKEN_URL + "?key={key}", firebaseApiKey)
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .body(BodyInserters.fromFormData("grant_type", "refresh_token")
+                        .with("refresh_token", refreshToken))
+                .retrieve()
+
+                // Token caducado, revocado, usuario deshabilitado o borrado
+                .onStatus(s -> s.is4xxClientError(),
+                        response -> Mono.error(new RuntimeException("REFRESH_TOKEN_INVALIDO")))
+
+                .bodyToMono(SecureTokenResponse.class)
+                .map(response -> {
+                    FirebaseTokenResponse tokens = new FirebaseTokenResponse();
+                    tokens.setIdToken(response.getIdToken());
+                    tokens.setRefreshToken(response.getRefreshToken());
+                    tokens.setExpiresIn(response.getExpiresIn());
+                    tokens.setLocalId(response.getUserId());
+                    return tokens;
+                })
+
+                .onErrorResume(AuthRepositoryImpl::firebaseConnectionError);
+    }
+
+    private static <T> Mono<T> firebaseConnectionError(Throwable e) {
+        String errorMessage = e.getMessage();
+        if (errorMessage != null) {
+            // Error de DNS o conexión
+            if (errorMessage.contains("Failed to resolve") ||
+                    errorMessage.contains("Name resolution") ||
+                    errorMessage.contains("Connection refused") ||
+                    errorMessage.contains("Network is unreachable")) {
+                throw new RuntimeException("ERROR_CONEXION_FIREBASE: No se puede conectar con Firebase. Verifica tu conexión a internet.");
+            }
+            // Error de timeout
+            if (errorMessage.contains("timeout") || errorMessage.contains("Timeout")) {
+                throw new RuntimeException("ERROR_TIMEOUT_FIREBASE: La conexión con Firebase tardó demasiado. Intenta nuevamente.");
+            }
+        }
+        // Re-lanzar otros errores
+        throw new RuntimeException("ERROR_FIREBASE: " + errorMessage, e);
     }
 
     /**
@@ -136,17 +256,13 @@ public class AuthRepositoryImpl implements AuthRepository {
      */
     @Override
     public Mono<String> getUidFromToken(String token) {
-        // Envolvemos la llamada bloqueante en un Mono (crucial para WebFlux)
-        return Mono.fromCallable(() -> {
-            try {
-                // El Admin SDK verifica la firma del token con Google
-                return firebaseAuth.verifyIdToken(token).getUid();
-            } catch (FirebaseAuthException e) {
-                // Lanza error si el token expiró o es inválido
-                throw new org.springframework.security.authentication.BadCredentialsException(
-                        "Token inválido o expirado");
-            }
-        });
+        // Verificación no bloqueante (ver IdTokenVerifier)
+        return idTokenVerifier.verify(token)
+                .map(VerifiedIdToken::uid)
+                .onErrorMap(org.springframework.security.authentication.BadCredentialsException.class,
+                        // Lanza error si el token expiró o es inválido
+                        e -> new org.springframework.security.authentication.BadCredentialsException(
+                                "Token inválido o expirado", e));
     }
 
 }
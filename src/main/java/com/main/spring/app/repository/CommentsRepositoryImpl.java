@@ -3,6 +3,7 @@ package com.main.spring.app.repository;
 import com.google.cloud.firestore.DocumentReference;
 import com.google.cloud.firestore.Firestore;
 import com.main.spring.app.interfaces.comments.CommentsRepository;
+import com.main.spring.app.repository.support.ReactiveFirestore;
 import com.main.spring.app.schema.CommenSchema;
 
 import reactor.core.publisher.Mono;
@@ -23,7 +24,7 @@ public class CommentsRepositoryImpl implements CommentsRepository {
     @Override
     public Mono<String> createComment(String postId, String authorUid, String text) {
 
-        return Mono.fromCallable(() -> {
+        return Mono.defer(() -> {
 
             // 1. Definir la referencia a la subcolección 'Comments' (Firestore generará el
             // ID)
@@ -40,12 +41,11 @@ public class CommentsRepositoryImpl implements CommentsRepository {
                     postId // com_posUid
             );
 
-            // 3. GUARDAR EL OBJETO POJO COMPLETO EN FIRESTORE (Bloqueante)
-            commentsCollectionRef.set(commentData).get();
-
+            // 3. GUARDAR EL OBJETO POJO COMPLETO EN FIRESTORE (no bloqueante)
             // 4. Retornamos el ID del documento recién creado
             String commentId = commentsCollectionRef.getId();
-            return commentId;
+            return ReactiveFirestore.toMono(() -> commentsCollectionRef.set(commentData))
+                    .thenReturn(commentId);
 
         }).onErrorMap(e -> {
             System.err.println("Error de Firestore al crear comentario: " + e.getMessage());
@@ -55,14 +55,14 @@ public class CommentsRepositoryImpl implements CommentsRepository {
 
     @Override
     public Mono<CommenSchema> getCommentById(String postId, String commentId) {
-        return Mono.fromCallable(() -> {
+        return Mono.defer(() -> {
             DocumentReference commentRef = firestoreDb.collection("Posts")
                     .document(Objects.requireNonNull(postId, "postId no puede ser null"))
                     .collection("Comments")
                     .document(Objects.requireNonNull(commentId, "commentId no puede ser null"));
 
-            var documentSnapshot = commentRef.get().get();
-            
+            return ReactiveFirestore.toMono(commentRef::get);
+        }).mapNotNull(documentSnapshot -> {
             if (!documentSnapshot.exists()) {
                 return null;
             }
@@ -76,15 +76,14 @@ public class CommentsRepositoryImpl implements CommentsRepository {
 
     @Override
     public Mono<Void> deleteComment(String postId, String commentId) {
-        return Mono.fromCallable(() -> {
+        return Mono.defer(() -> {
             DocumentReference commentRef = firestoreDb.collection("Posts")
                     .document(Objects.requireNonNull(postId, "postId no puede ser null"))
                     .collection("Comments")
                     .document(Objects.requireNonNull(commentId, "commentId no puede ser null"));
 
             // Eliminar el documento de Firestore
-            commentRef.delete().get();
-            return null;
+            return ReactiveFirestore.toMono(commentRef::delete);
         }).onErrorMap(e -> {
             System.err.println("Error de Firestore al eliminar comentario: " + e.getMessage());
             return new RuntimeException("FIRESTORE_DELETE_COMMENT_FAILED", e);
@@ -0,0 +1,312 @@
+package com.main.spring.app.repository;
+
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteBatch;
+import com.main.spring.app.interfaces.counters.CounterAggregator;
+import com.main.spring.app.interfaces.counters.ShardedCounterRepository;
+import com.main.spring.app.repository.support.FirestoreErrors;
+import com.main.spring.app.repository.support.ReactiveFirestore;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Agregador write-behind de los contadores de posts.
+ *
+ * Con {@code counters.write-behind.enabled=true}, cada like/comentario suma
+ * su delta en memoria (un {@link ConcurrentHashMap} por post y campo, sin
+ * locks globales) y se responde al cliente sin escribir en Firestore. Cada
+ * {@code flush-interval-ms}, o en cuanto hay {@code flush-threshold} contadores
+ * pendientes, los deltas se vuelcan en {@link WriteBatch}: 1000 likes de un
+ * post en el mismo intervalo se convierten en un único
+ * {@code FieldValue.increment(1000)}.
+ *
+ * La memoria está acotada por {@code max-pending} contadores: si el buffer
+ * está lleno, el delta de un contador nuevo se escribe directamente y se
+ * fuerza un volcado. Los deltas de una escritura fallida vuelven al buffer
+ * para reintentarse, salvo que sean de un contador nuevo y el buffer siga
+ * lleno: entonces se descartan y se cuentan en
+ * {@code counters.writebehind.dropped} (el like ya está registrado: no se le
+ * devuelve error al cliente). Las comprobaciones no son atómicas, así que
+ * con muchos hilos a la vez el buffer puede pasar el límite en unos pocos
+ * contadores. Al apagar la instancia se vuelca todo lo pendiente.
+ *
+ * Si los contadores distribuidos están activos, el volcado escribe en los
+ * shards del post en lugar del documento.
+ */
+@Repository
+public class CounterAggregatorImpl implements CounterAggregator {
+
+    // Límite de Firestore: 500 escrituras por lote. Con shards, un post puede
+    // generar dos escrituras (likes y comentarios).
+    private static final int MAX_POSTS_PER_BATCH = 250;
+
+    private record CounterKey(String postId, String field) {
+    }
+
+    // Delta neto acumulado y número de eventos que lo forman
+    private record Pending(long delta, long events) {
+        Pending plus(Pending other) {
+            return new Pending(delta + other.delta, events + other.events);
+        }
+    }
+
+    private final Firestore firestoreDb;
+    private final ShardedCounterRepository shardedCounters;
+    private final boolean enabled;
+    private final Duration flushInterval;
+    private final int flushThreshold;
+    private final int maxPending;
+
+    private final Map<CounterKey, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicLong bufferedDeltas = new AtomicLong();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    private final Timer flushTimer;
+    private final Counter batchWrites;
+    private final Counter directWrites;
+    private final Counter droppedDeltas;
+
+    private Disposable flushTask;
+
+    public CounterAggregatorImpl(Firestore firestoreDb, ShardedCounterRepository shardedCounters,
+            MeterRegistry meterRegistry,
+            @Value("${counters.write-behind.enabled:false}") boolean enabled,
+            @Value("${counters.write-behind.flush-interval-ms:1000}") long flushIntervalMs,
+            @Value("${counters.write-behind.flush-threshold:1000}") int flushThreshold,
+            @Value("${counters.write-behind.max-pending:10000}") int maxPending) {
+        this.firestoreDb = firestoreDb;
+        this.shardedCounters = shardedCounters;
+        this.enabled = enabled;
+        this.flushInterval = Duration.ofMillis(flushIntervalMs);
+        this.maxPending = Math.max(1, maxPending);
+        this.flushThreshold = Math.max(1, Math.min(flushThreshold, this.maxPending));
+
+        Gauge.builder("counters.writebehind.buffered.deltas", bufferedDeltas, AtomicLong::get)
+                .description("Likes/comentarios acumulados pendientes de volcar")
+                .register(meterRegistry);
+        Gauge.builder("counters.writebehind.buffered.counters", pending, Map::size)
+                .description("Contadores (post y campo) con deltas pendientes")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("counters.writebehind.flush")
+                .description("Duración de cada volcado a Firestore")
+                .register(meterRegistry);
+        this.batchWrites = Counter.builder("counters.writebehind.batches")
+                .description("Lotes escritos en Firestore")
+                .register(meterRegistry);
+        this.directWrites = Counter.builder("counters.writebehind.direct.writes")
+                .description("Deltas escritos sin agregar por buffer lleno")
+                .register(meterRegistry);
+        this.droppedDeltas = Counter.builder("counters.writebehind.dropped")
+                .description("Likes/comentarios descartados al fallar su escritura con el buffer lleno")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void startFlush() {
+        if (!enabled) {
+            return;
+        }
+        flushTask = Flux.interval(flushInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> flush())
+                .subscribe();
+    }
+
+    @PreDestroy
+    void stopFlush() {
+        if (flushTask != null) {
+            flushTask.dispose();
+        }
+        // Volcado final: no espera al flag de volcado en curso, cada volcado
+        // escribe solo los deltas que retiró del buffer
+        if (enabled) {
+            writePending().block(Duration.ofSeconds(10));
+            if (!pending.isEmpty()) {
+                System.err.println("ADVERTENCIA: Se apagó la instancia con " + pending.size()
+                        + " contadores sin volcar.");
+            }
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public Mono<Void> add(String postId, String field, long delta) {
+        return Mono.defer(() -> {
+            CounterKey key = new CounterKey(Objects.requireNonNull(postId, "postId no puede ser null"), field);
+
+            // Buffer lleno: el contador nuevo se escribe directamente
+            if (pending.size() >= maxPending && !pending.containsKey(key)) {
+                triggerFlush();
+                directWrites.increment();
+                return write(Map.of(postId, Map.of(field, delta)))
+                        .onErrorResume(e -> {
+                            requeue(postId, Map.of(field, new Pending(delta, 1)), e);
+                            return Mono.empty();
+                        });
+            }
+
+            // merge es atómico por clave: no se pierden deltas concurrentes
+            pending.merge(key, new Pending(delta, 1), Pending::plus);
+            bufferedDeltas.incrementAndGet();
+
+            if (pending.size() >= flushThreshold) {
+                triggerFlush();
+            }
+            return Mono.empty();
+        });
+    }
+
+    @Override
+    public Mono<Void> flush() {
+        return Mono.defer(() -> {
+            // Un solo volcado a la vez; los disparos concurrentes se ignoran
+            if (!flushing.compareAndSet(false, true)) {
+                return Mono.empty();
+            }
+            return writePending().doFinally(signal -> flushing.set(false));
+        });
+    }
+
+    private void triggerFlush() {
+        if (!flushing.get()) {
+            flush().subscribe();
+        }
+    }
+
+    private Mono<Void> writePending() {
+        return Mono.defer(() -> {
+            Map<String, Map<String, Pending>> deltasByPost = drain();
+            if (deltasByPost.isEmpty()) {
+                return Mono.empty();
+            }
+
+            long start = System.nanoTime();
+            return Flux.fromIterable(deltasByPost.entrySet())
+                    .buffer(MAX_POSTS_PER_BATCH)
+                    .concatMap(this::writeChunk)
+                    .then()
+                    .doFinally(signal -> flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    /**
+     * Retira del buffer todos los deltas pendientes, agrupados por post. Los
+     * deltas netos en cero (ej: like y unlike) no generan escritura.
+     */
+    private Map<String, Map<String, Pending>> drain() {
+        Map<String, Map<String, Pending>> deltasByPost = new HashMap<>();
+
+        for (CounterKey key : pending.keySet()) {
+            Pending removed = pending.remove(key);
+            if (removed == null) {
+                continue;
+            }
+            bufferedDeltas.addAndGet(-removed.events());
+            if (removed.delta() != 0) {
+                deltasByPost.computeIfAbsent(key.postId(), id -> new HashMap<>())
+                        .put(key.field(), removed);
+            }
+        }
+        return deltasByPost;
+    }
+
+    private Mono<Void> writeChunk(List<Map.Entry<String, Map<String, Pending>>> chunk) {
+        Map<String, Map<String, Long>> deltasByPost = new HashMap<>();
+        chunk.forEach(entry -> deltasByPost.put(entry.getKey(), deltasOf(entry.getValue())));
+
+        return write(deltasByPost)
+                .onErrorResume(e -> {
+                    // Un post borrado invalida todo el lote: se reintenta post a post
+                    System.err.println("ERROR FIRESTORE: Fallo al volcar lote de contadores. Causa: "
+                            + e.getMessage());
+                    return Flux.fromIterable(chunk)
+                            .concatMap(entry -> write(Map.of(entry.getKey(), deltasOf(entry.getValue())))
+                                    .onErrorResume(postError -> {
+                                        requeue(entry.getKey(), entry.getValue(), postError);
+                                        return Mono.empty();
+                                    }))
+                            .then();
+                });
+    }
+
+    private Mono<Void> write(Map<String, Map<String, Long>> deltasByPost) {
+        return Mono.defer(() -> {
+            WriteBatch batch = firestoreDb.batch();
+
+            deltasByPost.forEach((postId, deltas) -> {
+                if (shardedCounters.isEnabled()) {
+                    deltas.forEach((field, delta) -> shardedCounters.increment(batch, postId, field, delta));
+                    return;
+                }
+                DocumentReference postRef = firestoreDb.collection("Posts").document(postId);
+                Map<String, Object> update = new HashMap<>();
+                deltas.forEach((field, delta) -> update.put(field, FieldValue.increment(delta)));
+                batch.update(postRef, update);
+            });
+
+            return ReactiveFirestore.toMono(batch::commit)
+                    .doOnSuccess(result -> batchWrites.increment())
+                    .then();
+        });
+    }
+
+    private static Map<String, Long> deltasOf(Map<String, Pending> pendingByField) {
+        Map<String, Long> deltas = new HashMap<>();
+        pendingByField.forEach((field, fieldPending) -> deltas.put(field, fieldPending.delta()));
+        return deltas;
+    }
+
+    /**
+     * Devuelve al buffer los deltas de un post que no se pudieron escribir,
+     * con su número de eventos original para que el gauge no se desvíe. No
+     * añade contadores nuevos por encima de {@code max-pending}.
+     */
+    private void requeue(String postId, Map<String, Pending> deltas, Throwable error) {
+        // El post ya no existe: sus deltas se descartan
+        if (FirestoreErrors.hasCode(error, "NOT_FOUND")) {
+            System.err.println("ADVERTENCIA: Post " + postId + " no encontrado, se descartan sus contadores.");
+            return;
+        }
+        System.err.println("ERROR FIRESTORE: Fallo al volcar contadores del post " + postId
+                + ", se reintentará. Causa: " + error.getMessage());
+        deltas.forEach((field, fieldPending) -> {
+            CounterKey key = new CounterKey(postId, field);
+            // Con el buffer lleno solo se suman deltas a contadores ya presentes
+            if (pending.size() >= maxPending && !pending.containsKey(key)) {
+                droppedDeltas.increment(fieldPending.events());
+                System.err.println("ERROR: Buffer de contadores lleno, se descartan " + fieldPending.events()
+                        + " eventos de " + field + " del post " + postId);
+                return;
+            }
+            pending.merge(key, fieldPending, Pending::plus);
+            bufferedDeltas.addAndGet(fieldPending.events());
+        });
+    }
+}
@@ -0,0 +1,452 @@
+package com.main.spring.app.repository;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.WriteBatch;
+import com.main.spring.app.dto.PageResponse;
+import com.main.spring.app.interfaces.counters.ShardedCounterRepository;
+import com.main.spring.app.interfaces.feed.FeedRepository;
+import com.main.spring.app.repository.support.PageCursor;
+import com.main.spring.app.repository.support.ReactiveFirestore;
+import com.main.spring.app.schema.PostsSchema;
+import com.main.spring.app.schema.TimelineSchema;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import org.springframework.stereotype.Repository;
+
+/**
+ * Feed basado en timelines por usuario (fan-out-on-write).
+ *
+ * Al publicar, el post se copia como referencia a Users/{follower}/Timeline.
+ * Los autores con demasiados seguidores se registran en FanoutOnReadAuthors y
+ * sus posts se leen al consultar el feed (fan-out-on-read): la arista
+ * Users/{follower}/Following/{author} lleva {@code sub_fanoutOnRead}, así el
+ * feed solo consulta los autores de ese tipo que sigue el usuario.
+ */
+@Repository
+public class FeedRepositoryImpl implements FeedRepository {
+
+    private static final int MAX_IN_CLAUSE = 30; // Límite de valores en whereIn de Firestore
+
+    private final Firestore firestoreDb;
+    private final ShardedCounterRepository shardedCounters;
+
+    public FeedRepositoryImpl(Firestore firestoreDb, ShardedCounterRepository shardedCounters) {
+        this.firestoreDb = firestoreDb;
+        this.shardedCounters = shardedCounters;
+    }
+
+    @Override
+    public Mono<Integer> fanOutPost(String postId, int maxFollowers, int batchSize) {
+        return Mono.defer(() -> {
+            DocumentReference postRef = firestoreDb.collection("Posts")
+                    .document(Objects.requireNonNull(postId, "postId no puede ser null"));
+
+            return ReactiveFirestore.toMono(postRef::get);
+        }).filter(DocumentSnapshot::exists).flatMap(postSnapshot -> {
+            PostsSchema post = Objects.requireNonNull(postSnapshot.toObject(PostsSchema.class));
+            String authorUid = post.getPos_authorUid();
+            TimelineSchema entry = new TimelineSchema(authorUid, post.getPos_timestamp());
+
+            CollectionReference followersRef = firestoreDb.collection("Users")
+                    .document(authorUid)
+                    .collection("Followers");
+
+            // 1. El autor también ve su propio post en su feed
+            Mono<Void> ownTimeline = writeTimelineEntries(List.of(authorUid), postId, entry);
+
+            // 2. Contar seguidores (agregación, sin leer los documentos)
+            return ownTimeline.then(ReactiveFirestore.toMono(() -> followersRef.count().get()))
+                    .flatMap(count -> {
+                        if (count.getCount() > maxFollowers) {
+                            // Cuenta "celebridad": sus seguidores leerán sus posts al consultar el feed
+                            return switchToFanoutOnRead(authorUid, followersRef, batchSize).thenReturn(0);
+                        }
+
+                        // 3. Recorrer los seguidores por páginas y escribir en lotes
+                        return forEachFollowerPage(followersRef, batchSize, null,
+                                followerIds -> writeTimelineEntries(followerIds, postId, entry));
+                    });
+        }).onErrorMap(e -> {
+            System.err.println("Error de Firestore en fan-out del post " + postId + ": " + e.getMessage());
+            return new RuntimeException("FIRESTORE_FANOUT_FAILED", e);
+        });
+    }
+
+    /**
+     * Pasa al autor a fan-out-on-read: marca la arista Following de cada
+     * seguidor y después registra al autor en FanoutOnReadAuthors. La marca
+     * del autor va al final: si se corta a medias, el siguiente post lo repite.
+     */
+    private Mono<Void> switchToFanoutOnRead(String authorUid, CollectionReference followersRef, int batchSize) {
+        DocumentReference markerRef = firestoreDb.collection("FanoutOnReadAuthors").document(authorUid);
+
+        return ReactiveFirestore.toMono(markerRef::get)
+                .flatMap(marker -> {
+                    // Los autores registrados antes de marcar las aristas no tienen far_followersFlagged
+                    if (Boolean.TRUE.equals(marker.getBoolean("far_followersFlagged"))) {
+                        return Mono.empty();
+                    }
+
+                    Map<String, Object> fanoutOnRead = Map.of(
+                            "far_timestamp", Timestamp.now(),
+                            "far_followersFlagged", true);
+                    return forEachFollowerPage(followersRef, batchSize, null,
+                            followerIds -> flagFollowingEdges(followerIds, authorUid))
+                            .doOnNext(flagged -> System.out.println("LOG: Autor " + authorUid
+                                    + " pasa a fan-out-on-read (" + flagged + " seguidores)"))
+                            .then(ReactiveFirestore.toMono(() -> markerRef.set(fanoutOnRead)))
+                            .then();
+                });
+    }
+
+    private Mono<Void> flagFollowingEdges(List<String> followerIds, String authorUid) {
+        return Mono.defer(() -> {
+            DocumentReference[] edgeRefs = followerIds.stream()
+                    .map(followerId -> followingEdge(followerId, authorUid))
+                    .toArray(DocumentReference[]::new);
+
+            // Solo las aristas que existen: update no crea seguimientos fantasma
+            return ReactiveFirestore.toMono(() -> firestoreDb.getAll(edgeRefs))
+                    .flatMap(snapshots -> {
+                        WriteBatch batch = firestoreDb.batch();
+                        int updates = 0;
+                        for (DocumentSnapshot snapshot : snapshots) {
+                            if (snapshot.exists()) {
+                                batch.update(snapshot.getReference(), "sub_fanoutOnRead", true);
+                                updates++;
+                            }
+                        }
+                        return updates == 0 ? Mono.<Void>empty() : ReactiveFirestore.toMono(batch::commit).then();
+                    });
+        });
+    }
+
+    /**
+     * Recorre los seguidores del autor por páginas de {@code batchSize} IDs y
+     * aplica {@code write} a cada página, una tras otra.
+     *
+     * @return Número de seguidores recorridos.
+     */
+    private Mono<Integer> forEachFollowerPage(CollectionReference followersRef, int batchSize,
+            String lastFollowerId, Function<List<String>, Mono<Void>> write) {
+
+        Query query = followersRef
+                .orderBy(FieldPath.documentId())
+                .select(FieldPath.documentId()) // Solo necesitamos los IDs
+                .limit(batchSize);
+        if (lastFollowerId != null) {
+            query = query.startAfter(lastFollowerId);
+        }
+
+        Query pageQuery = query;
+        return ReactiveFirestore.toMono(pageQuery::get)
+                .flatMap(snapshot -> {
+                    List<String> followerIds = snapshot.getDocuments().stream()
+                            .map(QueryDocumentSnapshot::getId)
+                            .toList();
+                    if (followerIds.isEmpty()) {
+                        return Mono.just(0);
+                    }
+
+                    Mono<Void> pageWrite = write.apply(followerIds);
+                    if (followerIds.size() < batchSize) {
+                        return pageWrite.thenReturn(followerIds.size());
+                    }
+
+                    // Página completa: puede haber más seguidores
+                    String nextStart = followerIds.get(followerIds.size() - 1);
+                    return pageWrite.then(forEachFollowerPage(followersRef, batchSize, nextStart, write))
+                            .map(visited -> visited + followerIds.size());
+                });
+    }
+
+    private Mono<Void> writeTimelineEntries(Collection<String> userIds, String postId, TimelineSchema entry) {
+        return Mono.defer(() -> {
+            WriteBatch batch = firestoreDb.batch();
+            for (String userId : userIds) {
+                batch.set(timelineOf(userId).document(postId), entry);
+            }
+            return ReactiveFirestore.toMono(batch::commit).then();
+        });
+    }
+
+    private Mono<Void> deletePostEntries(Collection<String> userIds, String postId) {
+        return Mono.defer(() -> {
+            WriteBatch batch = firestoreDb.batch();
+            for (String userId : userIds) {
+                batch.delete(timelineOf(userId).document(postId));
+            }
+            return ReactiveFirestore.toMono(batch::commit).then();
+        });
+    }
+
+    /**
+     * Borra el post de los timelines a los que se repartió. Si el autor ya es
+     * fan-out-on-read no se recorren sus seguidores: las entradas de sus posts
+     * antiguos se limpian al leer el feed (ver {@link #buildPage}).
+     */
+    @Override
+    public Mono<Integer> removePostFromTimelines(String postId, String authorUid, int batchSize) {
+        return Mono.defer(() -> {
+            Objects.requireNonNull(postId, "postId no puede ser null");
+            CollectionReference followersRef = firestoreDb.collection("Users")
+                    .document(Objects.requireNonNull(authorUid, "authorUid no puede ser null"))
+                    .collection("Followers");
+
+            Mono<Void> ownTimeline = deletePostEntries(List.of(authorUid), postId);
+
+            return ownTimeline
+                    .then(ReactiveFirestore.toMono(() -> firestoreDb.collection("FanoutOnReadAuthors")
+                            .document(authorUid)
+                            .get()))
+                    .flatMap(marker -> Boolean.TRUE.equals(marker.getBoolean("far_followersFlagged"))
+                            ? Mono.just(0)
+                            : forEachFollowerPage(followersRef, batchSize, null,
+                                    followerIds -> deletePostEntries(followerIds, postId)));
+        }).onErrorMap(e -> {
+            System.err.println("Error de Firestore al quitar el post " + postId + " de los timelines: "
+                    + e.getMessage());
+            return new RuntimeException("FIRESTORE_TIMELINE_CLEANUP_FAILED", e);
+        });
+    }
+
+    @Override
+    public Mono<PageResponse<PostsSchema>> getFeed(String userId, int pageSize, String cursor) {
+        return Mono.defer(() -> {
+            PageCursor after = PageCursor.decode(cursor);
+
+            // 1. Timeline precalculado: una sola consulta indexada
+            Query query = timelineOf(Objects.requireNonNull(userId, "userId no puede ser null"))
+                    .orderBy("tim_timestamp", Query.Direction.DESCENDING)
+                    .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING);
+            if (after != null) {
+                query = query.startAfter(after.timestamp(), after.documentId());
+            }
+            Query pageQuery = query.limit(pageSize + 1);
+
+            Mono<List<FeedKey>> timelineKeys = ReactiveFirestore.toFlux(pageQuery::get)
+                    .map(document -> new FeedKey(document.getId(),
+                            document.toObject(TimelineSchema.class).getTim_timestamp(), null))
+                    .collectList();
+
+            // 2. Posts de autores "celebridad" que el usuario sigue (fan-out-on-read)
+            Mono<List<FeedKey>> fanoutOnReadKeys = followedFanoutOnReadAuthors(userId)
+                    .flatMap(authors -> getPostsByAuthors(authors, pageSize + 1, after));
+
+            return Mono.zip(timelineKeys, fanoutOnReadKeys)
+                    .flatMap(sources -> buildPage(userId, sources.getT1(), sources.getT2(), pageSize));
+        }).onErrorMap(e -> {
+            if (e instanceof IllegalArgumentException && "INVALID_CURSOR".equals(e.getMessage())) {
+                return e;
+            }
+            System.err.println("Error de Firestore al consultar el feed: " + e.getMessage());
+            return new RuntimeException("FIRESTORE_FEED_FAILED", e);
+        });
+    }
+
+    private Mono<PageResponse<PostsSchema>> buildPage(String userId, List<FeedKey> timelineKeys,
+            List<FeedKey> fanoutOnReadKeys, int pageSize) {
+
+        // Unir ambas fuentes sin duplicados (un autor pudo pasar a fan-out-on-read)
+        Map<String, FeedKey> merged = new HashMap<>();
+        timelineKeys.forEach(key -> merged.put(key.postId(), key));
+        fanoutOnReadKeys.forEach(key -> merged.putIfAbsent(key.postId(), key));
+
+        List<FeedKey> ordered = merged.values().stream()
+                .sorted(FeedKey.NEWEST_FIRST)
+                .toList();
+
+        boolean hasMore = ordered.size() > pageSize;
+        List<FeedKey> page = ordered.subList(0, Math.min(pageSize, ordered.size()));
+
+        String nextCursor = null;
+        if (hasMore) {
+            FeedKey last = page.get(page.size() - 1);
+            nextCursor = new PageCursor(last.timestamp(), last.postId()).encode();
+        }
+
+        // Leer de una vez (getAll) los posts que solo conocemos por referencia
+        List<String> missingIds = page.stream()
+                .filter(key -> key.post() == null)
+                .map(FeedKey::postId)
+                .toList();
+
+        String finalNextCursor = nextCursor;
+        return getPostsByIds(missingIds).flatMap(loaded -> {
+            List<PostsSchema> posts = new ArrayList<>();
+            List<String> danglingIds = new ArrayList<>();
+            for (FeedKey key : page) {
+                PostsSchema post = key.post() != null ? key.post() : loaded.get(key.postId());
+                if (post != null) {
+                    posts.add(post);
+                } else {
+                    danglingIds.add(key.postId()); // El post se eliminó después del fan-out
+                }
+            }
+
+            // Likes/comentarios que siguen en los shards
+            Mono<PageResponse<PostsSchema>> response = shardedCounters.withShardTotals(posts)
+                    .map(counted -> new PageResponse<>(counted, finalNextCursor));
+            if (danglingIds.isEmpty()) {
+                return response;
+            }
+            // Limpiar las entradas huérfanas para que no vuelvan a recortar la página
+            return removeDanglingEntries(userId, danglingIds).then(response);
+        });
+    }
+
+    private Mono<Void> removeDanglingEntries(String userId, List<String> postIds) {
+        return Mono.defer(() -> {
+            WriteBatch batch = firestoreDb.batch();
+            postIds.forEach(postId -> batch.delete(timelineOf(userId).document(postId)));
+            return ReactiveFirestore.toMono(batch::commit).then();
+        }).onErrorResume(e -> {
+            // No es crítico: se reintenta en la próxima lectura
+            System.err.println("Error al limpiar entradas huérfanas del timeline de " + userId + ": "
+                    + e.getMessage());
+            return Mono.empty();
+        });
+    }
+
+    /**
+     * Autores fan-out-on-read que sigue el usuario: consulta indexada sobre
+     * sus propias aristas Following, sin recorrer FanoutOnReadAuthors.
+     */
+    private Mono<List<String>> followedFanoutOnReadAuthors(String userId) {
+        return ReactiveFirestore.toFlux(() -> firestoreDb.collection("Users")
+                .document(userId)
+                .collection("Following")
+                .whereEqualTo("sub_fanoutOnRead", true)
+                .select(FieldPath.documentId())
+                .get())
+                .map(QueryDocumentSnapshot::getId)
+                .collectList();
+    }
+
+    private Mono<List<FeedKey>> getPostsByAuthors(List<String> authorUids, int limit, PageCursor after) {
+        if (authorUids.isEmpty()) {
+            return Mono.just(List.of());
+        }
+
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < authorUids.size(); i += MAX_IN_CLAUSE) {
+            chunks.add(authorUids.subList(i, Math.min(i + MAX_IN_CLAUSE, authorUids.size())));
+        }
+
+        return Flux.fromIterable(chunks)
+                .flatMap(chunk -> {
+                    Query query = firestoreDb.collection("Posts")
+                            .whereIn("pos_authorUid", chunk)
+                            .orderBy("pos_timestamp", Query.Direction.DESCENDING)
+                            .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING);
+                    if (after != null) {
+                        query = query.startAfter(after.timestamp(), after.documentId());
+                    }
+                    Query pageQuery = query.limit(limit);
+                    return ReactiveFirestore.toFlux(pageQuery::get);
+                })
+                .map(document -> {
+                    PostsSchema post = document.toObject(PostsSchema.class);
+                    post.setPos_postId(document.getId());
+                    return new FeedKey(document.getId(), post.getPos_timestamp(), post);
+                })
+                .collectList();
+    }
+
+    private Mono<Map<String, PostsSchema>> getPostsByIds(List<String> postIds) {
+        if (postIds.isEmpty()) {
+            return Mono.just(Map.of());
+        }
+
+        DocumentReference[] postRefs = postIds.stream()
+                .map(postId -> firestoreDb.collection("Posts").document(postId))
+                .toArray(DocumentReference[]::new);
+
+        return ReactiveFirestore.toMono(() -> firestoreDb.getAll(postRefs))
+                .map(snapshots -> {
+                    Map<String, PostsSchema> posts = new LinkedHashMap<>();
+                    for (DocumentSnapshot snapshot : snapshots) {
+                        if (snapshot.exists()) {
+                            PostsSchema post = snapshot.toObject(PostsSchema.class);
+                            post.setPos_postId(snapshot.getId());
+                            posts.put(snapshot.getId(), post);
+                        }
+                    }
+                    return posts;
+                });
+    }
+
+    @Override
+    public Mono<Void> removeAuthorFromTimeline(String userId, String authorUid) {
+        return deleteTimelineEntries(
+                Objects.requireNonNull(userId, "userId no puede ser null"),
+                Objects.requireNonNull(authorUid, "authorUid no puede ser null"))
+                .onErrorMap(e -> {
+                    System.err.println("Error de Firestore al limpiar timeline: " + e.getMessage());
+                    return new RuntimeException("FIRESTORE_TIMELINE_CLEANUP_FAILED", e);
+                });
+    }
+
+    private Mono<Void> deleteTimelineEntries(String userId, String authorUid) {
+        return Mono.defer(() -> {
+            Query query = timelineOf(userId)
+                    .whereEqualTo("tim_authorUid", authorUid)
+                    .select(FieldPath.documentId())
+                    .limit(500); // Máximo de operaciones por WriteBatch
+
+            return ReactiveFirestore.toMono(query::get)
+                    .flatMap(snapshot -> {
+                        if (snapshot.isEmpty()) {
+                            return Mono.<Void>empty();
+                        }
+
+                        WriteBatch batch = firestoreDb.batch();
+                        snapshot.getDocuments().forEach(document -> batch.delete(document.getReference()));
+
+                        // Repetir hasta vaciar las entradas del autor
+                        return ReactiveFirestore.toMono(batch::commit)
+                                .then(snapshot.size() < 500
+                                        ? Mono.<Void>empty()
+                                        : deleteTimelineEntries(userId, authorUid));
+                    });
+        });
+    }
+
+    private DocumentReference followingEdge(String followerId, String authorUid) {
+        return firestoreDb.collection("Users").document(followerId).collection("Following").document(authorUid);
+    }
+
+    private CollectionReference timelineOf(String userId) {
+        return firestoreDb.collection("Users").document(userId).collection("Timeline");
+    }
+
+    /**
+     * Clave de orden del feed. {@code post} solo viene cargado cuando la fuente
+     * fue la consulta directa a Posts (fan-out-on-read).
+     */
+    private record FeedKey(String postId, Timestamp timestamp, PostsSchema post) {
+
+        static final Comparator<FeedKey> NEWEST_FIRST = Comparator
+                .comparing(FeedKey::timestamp, Comparator.reverseOrder())
+                .thenComparing(FeedKey::postId, Comparator.reverseOrder());
+    }
+}
@@ -0,0 +1,201 @@
+package com.main.spring.app.repository;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.main.spring.app.interfaces.cache.CacheCoherence;
+import com.main.spring.app.interfaces.cache.CacheInvalidationHandler;
+import com.main.spring.app.repository.support.ReactiveFirestore;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Coherencia de cachés locales entre réplicas del backend.
+ *
+ * Con {@code cache.coherence.enabled=true}, cada escritura que invalida una
+ * caché deja un documento en {@code CacheInvalidations} (colección y ID del
+ * documento modificado). Cada instancia escucha esa colección con
+ * {@code addSnapshotListener} y reenvía las invalidaciones de otras
+ * instancias a los {@link CacheInvalidationHandler} de esa colección.
+ *
+ * Solo se escuchan las entradas nuevas: el listener filtra por
+ * {@code inv_timestamp} y se vuelve a registrar cada
+ * {@code resubscribe-interval-minutes} desde la última entrada vista, para
+ * que el resultado en memoria del listener no crezca indefinidamente. Si el
+ * listener falla, se vacían las cachés (pudo perderse alguna invalidación) y
+ * se vuelve a registrar.
+ *
+ * Las entradas llevan {@code inv_expireAt}; configurar una política TTL de
+ * Firestore sobre ese campo para borrarlas.
+ */
+@Repository
+public class FirestoreCacheCoherence implements CacheCoherence {
+
+    private static final String COLLECTION = "CacheInvalidations";
+    // Margen por diferencias de reloj entre instancias y servidor
+    private static final Duration CLOCK_SKEW = Duration.ofSeconds(5);
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(5);
+
+    private final Firestore firestoreDb;
+    private final Map<String, List<CacheInvalidationHandler>> handlersByCollection = new HashMap<>();
+    private final boolean enabled;
+    private final Duration retention;
+    private final Duration resubscribeInterval;
+
+    private final String instanceId = UUID.randomUUID().toString();
+    private final AtomicReference<Timestamp> lastSeen = new AtomicReference<>();
+
+    private volatile ListenerRegistration registration;
+    private volatile boolean stopped;
+    private Disposable resubscribeTask;
+
+    public FirestoreCacheCoherence(Firestore firestoreDb, List<CacheInvalidationHandler> handlers,
+            @Value("${cache.coherence.enabled:false}") boolean enabled,
+            @Value("${cache.coherence.retention-hours:24}") long retentionHours,
+            @Value("${cache.coherence.resubscribe-interval-minutes:10}") long resubscribeMinutes) {
+        this.firestoreDb = firestoreDb;
+        this.enabled = enabled;
+        this.retention = Duration.ofHours(retentionHours);
+        this.resubscribeInterval = Duration.ofMinutes(resubscribeMinutes);
+
+        for (CacheInvalidationHandler handler : handlers) {
+            handlersByCollection.computeIfAbsent(handler.collection(), c -> new ArrayList<>()).add(handler);
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        lastSeen.set(Timestamp.now());
+        listen();
+        resubscribeTask = Flux.interval(resubscribeInterval)
+                .subscribe(tick -> listen());
+    }
+
+    @PreDestroy
+    void stop() {
+        stopped = true;
+        if (resubscribeTask != null) {
+            resubscribeTask.dispose();
+        }
+        ListenerRegistration current = registration;
+        if (current != null) {
+            current.remove();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public Mono<Void> publishInvalidation(String collection, String documentId) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+
+        return Mono.defer(() -> {
+            Timestamp expireAt = Timestamp.ofTimeSecondsAndNanos(
+                    Timestamp.now().getSeconds() + retention.toSeconds(), 0);
+
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("inv_collection", collection);
+            entry.put("inv_documentId", Objects.requireNonNull(documentId, "documentId no puede ser null"));
+            entry.put("inv_instanceId", instanceId);
+            entry.put("inv_timestamp", FieldValue.serverTimestamp());
+            entry.put("inv_expireAt", expireAt);
+
+            return ReactiveFirestore.toMono(() -> firestoreDb.collection(COLLECTION).add(entry));
+        }).then().onErrorResume(e -> {
+            // La escritura principal ya se hizo; el resto de réplicas caerá por TTL
+            System.err.println("ADVERTENCIA: No se pudo publicar la invalidación de " + collection + "/"
+                    + documentId + ". Causa: " + e.getMessage());
+            return Mono.empty();
+        });
+    }
+
+    private synchronized void listen() {
+        if (stopped) {
+            return;
+        }
+
+        Timestamp since = minus(lastSeen.get(), CLOCK_SKEW);
+        ListenerRegistration previous = registration;
+
+        // El nuevo listener se registra antes de quitar el anterior: las
+        // entradas repetidas en el solape solo invalidan dos veces
+        registration = firestoreDb.collection(COLLECTION)
+                .whereGreaterThan("inv_timestamp", since)
+                .addSnapshotListener((snapshot, error) -> {
+                    if (error != null) {
+                        onListenerError(error);
+                        return;
+                    }
+                    if (snapshot == null) {
+                        return;
+                    }
+                    for (DocumentChange change : snapshot.getDocumentChanges()) {
+                        if (change.getType() == DocumentChange.Type.ADDED) {
+                            dispatch(change.getDocument());
+                        }
+                    }
+                });
+
+        if (previous != null) {
+            previous.remove();
+        }
+    }
+
+    private void dispatch(QueryDocumentSnapshot entry) {
+        Timestamp timestamp = entry.getTimestamp("inv_timestamp");
+        if (timestamp != null) {
+            lastSeen.accumulateAndGet(timestamp, (current, seen) -> seen.compareTo(current) > 0 ? seen : current);
+        }
+
+        // Las invalidaciones propias ya se aplicaron en local
+        if (instanceId.equals(entry.getString("inv_instanceId"))) {
+            return;
+        }
+
+        String documentId = entry.getString("inv_documentId");
+        for (CacheInvalidationHandler handler : handlersByCollection.getOrDefault(
+                entry.getString("inv_collection"), List.of())) {
+            handler.invalidate(documentId);
+        }
+    }
+
+    private void onListenerError(Throwable error) {
+        System.err.println("ERROR FIRESTORE: Listener de invalidaciones detenido. Causa: " + error.getMessage());
+
+        // Mientras el listener estuvo caído pudo perderse alguna invalidación
+        handlersByCollection.values().forEach(handlers -> handlers.forEach(CacheInvalidationHandler::invalidateAll));
+
+        Mono.delay(RETRY_DELAY).subscribe(tick -> listen());
+    }
+
+    private static Timestamp minus(Timestamp timestamp, Duration duration) {
+        return Timestamp.ofTimeSecondsAndNanos(timestamp.getSeconds() - duration.getSeconds(), timestamp.getNanos());
+    }
+}
@@ -1,11 +1,20 @@
 package com.main.spring.app.repository;
 
+import java.util.Map;
 import java.util.Objects;
 
 import org.springframework.stereotype.Repository;
+
+import com.google.api.core.ApiFutures;
 import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.FieldValue;
 import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Transaction;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.main.spring.app.interfaces.counters.CounterAggregator;
+import com.main.spring.app.interfaces.counters.ShardedCounterRepository;
 import com.main.spring.app.interfaces.likes.LikeRepository;
+import com.main.spring.app.repository.support.ReactiveFirestore;
 import com.main.spring.app.schema.LikeSchema;
 
 import reactor.core.publisher.Mono;
@@ -13,38 +22,65 @@ import reactor.core.publisher.Mono;
 @Repository
 public class LikeRepositoryImpl implements LikeRepository {
 
+    private static final String LIKE_DELETED = "Like eliminado exitosamente";
+
     private final Firestore firestoreDb;
+    private final ShardedCounterRepository shardedCounters;
+    private final CounterAggregator counterAggregator;
 
-    public LikeRepositoryImpl(Firestore firestoreDb) {
+    public LikeRepositoryImpl(Firestore firestoreDb, ShardedCounterRepository shardedCounters,
+            CounterAggregator counterAggregator) {
         this.firestoreDb = firestoreDb;
+        this.shardedCounters = shardedCounters;
+        this.counterAggregator = counterAggregator;
     }
 
+    /**
+     * Toggle de like en una única transacción: lectura del like, alta/baja del
+     * documento y {@code FieldValue.increment} del contador del post. Si dos
+     * toques llegan a la vez, Firestore reintenta la transacción perdedora, por
+     * lo que {@code pos_likesCount} siempre coincide con los documentos de Likes.
+     *
+     * Con el agregador write-behind activo, la transacción solo cambia el
+     * documento del like y el delta se suma al agregador tras el commit.
+     */
     @Override
     public Mono<String> createLike(String postId, String authorUid) {
 
-        return Mono.fromCallable(() -> {
+        return Mono.defer(() -> {
 
-            DocumentReference likeRef = firestoreDb.collection("Posts")
-                    .document(Objects.requireNonNull(postId, "postId no puede ser null"))
+            DocumentReference postRef = firestoreDb.collection("Posts")
+                    .document(Objects.requireNonNull(postId, "postId no puede ser null"));
+            DocumentReference likeRef = postRef
                     .collection("Likes")
                     .document(Objects.requireNonNull(authorUid, "authorUid no puede ser null"));
 
-            boolean exists = likeRef.get().get().exists();
-            if (exists) {
-                likeRef.delete().get();
-                return "Like eliminado exitosamente";
-            }
-
-            LikeSchema likeData = new LikeSchema(
-                    authorUid,
-                    postId);
+            return ReactiveFirestore.toMono(() -> firestoreDb.runAsyncTransaction(transaction -> ApiFutures.transform(
+                    transaction.get(likeRef),
+                    snapshot -> {
+                        if (snapshot.exists()) {
+                            transaction.delete(likeRef);
+                            incrementLikes(transaction, postRef, -1);
+                            return LIKE_DELETED;
+                        }
 
-            // GUARDAR EL OBJETO POJO COMPLETO EN FIRESTORE
-            likeRef.set(likeData).get();
+                        LikeSchema likeData = new LikeSchema(
+                                authorUid,
+                                postId);
 
-            return "Like creado exitosamente";
-
-        }).onErrorMap(e -> {
+                        // GUARDAR EL OBJETO POJO COMPLETO EN FIRESTORE
+                        transaction.set(likeRef, likeData);
+                        incrementLikes(transaction, postRef, 1);
+                        return "Like creado exitosamente";
+                    },
+                    MoreExecutors.directExecutor())));
+        }).flatMap(message -> {
+            if (!counterAggregator.isEnabled()) {
+                return Mono.just(message);
+            }
+            int delta = LIKE_DELETED.equals(message) ? -1 : 1;
+            return counterAggregator.add(postId, "pos_likesCount", delta).thenReturn(message);
+        }).doOnError(e -> shardedCounters.reportFailure(postId, e)).onErrorMap(e -> {
             if (e instanceof RuntimeException && "ALREADY_LIKED".equals(e.getMessage())) {
                 return e;
             }
@@ -52,4 +88,17 @@ public class LikeRepositoryImpl implements LikeRepository {
             return new RuntimeException("FIRESTORE_LIKE_FAILED", e);
         });
     }
+
+    private void incrementLikes(Transaction transaction, DocumentReference postRef, int delta) {
+        if (counterAggregator.isEnabled()) {
+            // El delta se suma al agregador después del commit
+            return;
+        }
+        if (shardedCounters.isEnabled()) {
+            // Con contadores distribuidos el incremento va a un shard, no al post
+            shardedCounters.increment(transaction, postRef.getId(), "pos_likesCount", delta);
+        } else {
+            transaction.update(postRef, Map.of("pos_likesCount", FieldValue.increment(delta)));
+        }
+    }
 }
@@ -1,21 +1,31 @@
 package com.main.spring.app.repository;
 
-import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
 
 import java.util.Collections;
 import java.util.Map;
 import java.util.HashMap;
 
 import org.springframework.http.codec.multipart.FilePart;
-import com.google.cloud.firestore.QuerySnapshot;
 
 import com.google.cloud.firestore.Firestore;
+import com.main.spring.app.dto.PageResponse;
+import com.main.spring.app.interfaces.counters.CounterAggregator;
+import com.main.spring.app.interfaces.counters.ShardedCounterRepository;
 import com.main.spring.app.interfaces.posts.PostRepository;
+import com.main.spring.app.repository.support.PageCursor;
+import com.main.spring.app.repository.support.ReactiveFirestore;
 import com.main.spring.app.schema.PostsSchema;
 import com.main.spring.app.service.SupabaseStorageService;
+import com.main.spring.app.service.ThumbnailService;
 
 import com.google.cloud.firestore.DocumentReference; // Necesario
+import com.google.cloud.firestore.FieldPath;
 import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
 
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -23,45 +33,48 @@ import reactor.core.publisher.Mono;
 import org.springframework.stereotype.Repository;
 import java.util.Objects;
 import java.util.List;
-import java.nio.ByteBuffer;
 
 @Repository
 public class PostRepositoryImpl implements PostRepository {
 
     private final Firestore firestoreDb;
     private final SupabaseStorageService supabaseStorageService;
+    private final ShardedCounterRepository shardedCounters;
+    private final CounterAggregator counterAggregator;
+    private final ThumbnailService thumbnailService;
 
-    public PostRepositoryImpl(Firestore firestoreDb, SupabaseStorageService supabaseStorageService) {
+    public PostRepositoryImpl(Firestore firestoreDb, SupabaseStorageService supabaseStorageService,
+            ShardedCounterRepository shardedCounters, CounterAggregator counterAggregator,
+            ThumbnailService thumbnailService) {
         this.firestoreDb = firestoreDb;
         this.supabaseStorageService = supabaseStorageService;
+        this.shardedCounters = shardedCounters;
+        this.counterAggregator = counterAggregator;
+        this.thumbnailService = thumbnailService;
     }
 
     @Override
     public Mono<String> createPost(FilePart filePart, String caption, String authorUid, List<String> mentionedUids) {
 
-        // 1. Convertir FilePart a byte[] de forma reactiva
-        Mono<byte[]> imageBytesMono = DataBufferUtils.join(filePart.content())
-                .map(dataBuffer -> {
-                    ByteBuffer byteBuffer = dataBuffer.asByteBuffer();
-                    byte[] bytes = new byte[byteBuffer.remaining()];
-                    byteBuffer.get(bytes);
-                    DataBufferUtils.release(dataBuffer);
-                    return bytes;
-                });
-
-        // 2. Subir la imagen al bucket y obtener la URL
-        Mono<String> imageUrlMono = imageBytesMono
-                .flatMap(bytes -> saveImageInBucket(bytes, filePart.filename()));
+        // 1-2. Subir la imagen al bucket según llega (sin copiarla a un byte[]) y
+        // obtener la URL. Las miniaturas se generan a la vez desde los mismos buffers
+        ThumbnailService.TeedUpload upload = thumbnailService.tee(filePart.content());
+        Mono<String> imageUrlMono = saveImageInBucket(upload.content(), filePart.filename());
+        Mono<Map<Integer, String>> thumbnailUrlsMono = saveThumbnailsInBucket(upload.thumbnails(),
+                filePart.filename());
 
-        // 3. Encadenar la URL obtenida para crear el PostSchema y guardarlo en
+        // 3. Encadenar las URLs obtenidas para crear el PostSchema y guardarlo en
         // Firestore
-        return imageUrlMono.flatMap(imageUrl -> Mono.fromCallable(() -> {
+        return Mono.zip(imageUrlMono, thumbnailUrlsMono).flatMap(urls -> Mono.defer(() -> {
 
             // Usamos el constructor que creamos en PostsSchema
             PostsSchema newPost = new PostsSchema(
                     authorUid,
-                    imageUrl, // URL obtenida del bucket
+                    urls.getT1(), // URL obtenida del bucket
                     caption);
+            newPost.setPos_imageUrl150(urls.getT2().get(150));
+            newPost.setPos_imageUrl480(urls.getT2().get(480));
+            newPost.setPos_imageUrl1080(urls.getT2().get(1080));
 
             // Asignar los UIDs mencionados si existen
             if (mentionedUids != null && !mentionedUids.isEmpty()) {
@@ -73,24 +86,56 @@ public class PostRepositoryImpl implements PostRepository {
             // usamos Timestamp.now() en el Schema
             DocumentReference docRef = firestoreDb.collection("Posts").document();
 
-            // 5. Guardar el objeto POJO (Bloqueante)
-            // .set() guarda el objeto, y .get() hace que la operación sea síncrona
-            docRef.set(newPost).get();
-
+            // 5. Guardar el objeto POJO (no bloqueante: se completa desde el callback)
             // 6. Retornar el ID del documento recién creado
-            return docRef.getId();
+            return ReactiveFirestore.toMono(() -> docRef.set(newPost))
+                    .thenReturn(docRef.getId());
 
         }));
     }
 
-    public Mono<String> saveImageInBucket(byte[] imageBytes, String filename) {
-        return supabaseStorageService.uploadImage(imageBytes, filename);
+    public Mono<String> saveImageInBucket(Flux<DataBuffer> content, String filename) {
+        return supabaseStorageService.uploadImage(content, filename);
+    }
+
+    /**
+     * Sube las miniaturas en paralelo. Son opcionales: si alguna falla el
+     * post se crea sin ellas y el cliente usa la imagen original.
+     *
+     * @return URL por tamaño (ej: 150 -> URL)
+     */
+    private Mono<Map<Integer, String>> saveThumbnailsInBucket(Mono<List<ThumbnailService.Thumbnail>> thumbnails,
+            String filename) {
+        String baseName = filename.replaceFirst("\\.[^.]*$", "");
+
+        return thumbnails
+                .flatMapMany(Flux::fromIterable)
+                .flatMap(thumbnail -> supabaseStorageService.uploadImage(
+                        Flux.defer(() -> Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(thumbnail.jpeg()))),
+                        baseName + "_" + thumbnail.size(), MediaType.IMAGE_JPEG)
+                        .map(url -> Map.entry(thumbnail.size(), url)))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .onErrorResume(e -> {
+                    System.err.println("ERROR STORAGE: Fallo al subir las miniaturas de " + filename
+                            + ". Causa: " + e.getMessage());
+                    return Mono.just(Map.of());
+                });
     }
 
     @Override
     public Mono<Void> updateLikeCount(String postId, int increment) {
 
-        return Mono.fromCallable(() -> {
+        return Mono.defer(() -> {
+
+            // Modo write-behind: el delta se acumula y se vuelca en lote
+            if (counterAggregator.isEnabled()) {
+                return counterAggregator.add(postId, "pos_likesCount", increment);
+            }
+
+            // Modo contadores distribuidos: el incremento va a un shard del post
+            if (shardedCounters.isEnabled()) {
+                return shardedCounters.increment(postId, "pos_likesCount", increment);
+            }
 
             // 1. Obtener la referencia al documento Post principal
             DocumentReference postRef = firestoreDb.collection("Posts")
@@ -103,10 +148,8 @@ public class PostRepositoryImpl implements PostRepository {
                             FieldValue.increment(increment) // Incrementar el valor en la DB
             ), "update map no puede ser null");
 
-            // 3. Ejecutar la actualización (Bloqueante)
-            postRef.update(update).get();
-
-            return null; // Devolvemos Mono<Void>
+            // 3. Ejecutar la actualización (no bloqueante)
+            return ReactiveFirestore.toMono(() -> postRef.update(update));
 
         }).onErrorResume(e -> {
             System.err.println("ERROR FIRESTORE: Fallo al actualizar contador de Likes para post " + postId
@@ -119,7 +162,17 @@ public class PostRepositoryImpl implements PostRepository {
     @Override
     public Mono<Void> updateCommentCount(String postId, int increment) {
 
-        return Mono.fromCallable(() -> {
+        return Mono.defer(() -> {
+
+            // Modo write-behind: el delta se acumula y se vuelca en lote
+            if (counterAggregator.isEnabled()) {
+                return counterAggregator.add(postId, "pos_commentsCount", increment);
+            }
+
+            // Modo contadores distribuidos: el incremento va a un shard del post
+            if (shardedCounters.isEnabled()) {
+                return shardedCounters.increment(postId, "pos_commentsCount", increment);
+            }
 
             // 1. Obtener la referencia al documento Post principal
             DocumentReference postRef = firestoreDb.collection("Posts")
@@ -132,10 +185,8 @@ public class PostRepositoryImpl implements PostRepository {
                             FieldValue.increment(increment) // Incrementar el valor en la DB
             ), "update map no puede ser null");
 
-            // 3. Ejecutar la actualización (Bloqueante)
-            postRef.update(update).get();
-
-            return null; // Devolvemos Mono<Void>
+            // 3. Ejecutar la actualización (no bloqueante)
+            return ReactiveFirestore.toMono(() -> postRef.update(update));
 
         }).onErrorResume(e -> {
             System.err.println("ERROR FIRESTORE: Fallo al actualizar contador de Comentarios para post " + postId
@@ -146,20 +197,31 @@ public class PostRepositoryImpl implements PostRepository {
 
     // *Gets */
     @Override
-    public Flux<PostsSchema> getPostsByAuthor(String authorUid) {
+    public Mono<PageResponse<PostsSchema>> getPostsByAuthor(String authorUid, int pageSize, String cursor) {
 
-        Mono<List<PostsSchema>> postsListMono = Mono.fromCallable(() -> {
+        return Mono.defer(() -> {
+            PageCursor after = PageCursor.decode(cursor);
 
-            // ... (código de consulta)
-            QuerySnapshot snapshot = firestoreDb.collection("Posts")
+            // Orden estable: timestamp y luego ID del documento (desempate)
+            Query query = firestoreDb.collection("Posts")
                     .whereEqualTo("pos_authorUid", authorUid)
-                    .orderBy("pos_timestamp", com.google.cloud.firestore.Query.Direction.DESCENDING)
-                    .get()
-                    .get();
+                    .orderBy("pos_timestamp", Query.Direction.DESCENDING)
+                    .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING);
+
+            if (after != null) {
+                query = query.startAfter(after.timestamp(), after.documentId());
+            }
+
+            // Pedimos un documento extra para saber si existe una página siguiente
+            Query pageQuery = query.limit(pageSize + 1);
+            return ReactiveFirestore.toMono(pageQuery::get);
+        }).map(snapshot -> {
+            List<QueryDocumentSnapshot> documents = snapshot.getDocuments();
+            boolean hasMore = documents.size() > pageSize;
 
             // 🚨 Mapeo Corregido: Extrayendo el Document ID 🚨
-            List<PostsSchema> posts = snapshot.getDocuments()
-                    .stream()
+            List<PostsSchema> posts = documents.stream()
+                    .limit(pageSize)
                     .map(document -> {
                         // Mapear los campos internos del documento
                         PostsSchema post = document.toObject(PostsSchema.class);
@@ -171,24 +233,31 @@ public class PostRepositoryImpl implements PostRepository {
                     })
                     .toList();
 
-            return posts;
+            String nextCursor = null;
+            if (hasMore) {
+                PostsSchema last = posts.get(posts.size() - 1);
+                nextCursor = new PageCursor(last.getPos_timestamp(), last.getPos_postId()).encode();
+            }
 
-        }).onErrorMap(e -> {
+            return new PageResponse<>(posts, nextCursor);
+        }).flatMap(page -> shardedCounters.withShardTotals(page.getItems()) // Likes/comentarios aún en shards
+                .map(posts -> new PageResponse<>(posts, page.getNextCursor()))).onErrorMap(e -> {
+            if (e instanceof IllegalArgumentException && "INVALID_CURSOR".equals(e.getMessage())) {
+                return e;
+            }
             System.err.println("Error de Firestore al consultar: " + e.getMessage());
             return new RuntimeException("FIRESTORE_QUERY_FAILED", e);
         });
-
-        return postsListMono.flatMapIterable(posts -> posts);
     }
 
     @Override
     public Mono<PostsSchema> getPostById(String postId) {
-        return Mono.fromCallable(() -> {
+        return Mono.defer(() -> {
             DocumentReference postRef = firestoreDb.collection("Posts")
                     .document(Objects.requireNonNull(postId, "postId no puede ser null"));
 
-            var documentSnapshot = postRef.get().get();
-
+            return ReactiveFirestore.toMono(postRef::get);
+        }).mapNotNull(documentSnapshot -> {
             if (!documentSnapshot.exists()) {
                 return null;
             }
@@ -198,7 +267,7 @@ public class PostRepositoryImpl implements PostRepository {
                 post.setPos_postId(documentSnapshot.getId());
             }
             return post;
-        }).onErrorMap(e -> {
+        }).flatMap(shardedCounters::withShardTotals).onErrorMap(e -> {
             System.err.println("Error de Firestore al obtener post por ID: " + e.getMessage());
             return new RuntimeException("FIRESTORE_GET_POST_FAILED", e);
         });
@@ -206,13 +275,12 @@ public class PostRepositoryImpl implements PostRepository {
 
     @Override
     public Mono<Void> deletePost(String postId) {
-        return Mono.fromCallable(() -> {
+        return Mono.defer(() -> {
             DocumentReference postRef = firestoreDb.collection("Posts")
                     .document(Objects.requireNonNull(postId, "postId no puede ser null"));
 
             // Eliminar el documento de Firestore
-            postRef.delete().get();
-            return null;
+            return ReactiveFirestore.toMono(postRef::delete);
         }).onErrorMap(e -> {
             System.err.println("Error de Firestore al eliminar post: " + e.getMessage());
             return new RuntimeException("FIRESTORE_DELETE_POST_FAILED", e);
@@ -221,7 +289,7 @@ public class PostRepositoryImpl implements PostRepository {
 
     @Override
     public Mono<Void> updateCaption(String postId, String caption, List<String> mentionedUids) {
-        return Mono.fromCallable(() -> {
+        return Mono.defer(() -> {
             DocumentReference postRef = firestoreDb.collection("Posts")
                     .document(Objects.requireNonNull(postId, "postId no puede ser null"));
 
@@ -229,8 +297,7 @@ public class PostRepositoryImpl implements PostRepository {
             update.put("pos_caption", Objects.requireNonNull(caption, "caption no puede ser null"));
             update.put("pos_mentionedUids", mentionedUids != null ? mentionedUids : Collections.emptyList());
 
-            postRef.update(update).get();
-            return null;
+            return ReactiveFirestore.toMono(() -> postRef.update(update));
         }).onErrorMap(e -> {
             System.err.println("Error de Firestore al actualizar descripción: " + e.getMessage());
             return new RuntimeException("FIRESTORE_UPDATE_CAPTION_FAILED", e);
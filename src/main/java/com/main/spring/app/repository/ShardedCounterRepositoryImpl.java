@@ -0,0 +1,333 @@
+package com.main.spring.app.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.UpdateBuilder;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.main.spring.app.interfaces.counters.ShardedCounterRepository;
+import com.main.spring.app.repository.support.FirestoreErrors;
+import com.main.spring.app.repository.support.ReactiveFirestore;
+import com.main.spring.app.schema.PostsSchema;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Contadores distribuidos para posts con mucho tráfico.
+ *
+ * Con {@code counters.sharded.enabled=true}, los incrementos de
+ * {@code pos_likesCount}/{@code pos_commentsCount} se escriben en un shard
+ * aleatorio de Posts/{postId}/CounterShards/{n} en lugar del documento del
+ * post, que Firestore limita en escrituras sostenidas por segundo.
+ *
+ * El contador real es post + shards: las lecturas de posts del backend
+ * pasan por {@link #withShardTotals}, que suma todos los shards existentes al
+ * valor del post.
+ *
+ * Cada {@code rollup-interval-ms} los shards modificados se suman al post en
+ * un lote atómico: el total se suma al post y se resta de los shards, así el
+ * documento del post (el que leen los clientes directamente) se mantiene al
+ * día. Para que dos réplicas no consoliden a la vez el mismo post (ambas
+ * leerían los mismos shards y el post contaría el doble), cada consolidación
+ * toma antes un lease en CounterRollupLeases/{postId}. Si el lote falla o
+ * otra réplica tiene el lease, el post se reintenta en el siguiente
+ * intervalo.
+ *
+ * Si una escritura falla por contención (ABORTED, RESOURCE_EXHAUSTED o
+ * DEADLINE_EXCEEDED), el número de shards de ese post se duplica hasta
+ * {@code max-shards}. El valor es local a cada instancia y se olvida tras un
+ * rato sin contención; las lecturas consultan todos los shards existentes,
+ * así que no necesitan conocerlo.
+ */
+@Repository
+public class ShardedCounterRepositoryImpl implements ShardedCounterRepository {
+
+    private static final List<String> COUNTER_FIELDS = List.of("pos_likesCount", "pos_commentsCount");
+    private static final String[] CONTENTION_CODES = { "ABORTED", "RESOURCE_EXHAUSTED", "DEADLINE_EXCEEDED" };
+    private static final Duration LEASE_DURATION = Duration.ofSeconds(30);
+    private static final int MAX_TRACKED_POSTS = 10_000;
+    private static final Duration SHARDS_IDLE_TIMEOUT = Duration.ofMinutes(10);
+    private static final int READ_CONCURRENCY = 8;
+
+    private final Firestore firestoreDb;
+    private final boolean enabled;
+    private final int initialShards;
+    private final int maxShards;
+    private final Duration rollupInterval;
+
+    // Número de shards por post (solo posts en los que se detectó contención)
+    private final Cache<String, Integer> shardsByPost = Caffeine.newBuilder()
+            .maximumSize(MAX_TRACKED_POSTS)
+            .expireAfterAccess(SHARDS_IDLE_TIMEOUT)
+            .build();
+    // Posts con incrementos pendientes de consolidar
+    private final Set<String> dirtyPosts = ConcurrentHashMap.newKeySet();
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private Disposable rollupTask;
+
+    public ShardedCounterRepositoryImpl(Firestore firestoreDb,
+            @Value("${counters.sharded.enabled:false}") boolean enabled,
+            @Value("${counters.sharded.shards:10}") int initialShards,
+            @Value("${counters.sharded.max-shards:100}") int maxShards,
+            @Value("${counters.sharded.rollup-interval-ms:5000}") long rollupIntervalMs) {
+        this.firestoreDb = firestoreDb;
+        this.enabled = enabled;
+        this.initialShards = Math.max(1, initialShards);
+        this.maxShards = Math.max(this.initialShards, maxShards);
+        this.rollupInterval = Duration.ofMillis(rollupIntervalMs);
+    }
+
+    @PostConstruct
+    void startRollup() {
+        if (!enabled) {
+            return;
+        }
+        rollupTask = Flux.interval(rollupInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> rollUpDirtyPosts())
+                .subscribe();
+    }
+
+    @PreDestroy
+    void stopRollup() {
+        if (rollupTask != null) {
+            rollupTask.dispose();
+        }
+        // Último volcado antes de apagar la instancia
+        if (enabled) {
+            rollUpDirtyPosts().block(Duration.ofSeconds(10));
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public Mono<Void> increment(String postId, String field, int delta) {
+        // Mono.defer: cada reintento elige un shard nuevo (y ve el número de shards actualizado)
+        return Mono.defer(() -> {
+            DocumentReference shardRef = pickShard(postId);
+            Map<String, Object> update = Map.of(field, FieldValue.increment(delta));
+
+            // set + merge: crea el shard si todavía no existe
+            return ReactiveFirestore.toMono(() -> shardRef.set(update, SetOptions.merge()));
+        })
+                .doOnError(e -> reportFailure(postId, e))
+                .retryWhen(Retry.max(2).filter(ShardedCounterRepositoryImpl::isContention))
+                .doOnSuccess(result -> dirtyPosts.add(postId))
+                .then();
+    }
+
+    @Override
+    public void increment(UpdateBuilder<?> writer, String postId, String field, long delta) {
+        // writer puede ser una Transaction o un WriteBatch
+        writer.set(pickShard(postId), Map.of(field, FieldValue.increment(delta)), SetOptions.merge());
+        dirtyPosts.add(postId);
+    }
+
+    @Override
+    public void reportFailure(String postId, Throwable error) {
+        if (!enabled || !isContention(error)) {
+            return;
+        }
+        int shards = shardsByPost.asMap().merge(postId, Math.min(initialShards * 2, maxShards),
+                (current, ignored) -> Math.min(current * 2, maxShards));
+        System.err.println("ADVERTENCIA: Contención en contador del post " + postId
+                + ". Shards activos: " + shards);
+    }
+
+    /**
+     * Suma los shards al post sin transacción: lee los shards y, en un lote
+     * atómico, resta a cada shard lo leído y suma el total al post. Las
+     * restas son incrementos, así que los likes que lleguen entre la lectura
+     * y el lote se conservan en el shard, y la lectura no bloquea los shards
+     * que el sharding reparte. Solo consolida quien tiene el lease del post.
+     *
+     * @return {@code false} si otra réplica tiene el lease.
+     */
+    @Override
+    public Mono<Boolean> rollUp(String postId) {
+        Objects.requireNonNull(postId, "postId no puede ser null");
+        return acquireLease(postId).flatMap(acquired -> acquired
+                ? foldShards(postId).thenReturn(true)
+                : Mono.just(false));
+    }
+
+    /**
+     * Lease de consolidación: transacción solo sobre el documento del lease
+     * (no sobre los shards, que seguirían recibiendo incrementos). Se
+     * renueva si ya es de esta instancia y caduca solo, así una réplica que
+     * se apaga a medias no bloquea el post.
+     */
+    private Mono<Boolean> acquireLease(String postId) {
+        DocumentReference leaseRef = firestoreDb.collection("CounterRollupLeases").document(postId);
+
+        return ReactiveFirestore.toMono(() -> firestoreDb.runAsyncTransaction(transaction -> ApiFutures.transform(
+                transaction.get(leaseRef),
+                lease -> {
+                    Timestamp now = Timestamp.now();
+                    Timestamp expiresAt = lease.getTimestamp("lease_expiresAt");
+                    boolean heldByOther = lease.exists()
+                            && !instanceId.equals(lease.getString("lease_owner"))
+                            && expiresAt != null && expiresAt.compareTo(now) > 0;
+                    if (heldByOther) {
+                        return false;
+                    }
+
+                    transaction.set(leaseRef, Map.of(
+                            "lease_owner", instanceId,
+                            "lease_expiresAt", Timestamp.ofTimeSecondsAndNanos(
+                                    now.getSeconds() + LEASE_DURATION.toSeconds(), now.getNanos())));
+                    return true;
+                },
+                MoreExecutors.directExecutor())));
+    }
+
+    private Mono<Void> foldShards(String postId) {
+        DocumentReference postRef = firestoreDb.collection("Posts").document(postId);
+        CollectionReference shardsRef = postRef.collection("CounterShards");
+
+        return ReactiveFirestore.toMono(shardsRef::get).flatMap(snapshot -> {
+            WriteBatch batch = firestoreDb.batch();
+
+            Map<String, Long> totals = new HashMap<>();
+            for (QueryDocumentSnapshot shard : snapshot.getDocuments()) {
+                Map<String, Object> folded = new HashMap<>();
+                for (String field : COUNTER_FIELDS) {
+                    Long value = shard.getLong(field);
+                    if (value != null && value != 0) {
+                        totals.merge(field, value, Long::sum);
+                        folded.put(field, FieldValue.increment(-value));
+                    }
+                }
+                if (!folded.isEmpty()) {
+                    batch.update(shard.getReference(), folded);
+                }
+            }
+
+            if (totals.isEmpty()) {
+                return Mono.empty();
+            }
+            Map<String, Object> postUpdate = new HashMap<>();
+            totals.forEach((field, total) -> postUpdate.put(field, FieldValue.increment(total)));
+            batch.update(postRef, postUpdate);
+
+            return ReactiveFirestore.toMono(batch::commit);
+        }).then();
+    }
+
+    /**
+     * Suma al post lo que aún está en sus shards. Se lee el post primero y
+     * los shards después: si una consolidación cae entre ambas lecturas, el
+     * total puede quedarse corto hasta la siguiente lectura, pero nunca
+     * cuenta dos veces.
+     */
+    @Override
+    public Mono<PostsSchema> withShardTotals(PostsSchema post) {
+        if (!enabled || post == null || post.getPos_postId() == null) {
+            return Mono.justOrEmpty(post);
+        }
+
+        return ReactiveFirestore.toMono(() -> firestoreDb.collection("Posts")
+                .document(post.getPos_postId())
+                .collection("CounterShards")
+                .get())
+                .map(snapshot -> {
+                    long likes = 0;
+                    long comments = 0;
+                    for (QueryDocumentSnapshot shard : snapshot.getDocuments()) {
+                        Long shardLikes = shard.getLong("pos_likesCount");
+                        Long shardComments = shard.getLong("pos_commentsCount");
+                        likes += shardLikes != null ? shardLikes : 0;
+                        comments += shardComments != null ? shardComments : 0;
+                    }
+                    post.setPos_likesCount((int) (post.getPos_likesCount() + likes));
+                    post.setPos_commentsCount((int) (post.getPos_commentsCount() + comments));
+                    return post;
+                });
+    }
+
+    @Override
+    public Mono<List<PostsSchema>> withShardTotals(List<PostsSchema> posts) {
+        if (!enabled || posts.isEmpty()) {
+            return Mono.just(posts);
+        }
+        return Flux.fromIterable(posts)
+                .flatMapSequential(this::withShardTotals, READ_CONCURRENCY)
+                .collectList();
+    }
+
+    private Mono<Void> rollUpDirtyPosts() {
+        if (dirtyPosts.isEmpty()) {
+            return Mono.empty();
+        }
+
+        List<String> postIds = List.copyOf(dirtyPosts);
+        dirtyPosts.removeAll(postIds);
+
+        return Flux.fromIterable(postIds)
+                .flatMap(postId -> rollUp(postId)
+                        .doOnNext(rolledUp -> {
+                            // Otra réplica lo está consolidando: reintentar en el siguiente intervalo
+                            if (!rolledUp) {
+                                dirtyPosts.add(postId);
+                            }
+                        })
+                        .then()
+                        .onErrorResume(e -> {
+                            System.err.println("ERROR FIRESTORE: Fallo al consolidar contadores del post " + postId
+                                    + ". Causa: " + e.getMessage());
+                            // Se reintenta en el siguiente intervalo, salvo si el post ya no existe
+                            if (!FirestoreErrors.hasCode(e, "NOT_FOUND")) {
+                                dirtyPosts.add(postId);
+                            }
+                            return Mono.empty();
+                        }), 8)
+                .then();
+    }
+
+    private DocumentReference pickShard(String postId) {
+        Integer tracked = shardsByPost.getIfPresent(postId);
+        int shards = tracked != null ? tracked : initialShards;
+        int shard = ThreadLocalRandom.current().nextInt(shards);
+
+        return firestoreDb.collection("Posts")
+                .document(Objects.requireNonNull(postId, "postId no puede ser null"))
+                .collection("CounterShards")
+                .document(String.valueOf(shard));
+    }
+
+    private static boolean isContention(Throwable error) {
+        return FirestoreErrors.hasCode(error, CONTENTION_CODES);
+    }
+}
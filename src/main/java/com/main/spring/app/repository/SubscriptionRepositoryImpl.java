@@ -1,12 +1,16 @@
 package com.main.spring.app.repository;
 
 import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.FieldPath;
 import com.google.cloud.firestore.Firestore;
-import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.main.spring.app.dto.PageResponse;
 import com.main.spring.app.interfaces.subscriptions.SubscriptionRepository;
+import com.main.spring.app.repository.support.PageCursor;
+import com.main.spring.app.repository.support.ReactiveFirestore;
 import com.main.spring.app.schema.SubscriptionSchema;
 
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
@@ -25,7 +29,7 @@ public class SubscriptionRepositoryImpl implements SubscriptionRepository {
 
     @Override
     public Mono<Void> subscribe(String followerUid, String followingUid) {
-        return Mono.fromCallable(() -> {
+        return Mono.defer(() -> {
             // 1. Crear documento en Following del follower
             // Ruta: Users/{followerUid}/Following/{followingUid}
             DocumentReference followingRef = firestoreDb.collection("Users")
@@ -33,8 +37,9 @@ public class SubscriptionRepositoryImpl implements SubscriptionRepository {
                     .collection("Following")
                     .document(Objects.requireNonNull(followingUid, "followingUid no puede ser null"));
 
-            SubscriptionSchema followingData = new SubscriptionSchema();
-            followingRef.set(followingData).get();
+            // Si el autor ya es fan-out-on-read, la arista lo indica para el feed
+            DocumentReference fanoutOnReadRef = firestoreDb.collection("FanoutOnReadAuthors")
+                    .document(followingUid);
 
             // 2. Crear documento en Followers del following
             // Ruta: Users/{followingUid}/Followers/{followerUid}
@@ -44,9 +49,14 @@ public class SubscriptionRepositoryImpl implements SubscriptionRepository {
                     .document(followerUid);
 
             SubscriptionSchema followersData = new SubscriptionSchema();
-            followersRef.set(followersData).get();
 
-            return null;
+            return ReactiveFirestore.toMono(fanoutOnReadRef::get)
+                    .flatMap(marker -> {
+                        SubscriptionSchema followingData = new SubscriptionSchema();
+                        followingData.setSub_fanoutOnRead(marker.exists());
+                        return ReactiveFirestore.toMono(() -> followingRef.set(followingData));
+                    })
+                    .then(ReactiveFirestore.toMono(() -> followersRef.set(followersData)));
         }).onErrorMap(e -> {
             System.err.println("Error de Firestore al crear suscripción: " + e.getMessage());
             return new RuntimeException("FIRESTORE_SUBSCRIPTION_FAILED", e);
@@ -55,24 +65,21 @@ public class SubscriptionRepositoryImpl implements SubscriptionRepository {
 
     @Override
     public Mono<Void> unsubscribe(String followerUid, String followingUid) {
-        return Mono.fromCallable(() -> {
+        return Mono.defer(() -> {
             // 1. Eliminar documento en Following del follower
             DocumentReference followingRef = firestoreDb.collection("Users")
                     .document(Objects.requireNonNull(followerUid, "followerUid no puede ser null"))
                     .collection("Following")
                     .document(Objects.requireNonNull(followingUid, "followingUid no puede ser null"));
 
-            followingRef.delete().get();
-
             // 2. Eliminar documento en Followers del following
             DocumentReference followersRef = firestoreDb.collection("Users")
                     .document(followingUid)
                     .collection("Followers")
                     .document(followerUid);
 
-            followersRef.delete().get();
-
-            return null;
+            return ReactiveFirestore.toMono(followingRef::delete)
+                    .then(ReactiveFirestore.toMono(followersRef::delete));
         }).onErrorMap(e -> {
             System.err.println("Error de Firestore al eliminar suscripción: " + e.getMessage());
             return new RuntimeException("FIRESTORE_UNSUBSCRIPTION_FAILED", e);
@@ -80,57 +87,80 @@ public class SubscriptionRepositoryImpl implements SubscriptionRepository {
     }
 
     @Override
-    public Flux<String> getFollowing(String userId) {
-        return Mono.fromCallable(() -> {
-            QuerySnapshot snapshot = firestoreDb.collection("Users")
-                    .document(Objects.requireNonNull(userId, "userId no puede ser null"))
-                    .collection("Following")
-                    .get()
-                    .get();
-
-            List<String> followingIds = snapshot.getDocuments()
-                    .stream()
-                    .map(document -> document.getId())
-                    .toList();
-
-            return followingIds;
-        }).onErrorMap(e -> {
-            System.err.println("Error de Firestore al obtener following: " + e.getMessage());
-            return new RuntimeException("FIRESTORE_GET_FOLLOWING_FAILED", e);
-        }).flatMapIterable(followingIds -> followingIds);
+    public Mono<PageResponse<String>> getFollowing(String userId, int pageSize, String cursor) {
+        return getSubscriptionPage(userId, "Following", pageSize, cursor)
+                .onErrorMap(e -> {
+                    if (e instanceof IllegalArgumentException && "INVALID_CURSOR".equals(e.getMessage())) {
+                        return e;
+                    }
+                    System.err.println("Error de Firestore al obtener following: " + e.getMessage());
+                    return new RuntimeException("FIRESTORE_GET_FOLLOWING_FAILED", e);
+                });
     }
 
     @Override
-    public Flux<String> getFollowers(String userId) {
-        return Mono.fromCallable(() -> {
-            QuerySnapshot snapshot = firestoreDb.collection("Users")
-                    .document(Objects.requireNonNull(userId, "userId no puede ser null"))
-                    .collection("Followers")
-                    .get()
-                    .get();
+    public Mono<PageResponse<String>> getFollowers(String userId, int pageSize, String cursor) {
+        return getSubscriptionPage(userId, "Followers", pageSize, cursor)
+                .onErrorMap(e -> {
+                    if (e instanceof IllegalArgumentException && "INVALID_CURSOR".equals(e.getMessage())) {
+                        return e;
+                    }
+                    System.err.println("Error de Firestore al obtener followers: " + e.getMessage());
+                    return new RuntimeException("FIRESTORE_GET_FOLLOWERS_FAILED", e);
+                });
+    }
 
-            List<String> followerIds = snapshot.getDocuments()
-                    .stream()
-                    .map(document -> document.getId())
+    /**
+     * Página de UIDs de la subcolección Following/Followers, de la suscripción
+     * más reciente a la más antigua.
+     */
+    private Mono<PageResponse<String>> getSubscriptionPage(String userId, String subcollection, int pageSize,
+            String cursor) {
+        return Mono.defer(() -> {
+            PageCursor after = PageCursor.decode(cursor);
+
+            // Orden estable: timestamp de la suscripción y luego UID (desempate)
+            Query query = firestoreDb.collection("Users")
+                    .document(Objects.requireNonNull(userId, "userId no puede ser null"))
+                    .collection(subcollection)
+                    .orderBy("sub_timestamp", Query.Direction.DESCENDING)
+                    .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING);
+
+            if (after != null) {
+                query = query.startAfter(after.timestamp(), after.documentId());
+            }
+
+            // Pedimos un documento extra para saber si existe una página siguiente
+            Query pageQuery = query.limit(pageSize + 1);
+            return ReactiveFirestore.toMono(pageQuery::get);
+        }).map(snapshot -> {
+            List<QueryDocumentSnapshot> documents = snapshot.getDocuments();
+            boolean hasMore = documents.size() > pageSize;
+            List<QueryDocumentSnapshot> page = documents.subList(0, Math.min(pageSize, documents.size()));
+
+            String nextCursor = null;
+            if (hasMore) {
+                QueryDocumentSnapshot last = page.get(page.size() - 1);
+                nextCursor = new PageCursor(last.getTimestamp("sub_timestamp"), last.getId()).encode();
+            }
+
+            List<String> uids = page.stream()
+                    .map(QueryDocumentSnapshot::getId)
                     .toList();
-
-            return followerIds;
-        }).onErrorMap(e -> {
-            System.err.println("Error de Firestore al obtener followers: " + e.getMessage());
-            return new RuntimeException("FIRESTORE_GET_FOLLOWERS_FAILED", e);
-        }).flatMapIterable(followerIds -> followerIds);
+            return new PageResponse<>(uids, nextCursor);
+        });
     }
 
     @Override
     public Mono<Boolean> isSubscribed(String followerUid, String followingUid) {
-        return Mono.fromCallable(() -> {
+        return Mono.defer(() -> {
             DocumentReference followingRef = firestoreDb.collection("Users")
                     .document(Objects.requireNonNull(followerUid, "followerUid no puede ser null"))
                     .collection("Following")
                     .document(Objects.requireNonNull(followingUid, "followingUid no puede ser null"));
 
-            var documentSnapshot = followingRef.get().get();
-            return documentSnapshot.exists();
+            return ReactiveFirestore.toMono(followingRef::get)
+                    .map(documentSnapshot -> documentSnapshot.exists());
         }).onErrorMap(e -> {
             System.err.println("Error de Firestore al verificar suscripción: " + e.getMessage());
             return new RuntimeException("FIRESTORE_CHECK_SUBSCRIPTION_FAILED", e);
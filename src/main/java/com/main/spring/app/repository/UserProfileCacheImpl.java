@@ -0,0 +1,129 @@
+package com.main.spring.app.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.main.spring.app.interfaces.cache.CacheInvalidationHandler;
+import com.main.spring.app.interfaces.users.UserProfileCache;
+import com.main.spring.app.schema.UserSchema;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caché en memoria de perfiles de {@code Users}, por UID y por email.
+ *
+ * Las entradas caducan {@code users.cache.ttl-seconds} después de escribirse
+ * y el número de perfiles está acotado por {@code users.cache.max-size}. El
+ * índice por email solo guarda el UID: si el perfil ya no está en caché (o
+ * cambió de email), la búsqueda por email cuenta como fallo.
+ *
+ * Se guardan y devuelven copias para que ningún flujo modifique la entrada
+ * compartida. Las estadísticas se publican en actuator como
+ * {@code cache.gets}, {@code cache.evictions} y {@code cache.size} con
+ * {@code cache=users.byId|users.byEmail}.
+ *
+ * Con {@code cache.coherence.enabled=true} también recibe las invalidaciones
+ * de otras réplicas, por lo que admite un TTL largo.
+ */
+@Component
+public class UserProfileCacheImpl implements UserProfileCache, CacheInvalidationHandler {
+
+    private final boolean enabled;
+    private final Cache<String, UserSchema> byId;
+    private final Cache<String, String> uidByEmail;
+
+    public UserProfileCacheImpl(MeterRegistry meterRegistry,
+            @Value("${users.cache.enabled:true}") boolean enabled,
+            @Value("${users.cache.ttl-seconds:60}") long ttlSeconds,
+            @Value("${users.cache.max-size:10000}") long maxSize) {
+        this.enabled = enabled;
+        this.byId = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        this.uidByEmail = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, byId, "users.byId");
+        CaffeineCacheMetrics.monitor(meterRegistry, uidByEmail, "users.byEmail");
+    }
+
+    @Override
+    public UserSchema getById(String userId) {
+        if (!enabled || userId == null) {
+            return null;
+        }
+        return copy(byId.getIfPresent(userId));
+    }
+
+    @Override
+    public UserSchema getByEmail(String email) {
+        if (!enabled || email == null) {
+            return null;
+        }
+        String userId = uidByEmail.getIfPresent(email);
+        if (userId == null) {
+            return null;
+        }
+
+        UserSchema user = byId.getIfPresent(userId);
+        if (user == null || !email.equals(user.getUsr_email())) {
+            uidByEmail.invalidate(email);
+            return null;
+        }
+        return copy(user);
+    }
+
+    @Override
+    public void put(UserSchema user) {
+        if (!enabled || user == null || user.getUsr_id() == null) {
+            return;
+        }
+        byId.put(user.getUsr_id(), copy(user));
+        if (user.getUsr_email() != null) {
+            uidByEmail.put(user.getUsr_email(), user.getUsr_id());
+        }
+    }
+
+    @Override
+    public void invalidate(String userId) {
+        if (userId == null) {
+            return;
+        }
+        // La entrada por email apunta al UID; se descarta sola al no encontrar el perfil
+        byId.invalidate(userId);
+    }
+
+    @Override
+    public String collection() {
+        return "Users";
+    }
+
+    @Override
+    public void invalidateAll() {
+        byId.invalidateAll();
+        uidByEmail.invalidateAll();
+    }
+
+    private static UserSchema copy(UserSchema user) {
+        if (user == null) {
+            return null;
+        }
+        UserSchema copy = new UserSchema();
+        copy.setUsr_id(user.getUsr_id());
+        copy.setUsr_username(user.getUsr_username());
+        copy.setUsr_email(user.getUsr_email());
+        copy.setUsr_photoUrl(user.getUsr_photoUrl());
+        copy.setUsr_bio(user.getUsr_bio());
+        return copy;
+    }
+}
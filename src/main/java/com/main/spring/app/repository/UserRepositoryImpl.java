@@ -1,136 +1,252 @@
 package com.main.spring.app.repository;
 
 import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
 import com.google.cloud.firestore.Firestore;
-import com.google.cloud.firestore.QuerySnapshot;
 import com.main.spring.app.dto.UserSearchResponse;
+import com.main.spring.app.interfaces.cache.CacheCoherence;
+import com.main.spring.app.interfaces.users.UserProfileCache;
 import com.main.spring.app.interfaces.users.UserRepository;
+import com.main.spring.app.repository.support.ReactiveFirestore;
+import com.main.spring.app.repository.support.SearchTokens;
 import com.main.spring.app.schema.UserSchema;
 
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 import org.springframework.stereotype.Repository;
 
 @Repository
 public class UserRepositoryImpl implements UserRepository {
 
+    // Documentos por llamada a getAll
+    private static final int GET_ALL_CHUNK_SIZE = 100;
+    // Lotes getAll en vuelo a la vez
+    private static final int GET_ALL_CONCURRENCY = 4;
+
+    // Candidatos leídos por resultado pedido (los trigramas dan falsos positivos)
+    private static final int SEARCH_CANDIDATES_PER_RESULT = 4;
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+
     private final Firestore firestoreDb;
+    private final UserProfileCache profileCache;
+    private final CacheCoherence cacheCoherence;
 
-    public UserRepositoryImpl(Firestore firestoreDb) {
+    public UserRepositoryImpl(Firestore firestoreDb, UserProfileCache profileCache, CacheCoherence cacheCoherence) {
         this.firestoreDb = firestoreDb;
+        this.profileCache = profileCache;
+        this.cacheCoherence = cacheCoherence;
     }
 
+    /**
+     * Búsqueda por username o email sobre {@code usr_searchTokens} (ver
+     * {@link SearchTokens}). Primero se consulta el prefijo, que solo
+     * devuelve coincidencias "empieza por"; si no llegan a {@code limit}, se
+     * completa con varios trigramas de la consulta ("contiene", con falsos
+     * positivos), una consulta por trigrama en paralelo. Así el tope de
+     * candidatos de los trigramas no deja fuera coincidencias exactas ni
+     * prefijos. Solo se leen los campos que necesita la respuesta; los
+     * candidatos se verifican y ordenan en memoria ({@link #rank}).
+     *
+     * Límite de recall: cada consulta lee como mucho {@code limit * 4}
+     * candidatos y Firestore no puede intersecar trigramas, así que una
+     * coincidencia "contiene" puede quedar fuera si todos los trigramas
+     * consultados son comunes (más candidatos que el tope) y los falsos
+     * positivos ocupan su hueco. Consultar varios trigramas lo hace menos
+     * probable: basta con que uno sea poco común.
+     */
     @Override
     public Flux<UserSearchResponse> searchUsers(String query, int limit) {
-        if (query == null || query.trim().isEmpty()) {
+        String prefixToken = SearchTokens.prefixToken(query);
+        if (prefixToken == null) {
             return Flux.empty();
         }
+        List<String> ngramTokens = SearchTokens.ngramTokens(query);
+        String normalizedQuery = SearchTokens.normalize(query);
+        int maxCandidates = limit * SEARCH_CANDIDATES_PER_RESULT;
 
-        String searchQuery = query.trim();
-        String searchQueryLower = searchQuery.toLowerCase();
-        String searchQueryEnd = searchQuery + "\uf8ff"; // Carácter Unicode para búsqueda de prefijo
-
-        return Mono.fromCallable(() -> {
-            Set<UserSearchResponse> results = new HashSet<>();
-
-            // 1. Búsqueda por username (prefijo) - case-sensitive para Firestore
-            QuerySnapshot usernameSnapshot = firestoreDb.collection("Users")
-                    .whereGreaterThanOrEqualTo("usr_username", searchQuery)
-                    .whereLessThan("usr_username", searchQueryEnd)
-                    .limit(limit * 2) // Obtener más para filtrar después
-                    .get()
-                    .get();
-
-            usernameSnapshot.getDocuments().forEach(document -> {
-                UserSchema user = document.toObject(UserSchema.class);
-                if (user != null) {
-                    String username = user.getUsr_username() != null ? user.getUsr_username() : "";
-                    String email = user.getUsr_email() != null ? user.getUsr_email() : "";
-                    // Filtrar en memoria para búsqueda case-insensitive y tipo LIKE
-                    if (username.toLowerCase().contains(searchQueryLower) ||
-                            email.toLowerCase().contains(searchQueryLower)) {
-                        results.add(new UserSearchResponse(
-                                document.getId(),
-                                username,
-                                email,
-                                user.getUsr_photoUrl()));
+        return searchCandidates(prefixToken, maxCandidates)
+                .flatMap(prefixMatches -> {
+                    List<UserSearchResponse> ranked = rank(prefixMatches, normalizedQuery, limit);
+                    if (ranked.size() >= limit || ngramTokens.isEmpty()) {
+                        return Mono.just(ranked);
                     }
-                }
-            });
-
-            // 2. Búsqueda por email (prefijo) - case-sensitive para Firestore
-            QuerySnapshot emailSnapshot = firestoreDb.collection("Users")
-                    .whereGreaterThanOrEqualTo("usr_email", searchQuery)
-                    .whereLessThan("usr_email", searchQueryEnd)
-                    .limit(limit * 2) // Obtener más para filtrar después
-                    .get()
-                    .get();
-
-            emailSnapshot.getDocuments().forEach(document -> {
-                UserSchema user = document.toObject(UserSchema.class);
-                if (user != null) {
-                    String username = user.getUsr_username() != null ? user.getUsr_username() : "";
-                    String email = user.getUsr_email() != null ? user.getUsr_email() : "";
-                    // Filtrar en memoria para búsqueda case-insensitive y tipo LIKE
-                    if (username.toLowerCase().contains(searchQueryLower) ||
-                            email.toLowerCase().contains(searchQueryLower)) {
-                        results.add(new UserSearchResponse(
+                    return Flux.fromIterable(ngramTokens)
+                            .flatMap(token -> searchCandidates(token, maxCandidates))
+                            .collect(() -> new ArrayList<>(prefixMatches), List::addAll)
+                            .map(candidates -> rank(candidates, normalizedQuery, limit));
+                })
+                .onErrorMap(e -> {
+                    System.err.println("Error de Firestore al buscar usuarios: " + e.getMessage());
+                    return new RuntimeException("FIRESTORE_SEARCH_USERS_FAILED", e);
+                })
+                .flatMapIterable(results -> results);
+    }
+
+    private Mono<List<UserSearchResponse>> searchCandidates(String token, int maxCandidates) {
+        return ReactiveFirestore.toMono(() -> firestoreDb.collection("Users")
+                .whereArrayContains("usr_searchTokens", token)
+                .select("usr_username", "usr_email", "usr_photoUrl")
+                .limit(maxCandidates)
+                .get())
+                .map(snapshot -> snapshot.getDocuments().stream()
+                        .map(document -> new UserSearchResponse(
                                 document.getId(),
-                                username,
-                                email,
-                                user.getUsr_photoUrl()));
-                    }
-                }
-            });
-
-            // 3. Filtrar y limitar resultados finales
-            List<UserSearchResponse> finalResults = results.stream()
-                    .filter(user -> {
-                        String username = user.getUsername() != null ? user.getUsername().toLowerCase() : "";
-                        String email = user.getEmail() != null ? user.getEmail().toLowerCase() : "";
-                        return username.contains(searchQueryLower) || email.contains(searchQueryLower);
-                    })
-                    .limit(limit)
-                    .collect(Collectors.toList());
-
-            return finalResults;
-        }).onErrorMap(e -> {
-            System.err.println("Error de Firestore al buscar usuarios: " + e.getMessage());
-            return new RuntimeException("FIRESTORE_SEARCH_USERS_FAILED", e);
-        }).flatMapIterable(results -> results);
+                                document.getString("usr_username"),
+                                document.getString("usr_email"),
+                                document.getString("usr_photoUrl")))
+                        .toList());
+    }
+
+    /**
+     * Descarta los candidatos que no coinciden de verdad, quita duplicados
+     * (por uid) y ordena: username exacto, prefijo del username, prefijo de
+     * una palabra, contiene en username y, por último, coincidencias por
+     * email. A igual relevancia, el username más corto primero.
+     */
+    static List<UserSearchResponse> rank(Collection<UserSearchResponse> candidates, String normalizedQuery,
+            int limit) {
+        Map<String, UserSearchResponse> unique = new LinkedHashMap<>();
+        for (UserSearchResponse candidate : candidates) {
+            unique.putIfAbsent(candidate.getUid(), candidate);
+        }
+
+        return unique.values().stream()
+                .filter(user -> searchRank(user, normalizedQuery) < NO_MATCH)
+                .sorted(Comparator
+                        .comparingInt((UserSearchResponse user) -> searchRank(user, normalizedQuery))
+                        .thenComparingInt(user -> user.getUsername() != null ? user.getUsername().length() : 0)
+                        .thenComparing(user -> SearchTokens.normalize(user.getUsername())))
+                .limit(limit)
+                .toList();
+    }
+
+    private static int searchRank(UserSearchResponse user, String normalizedQuery) {
+        String username = SearchTokens.normalize(user.getUsername());
+        String email = SearchTokens.normalize(user.getEmail());
+
+        if (username.equals(normalizedQuery)) {
+            return 0;
+        }
+        if (username.startsWith(normalizedQuery)) {
+            return 1;
+        }
+        if (username.contains(" " + normalizedQuery)) {
+            return 2;
+        }
+        if (username.contains(normalizedQuery)) {
+            return 3;
+        }
+        if (email.startsWith(normalizedQuery)) {
+            return 4;
+        }
+        if (email.contains(normalizedQuery)) {
+            return 5;
+        }
+        return NO_MATCH;
     }
 
     @Override
     public Mono<UserSchema> getUserById(String userId) {
-        return Mono.fromCallable(() -> {
-            var documentSnapshot = firestoreDb.collection("Users")
-                    .document(Objects.requireNonNull(userId, "userId no puede ser null"))
-                    .get()
-                    .get();
-
-            if (!documentSnapshot.exists()) {
-                return null;
+        return Mono.defer(() -> {
+            UserSchema cached = profileCache.getById(Objects.requireNonNull(userId, "userId no puede ser null"));
+            if (cached != null) {
+                return Mono.just(cached);
             }
 
-            return documentSnapshot.toObject(UserSchema.class);
+            return ReactiveFirestore.toMono(() -> firestoreDb.collection("Users")
+                    .document(userId)
+                    .get())
+                    .mapNotNull(documentSnapshot -> {
+                        if (!documentSnapshot.exists()) {
+                            return null;
+                        }
+
+                        UserSchema user = documentSnapshot.toObject(UserSchema.class);
+                        user.setUsr_id(documentSnapshot.getId());
+                        profileCache.put(user);
+                        return user;
+                    });
         }).onErrorMap(e -> {
             System.err.println("Error de Firestore al obtener usuario por ID: " + e.getMessage());
             return new RuntimeException("FIRESTORE_GET_USER_FAILED", e);
         });
     }
 
+    /**
+     * Lee varios perfiles con {@code Firestore.getAll} en lotes de
+     * {@value #GET_ALL_CHUNK_SIZE}, en lugar de una lectura por usuario. Solo
+     * se piden a Firestore los que no están en caché. Conserva el orden de
+     * entrada y omite los usuarios que no existen.
+     */
+    @Override
+    public Flux<UserSchema> getUsersByIds(Collection<String> userIds) {
+        List<String> ids = List.copyOf(Objects.requireNonNull(userIds, "userIds no puede ser null"));
+        if (ids.isEmpty()) {
+            return Flux.empty();
+        }
+
+        Map<String, UserSchema> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String userId : new LinkedHashSet<>(ids)) {
+            UserSchema cached = profileCache.getById(userId);
+            if (cached != null) {
+                found.put(userId, cached);
+            } else {
+                missing.add(userId);
+            }
+        }
+
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < missing.size(); i += GET_ALL_CHUNK_SIZE) {
+            chunks.add(missing.subList(i, Math.min(i + GET_ALL_CHUNK_SIZE, missing.size())));
+        }
+
+        return Flux.fromIterable(chunks)
+                .flatMap(chunk -> {
+                    DocumentReference[] userRefs = chunk.stream()
+                            .map(userId -> firestoreDb.collection("Users").document(userId))
+                            .toArray(DocumentReference[]::new);
+
+                    return ReactiveFirestore.toMono(() -> firestoreDb.getAll(userRefs))
+                            .flatMapIterable(snapshots -> snapshots);
+                }, GET_ALL_CONCURRENCY)
+                .filter(DocumentSnapshot::exists)
+                .map(documentSnapshot -> {
+                    UserSchema user = documentSnapshot.toObject(UserSchema.class);
+                    user.setUsr_id(documentSnapshot.getId());
+                    profileCache.put(user);
+                    return user;
+                })
+                .collectMap(UserSchema::getUsr_id)
+                // Se emiten en el orden de entrada (caché + Firestore)
+                .flatMapIterable(loaded -> {
+                    found.putAll(loaded);
+                    return ids.stream()
+                            .map(found::get)
+                            .filter(Objects::nonNull)
+                            .toList();
+                })
+                .onErrorMap(e -> {
+                    System.err.println("Error de Firestore al obtener usuarios por ID: " + e.getMessage());
+                    return new RuntimeException("FIRESTORE_GET_USERS_FAILED", e);
+                });
+    }
+
     @Override
     public Mono<Void> updatePhotoUrl(String userId, String photoUrl) {
-        return Mono.fromCallable(() -> {
+        return Mono.defer(() -> {
             DocumentReference userRef = firestoreDb.collection("Users")
                     .document(Objects.requireNonNull(userId, "userId no puede ser null"));
 
@@ -138,17 +254,16 @@ public class UserRepositoryImpl implements UserRepository {
                     "usr_photoUrl",
                     Objects.requireNonNull(photoUrl, "photoUrl no puede ser null"));
 
-            userRef.update(update).get();
-            return null;
+            return ReactiveFirestore.toMono(() -> userRef.update(update));
         }).onErrorMap(e -> {
             System.err.println("Error de Firestore al actualizar photoUrl: " + e.getMessage());
             return new RuntimeException("FIRESTORE_UPDATE_PHOTO_FAILED", e);
-        }).then();
+        }).then(invalidateProfile(userId));
     }
 
     @Override
     public Mono<Void> updateBio(String userId, String bio) {
-        return Mono.fromCallable(() -> {
+        return Mono.defer(() -> {
             DocumentReference userRef = firestoreDb.collection("Users")
                     .document(Objects.requireNonNull(userId, "userId no puede ser null"));
 
@@ -156,33 +271,44 @@ public class UserRepositoryImpl implements UserRepository {
                     "usr_bio",
                     Objects.requireNonNull(bio, "bio no puede ser null"));
 
-            userRef.update(update).get();
-            return null;
+            return ReactiveFirestore.toMono(() -> userRef.update(update));
         }).onErrorMap(e -> {
             System.err.println("Error de Firestore al actualizar bio: " + e.getMessage());
             return new RuntimeException("FIRESTORE_UPDATE_BIO_FAILED", e);
-        }).then();
+        }).then(invalidateProfile(userId));
+    }
+
+    private Mono<Void> invalidateProfile(String userId) {
+        // Primero la caché local y después el aviso al resto de réplicas
+        return Mono.fromRunnable(() -> profileCache.invalidate(userId))
+                .then(cacheCoherence.publishInvalidation("Users", userId));
     }
 
     @Override
     public Mono<UserSchema> findUserByEmail(String email) {
-        return Mono.fromCallable(() -> {
-            QuerySnapshot snapshot = firestoreDb.collection("Users")
+        return Mono.defer(() -> {
+            UserSchema cached = profileCache.getByEmail(email);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+
+            return ReactiveFirestore.toMono(() -> firestoreDb.collection("Users")
                     .whereEqualTo("usr_email", email)
                     .limit(1)
-                    .get()
-                    .get();
+                    .get())
+                    .mapNotNull(snapshot -> {
+                        if (snapshot.isEmpty()) {
+                            return null;
+                        }
 
-            if (snapshot.isEmpty()) {
-                return null;
-            }
-
-            var document = snapshot.getDocuments().get(0);
-            UserSchema user = document.toObject(UserSchema.class);
-            if (user != null) {
-                user.setUsr_id(document.getId());
-            }
-            return user;
+                        var document = snapshot.getDocuments().get(0);
+                        UserSchema user = document.toObject(UserSchema.class);
+                        if (user != null) {
+                            user.setUsr_id(document.getId());
+                            profileCache.put(user);
+                        }
+                        return user;
+                    });
         }).onErrorMap(e -> {
             System.err.println("ERROR: Fallo al buscar usuario por email " + email + ". Causa: " + e.getMessage());
             return new RuntimeException("FIRESTORE_FIND_BY_EMAIL_FAILED", e);
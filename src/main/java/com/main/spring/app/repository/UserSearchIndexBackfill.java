@@ -0,0 +1,119 @@
+package com.main.spring.app.repository;
+
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.WriteBatch;
+import com.main.spring.app.repository.support.FirestoreErrors;
+import com.main.spring.app.repository.support.ReactiveFirestore;
+import com.main.spring.app.repository.support.SearchTokens;
+
+import jakarta.annotation.PostConstruct;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Rellena {@code usr_searchTokens} en usuarios registrados antes de que
+ * existiera el índice de búsqueda, y reserva su username en
+ * {@code Usernames} para que el registro no lo vuelva a dar. Se activa una
+ * vez con {@code users.search.backfill-on-startup=true}: recorre Users por
+ * ID en páginas y reescribe los tokens en lote. Es idempotente.
+ *
+ * Las reservas se crean una a una con {@code create()}: nunca pisan una
+ * reserva existente (un registro nuevo, o dos cuentas antiguas cuyo username
+ * normaliza igual). Los conflictos solo se registran en el log para
+ * resolverlos a mano.
+ */
+@Repository
+public class UserSearchIndexBackfill {
+
+    private static final int PAGE_SIZE = 500; // Límite de escrituras por lote
+    private static final int RESERVE_CONCURRENCY = 16;
+
+    private final Firestore firestoreDb;
+    private final boolean enabled;
+
+    public UserSearchIndexBackfill(Firestore firestoreDb,
+            @Value("${users.search.backfill-on-startup:false}") boolean enabled) {
+        this.firestoreDb = firestoreDb;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    void startBackfill() {
+        if (!enabled) {
+            return;
+        }
+        backfill(null)
+                .subscribe(
+                        total -> System.out.println("LOG: Índice de búsqueda regenerado para " + total + " usuarios"),
+                        e -> System.err.println("ERROR FIRESTORE: Fallo al regenerar índice de búsqueda. Causa: "
+                                + e.getMessage()));
+    }
+
+    private Mono<Integer> backfill(String afterId) {
+        return Mono.defer(() -> {
+            Query query = firestoreDb.collection("Users")
+                    .select("usr_username", "usr_email")
+                    .orderBy(FieldPath.documentId())
+                    .limit(PAGE_SIZE);
+            if (afterId != null) {
+                query = query.startAfter(afterId);
+            }
+            Query pageQuery = query;
+            return ReactiveFirestore.toMono(pageQuery::get);
+        }).flatMap(snapshot -> {
+            if (snapshot.isEmpty()) {
+                return Mono.just(0);
+            }
+            List<QueryDocumentSnapshot> users = snapshot.getDocuments();
+            String lastId = users.get(users.size() - 1).getId();
+
+            return writeTokens(snapshot)
+                    .then(users.size() < PAGE_SIZE ? Mono.just(0) : backfill(lastId))
+                    .map(rest -> users.size() + rest);
+        });
+    }
+
+    private Mono<Void> writeTokens(QuerySnapshot snapshot) {
+        WriteBatch batch = firestoreDb.batch();
+        for (QueryDocumentSnapshot user : snapshot.getDocuments()) {
+            List<String> tokens = SearchTokens.forUser(user.getString("usr_username"), user.getString("usr_email"));
+            batch.update(user.getReference(), Map.of("usr_searchTokens", tokens));
+        }
+
+        Mono<Void> reservations = Flux.fromIterable(snapshot.getDocuments())
+                .filter(user -> !SearchTokens.normalize(user.getString("usr_username")).isEmpty())
+                .flatMap(user -> reserveUsername(user.getId(), user.getString("usr_username")), RESERVE_CONCURRENCY)
+                .then();
+
+        return ReactiveFirestore.toMono(batch::commit).then(reservations);
+    }
+
+    private Mono<Void> reserveUsername(String uid, String username) {
+        DocumentReference usernameRef = firestoreDb.collection("Usernames")
+                .document(AuthRepositoryImpl.usernameKey(username));
+
+        return ReactiveFirestore.toMono(() -> usernameRef.create(Map.of("uid", uid)))
+                .then()
+                .onErrorResume(e -> FirestoreErrors.hasCode(e, "ALREADY_EXISTS"),
+                        e -> ReactiveFirestore.toMono(usernameRef::get)
+                                .doOnNext(existing -> {
+                                    String owner = existing.getString("uid");
+                                    if (!uid.equals(owner)) {
+                                        System.err.println("ADVERTENCIA: Username '" + username + "' de " + uid
+                                                + " ya reservado por " + owner + "; no se sobrescribe");
+                                    }
+                                })
+                                .then());
+    }
+}
@@ -0,0 +1,45 @@
+package com.main.spring.app.repository.support;
+
+import com.google.api.gax.rpc.ApiException;
+import com.google.cloud.firestore.FirestoreException;
+
+import io.grpc.StatusRuntimeException;
+
+import java.util.Set;
+
+/**
+ * Clasificación de los errores de Firestore por su código gRPC.
+ *
+ * El SDK los entrega envueltos de formas distintas según la operación
+ * ({@link FirestoreException}, {@link ApiException} o
+ * {@link StatusRuntimeException}, a veces como causa de una
+ * {@code ExecutionException}), así que se recorre la cadena de causas.
+ */
+public final class FirestoreErrors {
+
+    private FirestoreErrors() {
+    }
+
+    /**
+     * @param codes Nombres de {@code io.grpc.Status.Code} (ej: "NOT_FOUND").
+     * @return {@code true} si el error o alguna de sus causas tiene uno de
+     *         esos códigos.
+     */
+    public static boolean hasCode(Throwable error, String... codes) {
+        Set<String> expected = Set.of(codes);
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            String code = null;
+            if (e instanceof FirestoreException firestoreException && firestoreException.getStatus() != null) {
+                code = firestoreException.getStatus().getCode().name();
+            } else if (e instanceof ApiException apiException) {
+                code = apiException.getStatusCode().getCode().name();
+            } else if (e instanceof StatusRuntimeException statusException) {
+                code = statusException.getStatus().getCode().name();
+            }
+            if (code != null && expected.contains(code)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,49 @@
+package com.main.spring.app.repository.support;
+
+import com.google.cloud.Timestamp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Cursor opaco para paginar consultas ordenadas por timestamp + ID de
+ * documento.
+ *
+ * Se serializa como Base64 URL-safe de {@code segundos:nanos:docId}, de modo
+ * que el cliente no depende del formato interno. El ID desempata documentos
+ * con el mismo timestamp.
+ */
+public record PageCursor(Timestamp timestamp, String documentId) {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    public String encode() {
+        String raw = timestamp.getSeconds() + ":" + timestamp.getNanos() + ":" + documentId;
+        return ENCODER.encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor Cursor recibido del cliente (puede ser null o vacío).
+     * @return El cursor decodificado, o null si no se envió ninguno.
+     * @throws IllegalArgumentException con mensaje INVALID_CURSOR si el
+     *                                  formato no es válido.
+     */
+    public static PageCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(DECODER.decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":", 3);
+            Timestamp timestamp = Timestamp.ofTimeSecondsAndNanos(
+                    Long.parseLong(parts[0]), Integer.parseInt(parts[1]));
+            if (parts[2].isEmpty()) {
+                throw new IllegalArgumentException("documentId vacío");
+            }
+            return new PageCursor(timestamp, parts[2]);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("INVALID_CURSOR", e);
+        }
+    }
+}
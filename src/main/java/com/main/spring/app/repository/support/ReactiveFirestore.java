@@ -0,0 +1,70 @@
+package com.main.spring.app.repository.support;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Supplier;
+
+/**
+ * Puente reactivo entre los {@link ApiFuture} del SDK de Firebase/Firestore y
+ * Reactor.
+ *
+ * En lugar de llamar a {@code future.get()} (bloqueante), registra un callback
+ * sobre el future y completa el {@link Mono} cuando Firestore responde. Así el
+ * event loop de Netty nunca queda esperando un round-trip.
+ *
+ * El future se crea de forma perezosa (al suscribirse), por eso se recibe un
+ * {@link Supplier}: {@code docRef.get()} dispara la petición en cuanto se
+ * invoca.
+ */
+public final class ReactiveFirestore {
+
+    private ReactiveFirestore() {
+    }
+
+    /**
+     * Convierte la operación en un {@link Mono}. Un resultado {@code null}
+     * (ej: {@code WriteResult} ignorado o un mapeo vacío) se emite como vacío.
+     *
+     * @param futureSupplier Operación del SDK que devuelve un ApiFuture.
+     * @return Mono que se completa desde el callback del future.
+     */
+    public static <T> Mono<T> toMono(Supplier<ApiFuture<T>> futureSupplier) {
+        return Mono.create(sink -> {
+            ApiFuture<T> future = futureSupplier.get();
+
+            ApiFutures.addCallback(future, new ApiFutureCallback<T>() {
+                @Override
+                public void onSuccess(T result) {
+                    sink.success(result);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    sink.error(t);
+                }
+            }, MoreExecutors.directExecutor());
+
+            // Si el cliente cancela la petición, dejamos de esperar a Firestore
+            sink.onCancel(() -> future.cancel(false));
+        });
+    }
+
+    /**
+     * Ejecuta una consulta y emite sus documentos uno a uno.
+     *
+     * @param querySupplier Consulta a ejecutar (ej: {@code () -> query.get()}).
+     * @return Flux con los documentos del snapshot.
+     */
+    public static Flux<QueryDocumentSnapshot> toFlux(Supplier<ApiFuture<QuerySnapshot>> querySupplier) {
+        return toMono(querySupplier)
+                .flatMapIterable(QuerySnapshot::getDocuments);
+    }
+}
@@ -0,0 +1,109 @@
+package com.main.spring.app.repository.support;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Operación de varios pasos sin transacción común (ej: Firebase Auth +
+ * Firestore) que se deshace a mano si falla.
+ *
+ * Cada paso registra su compensación solo si termina bien. Si algún paso
+ * falla se ejecutan las compensaciones de los pasos completados (con
+ * reintentos) y se propaga el error original. Los pasos independientes
+ * pueden lanzarse a la vez con {@link Mono#whenDelayError}: así todos
+ * terminan antes de compensar y ninguno queda sin deshacer.
+ *
+ * Si el cliente cancela, los pasos en vuelo no se cancelan: se deja
+ * terminar la saga y después se deshace todo lo completado. Cancelar un paso
+ * a medias no garantiza que no se aplique (la petición ya pudo llegar), y
+ * compensar antes de que termine dejaría el recurso huérfano.
+ *
+ * Una instancia por ejecución.
+ */
+public final class Saga {
+
+    private static final int COMPENSATION_RETRIES = 3;
+    private static final Duration COMPENSATION_BACKOFF = Duration.ofMillis(200);
+
+    private static final int RUNNING = 0;
+    private static final int DELIVERED = 1;
+    private static final int CANCELLED = 2;
+
+    private final String name;
+    private final Deque<Supplier<Mono<Void>>> compensations = new ConcurrentLinkedDeque<>();
+
+    public Saga(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param action       Paso a ejecutar.
+     * @param compensation Cómo deshacerlo; solo se registra si el paso termina
+     *                     bien.
+     */
+    public <T> Mono<T> step(Mono<T> action, Supplier<Mono<Void>> compensation) {
+        return action.doOnSuccess(result -> compensations.push(compensation));
+    }
+
+    /**
+     * Ejecuta {@code saga} y compensa los pasos completados si falla, o todos
+     * si el cliente canceló antes de recibir el resultado.
+     */
+    public <T> Mono<T> run(Mono<T> saga) {
+        return Mono.create(sink -> {
+            // RUNNING -> DELIVERED (el cliente recibe el resultado) o -> CANCELLED
+            AtomicInteger state = new AtomicInteger(RUNNING);
+            sink.onCancel(() -> state.compareAndSet(RUNNING, CANCELLED));
+
+            saga.materialize()
+                    .flatMap(signal -> {
+                        if (signal.isOnError()) {
+                            return compensate().thenReturn(signal);
+                        }
+                        if (!state.compareAndSet(RUNNING, DELIVERED)) {
+                            // Nadie espera ya el resultado: deshacer lo que terminó tras la cancelación
+                            return compensate().then(Mono.<Signal<T>>empty());
+                        }
+                        return Mono.just(signal);
+                    })
+                    .subscribe(signal -> {
+                        if (signal.isOnError()) {
+                            sink.error(signal.getThrowable());
+                        } else if (signal.hasValue()) {
+                            sink.success(signal.get());
+                        } else {
+                            sink.success();
+                        }
+                    });
+        });
+    }
+
+    private Mono<Void> compensate() {
+        List<Supplier<Mono<Void>>> pending = new ArrayList<>();
+        Supplier<Mono<Void>> next;
+        while ((next = compensations.poll()) != null) {
+            pending.add(next);
+        }
+
+        return Flux.fromIterable(pending)
+                .flatMap(compensation -> Mono.defer(compensation)
+                        .retryWhen(Retry.backoff(COMPENSATION_RETRIES, COMPENSATION_BACKOFF))
+                        .onErrorResume(e -> {
+                            // Queda un recurso huérfano: el log es lo único que lo delata
+                            System.err.println("ERROR SAGA " + name + ": No se pudo compensar un paso. Causa: "
+                                    + e.getMessage());
+                            return Mono.empty();
+                        }))
+                .then();
+    }
+}
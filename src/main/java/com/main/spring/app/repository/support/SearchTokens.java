@@ -0,0 +1,128 @@
+package com.main.spring.app.repository.support;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Tokens de búsqueda de usuarios, guardados en {@code usr_searchTokens}.
+ *
+ * El texto se normaliza (minúsculas, sin tildes, espacios simples) y se
+ * generan:
+ * <ul>
+ * <li>prefijos del username completo, de cada palabra del username y de la
+ * parte local del email (búsqueda "empieza por");</li>
+ * <li>trigramas del username y de la parte local del email (búsqueda
+ * "contiene").</li>
+ * </ul>
+ * Una búsqueda consulta primero el prefijo ({@link #prefixToken}) y solo
+ * si faltan resultados los trigramas ({@link #ngramTokens}).
+ */
+public final class SearchTokens {
+
+    public static final int MAX_PREFIX_LENGTH = 20;
+    public static final int NGRAM_LENGTH = 3;
+    // Trigramas consultados por búsqueda (cada uno es una consulta a Firestore)
+    public static final int MAX_NGRAM_QUERIES = 3;
+    // Longitud máxima del texto indexado (acota el número de tokens por usuario)
+    private static final int MAX_INDEXED_LENGTH = 40;
+
+    private SearchTokens() {
+    }
+
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return decomposed.replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT)
+                .trim()
+                .replaceAll("\\s+", " ");
+    }
+
+    /**
+     * @return Tokens a guardar en el documento del usuario.
+     */
+    public static List<String> forUser(String username, String email) {
+        Set<String> tokens = new LinkedHashSet<>();
+
+        String name = truncate(normalize(username));
+        String emailLocal = truncate(localPart(normalize(email)));
+
+        addPrefixes(tokens, name);
+        for (String word : name.split("[^\\p{L}\\p{N}]+")) {
+            addPrefixes(tokens, word);
+        }
+        addPrefixes(tokens, emailLocal);
+        for (String word : emailLocal.split("[^\\p{L}\\p{N}]+")) {
+            addPrefixes(tokens, word);
+        }
+
+        addNgrams(tokens, name);
+        addNgrams(tokens, emailLocal);
+
+        return new ArrayList<>(tokens);
+    }
+
+    /**
+     * @return Token de la consulta como prefijo (recortado a
+     *         {@link #MAX_PREFIX_LENGTH}), o {@code null} si la consulta está
+     *         vacía.
+     */
+    public static String prefixToken(String query) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            return null;
+        }
+        return normalized.length() > MAX_PREFIX_LENGTH
+                ? normalized.substring(0, MAX_PREFIX_LENGTH)
+                : normalized;
+    }
+
+    /**
+     * @return Trigramas de la consulta para encontrar coincidencias en medio
+     *         del texto (se verifican después en memoria): hasta
+     *         {@link #MAX_NGRAM_QUERIES}, repartidos entre el principio y el
+     *         final de la parte indexada, sin repetir. Vacío si la consulta no
+     *         es más larga que un trigrama: en ese caso el prefijo ya cubre el
+     *         trigrama o no hay ninguno.
+     */
+    public static List<String> ngramTokens(String query) {
+        String normalized = truncate(normalize(query));
+        if (normalized.length() <= NGRAM_LENGTH) {
+            return List.of();
+        }
+        int last = normalized.length() - NGRAM_LENGTH;
+        Set<String> tokens = new LinkedHashSet<>();
+        for (int i = 0; i < MAX_NGRAM_QUERIES; i++) {
+            int start = Math.round((float) last * i / (MAX_NGRAM_QUERIES - 1));
+            tokens.add(normalized.substring(start, start + NGRAM_LENGTH));
+        }
+        return new ArrayList<>(tokens);
+    }
+
+    private static void addPrefixes(Set<String> tokens, String text) {
+        for (int i = 1; i <= Math.min(text.length(), MAX_PREFIX_LENGTH); i++) {
+            tokens.add(text.substring(0, i));
+        }
+    }
+
+    private static void addNgrams(Set<String> tokens, String text) {
+        for (int i = 0; i + NGRAM_LENGTH <= text.length(); i++) {
+            tokens.add(text.substring(i, i + NGRAM_LENGTH));
+        }
+    }
+
+    private static String localPart(String email) {
+        int at = email.indexOf('@');
+        return at >= 0 ? email.substring(0, at) : email;
+    }
+
+    private static String truncate(String text) {
+        return text.length() > MAX_INDEXED_LENGTH ? text.substring(0, MAX_INDEXED_LENGTH) : text;
+    }
+}
@@ -12,6 +12,10 @@ public class PostsSchema {
     public String pos_postId;
     public String pos_authorUid;
     public String pos_imageUrl;
+    // Miniaturas JPEG (lado mayor en px); null en posts antiguos o si no se pudieron generar
+    public String pos_imageUrl150;
+    public String pos_imageUrl480;
+    public String pos_imageUrl1080;
     public String pos_caption;
     public Timestamp pos_timestamp;
     public int pos_likesCount = 0;
@@ -7,6 +7,8 @@ import lombok.Data;
 public class SubscriptionSchema {
 
     public Timestamp sub_timestamp;
+    // Solo en Following: el autor seguido es fan-out-on-read (ver FeedRepositoryImpl)
+    public boolean sub_fanoutOnRead;
 
     public SubscriptionSchema() {
         this.sub_timestamp = Timestamp.now();
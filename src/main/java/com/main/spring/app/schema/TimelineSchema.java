@@ -0,0 +1,25 @@
+package com.main.spring.app.schema;
+
+import com.google.cloud.Timestamp;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Entrada del timeline de un usuario: Users/{uid}/Timeline/{postId}.
+ *
+ * Solo guarda la referencia al post (el contenido se lee de Posts), así los
+ * contadores y la descripción siempre están actualizados.
+ */
+@Data
+@NoArgsConstructor
+public class TimelineSchema {
+
+    public String tim_authorUid;
+    public Timestamp tim_timestamp; // Copia de pos_timestamp para ordenar el feed
+
+    public TimelineSchema(String tim_authorUid, Timestamp tim_timestamp) {
+        this.tim_authorUid = tim_authorUid;
+        this.tim_timestamp = tim_timestamp;
+    }
+}
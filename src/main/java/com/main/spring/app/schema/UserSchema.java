@@ -1,5 +1,7 @@
 package com.main.spring.app.schema;
 
+import java.util.List;
+
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
@@ -13,6 +15,7 @@ public class UserSchema {
     public String usr_email;
     public String usr_photoUrl;
     public String usr_bio; // Usaremos el constructor para el valor por defecto
+    public List<String> usr_searchTokens; // Índice de búsqueda (ver SearchTokens), no se expone en la API
 
     // Constructor para la creación (opcional, si no usas @AllArgsConstructor)
     public UserSchema(String usr_username, String usr_email, String usr_photoUrl, String usr_bio) {
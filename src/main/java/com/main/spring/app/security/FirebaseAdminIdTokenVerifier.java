@@ -0,0 +1,36 @@
+package com.main.spring.app.security;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.main.spring.app.interfaces.auth.IdTokenVerifier;
+import com.main.spring.app.repository.support.ReactiveFirestore;
+
+import org.springframework.security.authentication.BadCredentialsException;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Verificación con el Admin SDK ({@code verifyIdTokenAsync}). Solo se usa
+ * con {@code auth.id-token.verifier=admin}; el SDK gestiona sus propias
+ * claves y su pool de hilos.
+ */
+public class FirebaseAdminIdTokenVerifier implements IdTokenVerifier {
+
+    private final FirebaseAuth firebaseAuth;
+
+    public FirebaseAdminIdTokenVerifier(FirebaseAuth firebaseAuth) {
+        this.firebaseAuth = firebaseAuth;
+    }
+
+    @Override
+    public Mono<VerifiedIdToken> verify(String idToken) {
+        return ReactiveFirestore.toMono(() -> firebaseAuth.verifyIdTokenAsync(idToken))
+                .map(decodedToken -> {
+                    Object exp = decodedToken.getClaims().get("exp");
+                    return new VerifiedIdToken(decodedToken.getUid(), decodedToken.getName(),
+                            decodedToken.getEmail(), exp instanceof Number number ? number.longValue() : 0);
+                })
+                .onErrorMap(FirebaseAuthException.class,
+                        e -> new BadCredentialsException("Invalid Firebase Token", e));
+    }
+}
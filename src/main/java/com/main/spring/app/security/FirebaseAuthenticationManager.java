@@ -1,6 +1,15 @@
 package com.main.spring.app.security;
 
-import com.google.firebase.auth.FirebaseAuth;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.main.spring.app.interfaces.auth.IdTokenVerifier;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.ReactiveAuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -8,27 +17,85 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.Collections;
+import java.util.HexFormat;
 import java.util.List;
 
+/**
+ * Autentica las peticiones con el ID token de Firebase del header
+ * {@code Authorization}, verificado con {@link IdTokenVerifier}.
+ *
+ * Los tokens ya verificados se guardan en una caché (clave: SHA-256 del
+ * token, nunca el token) hasta su {@code exp} menos
+ * {@code auth.token-cache.clock-skew-seconds}, así que un cliente no paga la
+ * verificación RSA en cada petición de su sesión. Al leer la caché se vuelve
+ * a comparar {@code exp} con el reloj actual. La verificación no consulta
+ * revocaciones, por lo que la caché no cambia qué tokens se aceptan. Métricas: {@code cache.gets}, {@code cache.evictions} y
+ * {@code cache.size} con {@code cache=auth.tokens}.
+ */
 @Component
 public class FirebaseAuthenticationManager implements ReactiveAuthenticationManager {
 
+    private final IdTokenVerifier idTokenVerifier;
+    private final boolean cacheEnabled;
+    private final long clockSkewSeconds;
+    private final Clock clock;
+    private final Cache<String, VerifiedIdToken> verifiedTokens;
+
+    @Autowired
+    public FirebaseAuthenticationManager(IdTokenVerifier idTokenVerifier, MeterRegistry meterRegistry,
+            @Value("${auth.token-cache.enabled:true}") boolean cacheEnabled,
+            @Value("${auth.token-cache.max-size:10000}") long maxSize,
+            @Value("${auth.token-cache.clock-skew-seconds:60}") long clockSkewSeconds) {
+        this(idTokenVerifier, meterRegistry, cacheEnabled, maxSize, clockSkewSeconds, Clock.systemUTC());
+    }
+
+    // Para tests: reloj controlable
+    FirebaseAuthenticationManager(IdTokenVerifier idTokenVerifier, MeterRegistry meterRegistry,
+            boolean cacheEnabled, long maxSize, long clockSkewSeconds, Clock clock) {
+        this.idTokenVerifier = idTokenVerifier;
+        this.cacheEnabled = cacheEnabled;
+        this.clockSkewSeconds = clockSkewSeconds;
+        this.clock = clock;
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, VerifiedIdToken>() {
+                    @Override
+                    public long expireAfterCreate(String key, VerifiedIdToken token, long currentTime) {
+                        return remaining(token).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, VerifiedIdToken token, long currentTime,
+                            long currentDuration) {
+                        return remaining(token).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, VerifiedIdToken token, long currentTime,
+                            long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "auth.tokens");
+    }
+
     @Override
     public Mono<Authentication> authenticate(Authentication authentication) {
         String authToken = authentication.getCredentials().toString();
 
-        return Mono.fromCallable(() -> {
-            try {
-                return FirebaseAuth.getInstance().verifyIdToken(authToken);
-            } catch (Exception e) {
-                throw new org.springframework.security.authentication.BadCredentialsException("Invalid Firebase Token",
-                        e);
-            }
-        })
-                .map(decodedToken -> {
-                    String uid = decodedToken.getUid();
-                    String name = decodedToken.getName(); // Extract name
+        return verify(authToken)
+                .map(verifiedToken -> {
+                    String uid = verifiedToken.uid();
+                    String name = verifiedToken.name(); // Extract name
                     // Aquí podrías extraer roles si los tienes en el token
                     List<SimpleGrantedAuthority> authorities = Collections
                             .singletonList(new SimpleGrantedAuthority("ROLE_USER"));
@@ -54,4 +121,40 @@ public class FirebaseAuthenticationManager implements ReactiveAuthenticationMana
                     return new UsernamePasswordAuthenticationToken(uid, name, authorities);
                 });
     }
+
+    private Mono<VerifiedIdToken> verify(String authToken) {
+        String key = cacheEnabled ? sha256(authToken) : null;
+        if (key != null) {
+            VerifiedIdToken cached = verifiedTokens.getIfPresent(key);
+            // La caché caduca por tiempo transcurrido; se comprueba también el reloj
+            if (cached != null && !remaining(cached).isZero()) {
+                return Mono.just(cached);
+            }
+        }
+
+        return idTokenVerifier.verify(authToken)
+                .doOnNext(verifiedToken -> {
+                    if (key != null && !remaining(verifiedToken).isZero()) {
+                        verifiedTokens.put(key, verifiedToken);
+                    }
+                });
+    }
+
+    /**
+     * Tiempo que la entrada puede seguir en caché: hasta {@code exp} menos el
+     * margen por desfase de reloj con Firebase.
+     */
+    private Duration remaining(VerifiedIdToken token) {
+        long seconds = token.expiresAtEpochSecond() - clockSkewSeconds - clock.millis() / 1000;
+        return seconds > 0 ? Duration.ofSeconds(seconds) : Duration.ZERO;
+    }
+
+    private static String sha256(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
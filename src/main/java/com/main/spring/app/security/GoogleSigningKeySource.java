@@ -0,0 +1,81 @@
+package com.main.spring.app.security;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.PublicKey;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Certificados x509 públicos de {@code securetoken@system.gserviceaccount.com}
+ * ({@code auth.id-token.keys-url}). Google los rota cada pocas horas y
+ * publica cuánto tiempo cachearlos en {@code Cache-Control: max-age}.
+ */
+@Component
+public class GoogleSigningKeySource implements SigningKeySource {
+
+    private static final Pattern MAX_AGE = Pattern.compile("max-age=(\\d+)");
+    private static final Duration DEFAULT_MAX_AGE = Duration.ofHours(1);
+
+    private final WebClient webClient;
+    private final String keysUrl;
+
+    public GoogleSigningKeySource(
+            @Qualifier("firebaseAuthWebClient") WebClient firebaseAuthWebClient,
+            @Value("${auth.id-token.keys-url:https://www.googleapis.com/robot/v1/metadata/x509/securetoken@system.gserviceaccount.com}") String keysUrl) {
+        this.webClient = firebaseAuthWebClient;
+        this.keysUrl = keysUrl;
+    }
+
+    @Override
+    public Mono<SigningKeys> fetchKeys() {
+        return webClient.get()
+                .uri(keysUrl)
+                .retrieve()
+                .toEntity(new ParameterizedTypeReference<Map<String, String>>() {
+                })
+                .map(response -> new SigningKeys(
+                        parseCertificates(response.getBody()),
+                        maxAge(response.getHeaders().getFirst(HttpHeaders.CACHE_CONTROL))));
+    }
+
+    private static Map<String, PublicKey> parseCertificates(Map<String, String> pemByKid) {
+        if (pemByKid == null || pemByKid.isEmpty()) {
+            throw new IllegalStateException("Respuesta sin claves públicas");
+        }
+        try {
+            CertificateFactory factory = CertificateFactory.getInstance("X.509");
+            Map<String, PublicKey> keys = new HashMap<>();
+            for (Map.Entry<String, String> entry : pemByKid.entrySet()) {
+                keys.put(entry.getKey(), factory.generateCertificate(
+                        new ByteArrayInputStream(entry.getValue().getBytes(StandardCharsets.US_ASCII)))
+                        .getPublicKey());
+            }
+            return Map.copyOf(keys);
+        } catch (CertificateException e) {
+            throw new IllegalStateException("Certificado inválido: " + e.getMessage(), e);
+        }
+    }
+
+    private static Duration maxAge(String cacheControl) {
+        if (cacheControl == null) {
+            return DEFAULT_MAX_AGE;
+        }
+        Matcher matcher = MAX_AGE.matcher(cacheControl);
+        return matcher.find() ? Duration.ofSeconds(Long.parseLong(matcher.group(1))) : DEFAULT_MAX_AGE;
+    }
+}
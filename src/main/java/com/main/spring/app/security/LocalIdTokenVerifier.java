@@ -0,0 +1,232 @@
+package com.main.spring.app.security;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.main.spring.app.interfaces.auth.IdTokenVerifier;
+import com.main.spring.app.security.SigningKeySource.SigningKeys;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.security.authentication.BadCredentialsException;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+/**
+ * Verifica ID tokens de Firebase en local, sin el Admin SDK: firma RS256 con
+ * las claves públicas de Google y los claims que exige Firebase
+ * ({@code aud}, {@code iss}, {@code sub}, {@code exp}, {@code iat},
+ * {@code auth_time}).
+ *
+ * Las claves se guardan en memoria y se sustituyen de golpe
+ * ({@link AtomicReference}) cuando se renuevan. La renovación corre en
+ * segundo plano cuando vence el {@code max-age} de las claves actuales; si
+ * falla se reintenta cada {@value #RETRY_SECONDS} s sin perder las
+ * anteriores. Un {@code kid} desconocido fuerza una renovación (como mucho
+ * una cada {@value #MIN_REFRESH_SECONDS} s), por si Google acaba de rotar.
+ * Nada bloquea: la verificación RSA es solo CPU y las claves se piden con
+ * WebClient.
+ */
+public class LocalIdTokenVerifier implements IdTokenVerifier {
+
+    private static final long RETRY_SECONDS = 30;
+    private static final long MIN_REFRESH_SECONDS = 60;
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final SigningKeySource keySource;
+    private final String projectId;
+    private final String issuer;
+    private final long clockSkewSeconds;
+    private final Clock clock;
+
+    private final AtomicReference<SigningKeys> keys = new AtomicReference<>();
+    private final AtomicReference<Mono<SigningKeys>> refreshing = new AtomicReference<>();
+    private final AtomicReference<Disposable> nextRefresh = new AtomicReference<>();
+    private final AtomicLong lastRefreshMillis = new AtomicLong();
+
+    public LocalIdTokenVerifier(SigningKeySource keySource, String projectId, long clockSkewSeconds, Clock clock) {
+        if (projectId == null || projectId.isBlank()) {
+            throw new IllegalStateException("Falta el project ID de Firebase (firebase.project-id)");
+        }
+        this.keySource = keySource;
+        this.projectId = projectId;
+        this.issuer = "https://securetoken.google.com/" + projectId;
+        this.clockSkewSeconds = clockSkewSeconds;
+        this.clock = clock;
+    }
+
+    /**
+     * Pide las claves al arrancar para que la primera petición no espere.
+     */
+    public void start() {
+        refresh().subscribe(k -> {
+        }, e -> {
+        });
+    }
+
+    public void stop() {
+        Disposable scheduled = nextRefresh.getAndSet(null);
+        if (scheduled != null) {
+            scheduled.dispose();
+        }
+    }
+
+    @Override
+    public Mono<VerifiedIdToken> verify(String idToken) {
+        return Mono.defer(() -> {
+            ParsedToken token = parse(idToken);
+
+            SigningKeys current = keys.get();
+            if (current != null && current.keys().containsKey(token.kid())) {
+                return Mono.just(verify(token, current));
+            }
+
+            // Sin claves todavía, o Google ha rotado: renovar y reintentar una vez
+            boolean canRefresh = current == null
+                    || clock.millis() - lastRefreshMillis.get() >= MIN_REFRESH_SECONDS * 1000;
+            if (!canRefresh) {
+                return Mono.error(new BadCredentialsException("Clave de firma desconocida"));
+            }
+            return refresh()
+                    .onErrorMap(e -> new BadCredentialsException("No se pudieron obtener las claves de firma", e))
+                    .map(refreshed -> verify(token, refreshed));
+        });
+    }
+
+    /**
+     * Una sola petición de claves a la vez; quien llegue mientras tanto
+     * espera a la misma respuesta.
+     */
+    private Mono<SigningKeys> refresh() {
+        while (true) {
+            Mono<SigningKeys> inProgress = refreshing.get();
+            if (inProgress != null) {
+                return inProgress;
+            }
+
+            Mono<SigningKeys> fetch = keySource.fetchKeys()
+                    .doOnNext(fetched -> {
+                        keys.set(fetched);
+                        lastRefreshMillis.set(clock.millis());
+                        scheduleRefresh(fetched.maxAge());
+                    })
+                    .doOnError(e -> {
+                        System.err.println("ERROR AUTH: Fallo al obtener las claves de firma de Google. Causa: "
+                                + e.getMessage());
+                        scheduleRefresh(Duration.ofSeconds(RETRY_SECONDS));
+                    })
+                    .doFinally(signal -> refreshing.set(null))
+                    .cache();
+
+            if (refreshing.compareAndSet(null, fetch)) {
+                return fetch;
+            }
+        }
+    }
+
+    private void scheduleRefresh(Duration delay) {
+        Duration wait = delay.compareTo(Duration.ofSeconds(MIN_REFRESH_SECONDS)) < 0
+                ? Duration.ofSeconds(MIN_REFRESH_SECONDS)
+                : delay;
+        Disposable scheduled = Mono.delay(wait)
+                .flatMap(tick -> refresh())
+                .subscribe(k -> {
+                }, e -> {
+                });
+        Disposable previous = nextRefresh.getAndSet(scheduled);
+        if (previous != null) {
+            previous.dispose();
+        }
+    }
+
+    private VerifiedIdToken verify(ParsedToken token, SigningKeys signingKeys) {
+        PublicKey key = signingKeys.keys().get(token.kid());
+        if (key == null) {
+            throw new BadCredentialsException("Clave de firma desconocida");
+        }
+
+        try {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initVerify(key);
+            signature.update(token.signedContent());
+            if (!signature.verify(token.signature())) {
+                throw new BadCredentialsException("Firma del token inválida");
+            }
+        } catch (GeneralSecurityException e) {
+            throw new BadCredentialsException("Firma del token inválida", e);
+        }
+
+        Map<String, Object> claims = token.claims();
+        long now = clock.millis() / 1000;
+
+        if (!projectId.equals(claims.get("aud"))) {
+            throw new BadCredentialsException("Token emitido para otro proyecto");
+        }
+        if (!issuer.equals(claims.get("iss"))) {
+            throw new BadCredentialsException("Emisor del token inválido");
+        }
+        if (!(claims.get("sub") instanceof String sub) || sub.isEmpty() || sub.length() > 128) {
+            throw new BadCredentialsException("Token sin uid válido");
+        }
+        long exp = epochSeconds(claims, "exp");
+        if (exp + clockSkewSeconds <= now) {
+            throw new BadCredentialsException("Token expirado");
+        }
+        if (epochSeconds(claims, "iat") - clockSkewSeconds > now) {
+            throw new BadCredentialsException("Token emitido en el futuro");
+        }
+        if (claims.containsKey("auth_time") && epochSeconds(claims, "auth_time") - clockSkewSeconds > now) {
+            throw new BadCredentialsException("auth_time en el futuro");
+        }
+
+        return new VerifiedIdToken(sub,
+                claims.get("name") instanceof String name ? name : null,
+                claims.get("email") instanceof String email ? email : null,
+                exp);
+    }
+
+    private static long epochSeconds(Map<String, Object> claims, String name) {
+        if (claims.get(name) instanceof Number number) {
+            return number.longValue();
+        }
+        throw new BadCredentialsException("Claim " + name + " ausente o inválido");
+    }
+
+    private record ParsedToken(String kid, Map<String, Object> claims, byte[] signedContent, byte[] signature) {
+    }
+
+    private static ParsedToken parse(String idToken) {
+        String[] parts = idToken == null ? new String[0] : idToken.split("\\.", -1);
+        if (parts.length != 3) {
+            throw new BadCredentialsException("Formato de token inválido");
+        }
+
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            Map<String, Object> header = JSON.readValue(decoder.decode(parts[0]),
+                    new TypeReference<Map<String, Object>>() {
+                    });
+            if (!"RS256".equals(header.get("alg")) || !(header.get("kid") instanceof String kid)) {
+                throw new BadCredentialsException("Algoritmo o kid del token inválido");
+            }
+            Map<String, Object> claims = JSON.readValue(decoder.decode(parts[1]),
+                    new TypeReference<Map<String, Object>>() {
+                    });
+            return new ParsedToken(kid, claims,
+                    (parts[0] + "." + parts[1]).getBytes(StandardCharsets.US_ASCII),
+                    decoder.decode(parts[2]));
+        } catch (IOException | IllegalArgumentException e) {
+            throw new BadCredentialsException("Formato de token inválido", e);
+        }
+    }
+}
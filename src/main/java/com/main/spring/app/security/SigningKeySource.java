@@ -0,0 +1,24 @@
+package com.main.spring.app.security;
+
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.Map;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Origen de las claves públicas con las que Google firma los ID tokens. En
+ * producción {@link GoogleSigningKeySource}; en tests, claves generadas
+ * localmente.
+ */
+public interface SigningKeySource {
+
+    /**
+     * Claves por {@code kid} y cuánto tiempo se pueden usar antes de volver
+     * a pedirlas ({@code max-age} de Cache-Control).
+     */
+    record SigningKeys(Map<String, PublicKey> keys, Duration maxAge) {
+    }
+
+    Mono<SigningKeys> fetchKeys();
+}
@@ -0,0 +1,12 @@
+package com.main.spring.app.security;
+
+/**
+ * Datos de un ID token de Firebase ya verificado.
+ *
+ * @param uid                  claim {@code sub}
+ * @param name                 claim {@code name} (puede ser null)
+ * @param email                claim {@code email} (puede ser null)
+ * @param expiresAtEpochSecond claim {@code exp}
+ */
+public record VerifiedIdToken(String uid, String name, String email, long expiresAtEpochSecond) {
+}
@@ -1,8 +1,10 @@
 package com.main.spring.app.service;
 
+import com.main.spring.app.dto.FirebaseTokenResponse;
 import com.main.spring.app.interfaces.auth.AuthRepository;
 import com.main.spring.app.interfaces.auth.AuthService;
 import com.main.spring.app.model.auth.LoginRequest;
+import com.main.spring.app.model.auth.RefreshTokenRequest;
 import com.main.spring.app.model.auth.RegisterRequest;
 
 import org.springframework.stereotype.Service;
@@ -33,4 +35,17 @@ public class AuthServiceImpl implements AuthService {
                 .onErrorResume(e -> Mono.error(new RuntimeException("Error en login: " + e.getMessage())));
     }
 
+    @Override
+    public Mono<FirebaseTokenResponse> loginUserWithTokens(LoginRequest request) {
+        return authRepository.signInWithPassword(request)
+                .doOnSuccess(tokens -> System.out.println("LOG: Login exitoso. Tokens obtenidos."))
+                .onErrorResume(e -> Mono.error(new RuntimeException("Error en login: " + e.getMessage())));
+    }
+
+    @Override
+    public Mono<FirebaseTokenResponse> refreshToken(RefreshTokenRequest request) {
+        return authRepository.refreshToken(request.getRefreshToken())
+                .onErrorResume(e -> Mono.error(new RuntimeException("Error al renovar token: " + e.getMessage())));
+    }
+
 }
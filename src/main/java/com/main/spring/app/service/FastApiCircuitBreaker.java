@@ -0,0 +1,184 @@
+package com.main.spring.app.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Circuit breaker de las llamadas de filtros a FastAPI.
+ *
+ * Tras {@code fastapi.circuit-breaker.failure-threshold} fallos seguidos
+ * (conexión rechazada, timeout o 5xx) el circuito se abre y las llamadas
+ * fallan al instante con {@link OpenException}. Pasados
+ * {@code fastapi.circuit-breaker.open-seconds} se deja pasar una única
+ * llamada de prueba: si funciona, el circuito se cierra; si no, vuelve a
+ * abrirse.
+ *
+ * Métricas: {@code fastapi.circuit.state} (0 cerrado, 1 abierto, 2 prueba)
+ * y {@code fastapi.circuit.rejected}.
+ */
+@Component
+public class FastApiCircuitBreaker {
+
+    private enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final Counter rejected;
+
+    // Protegidos por this
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    public FastApiCircuitBreaker(MeterRegistry meterRegistry,
+            @Value("${fastapi.circuit-breaker.failure-threshold:5}") int failureThreshold,
+            @Value("${fastapi.circuit-breaker.open-seconds:30}") long openSeconds) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = Duration.ofSeconds(openSeconds).toNanos();
+
+        Gauge.builder("fastapi.circuit.state", this, breaker -> breaker.currentState().ordinal())
+                .description("0: cerrado, 1: abierto, 2: llamada de prueba")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("fastapi.circuit.rejected")
+                .description("Llamadas a FastAPI no realizadas por tener el circuito abierto")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return {@code false} si el circuito está abierto y todavía no toca una
+     *         llamada de prueba. No reserva la llamada.
+     */
+    public synchronized boolean allowsCalls() {
+        return state != State.OPEN || System.nanoTime() - openedAt >= openNanos;
+    }
+
+    /**
+     * Ejecuta {@code call} solo si el circuito lo permite y registra su
+     * resultado. Una cancelación no cuenta como fallo ni como éxito.
+     */
+    public <T> Flux<T> protect(Flux<T> call) {
+        return Flux.defer(() -> {
+            if (!tryAcquire()) {
+                rejected.increment();
+                return Flux.error(new OpenException());
+            }
+
+            AtomicBoolean finished = new AtomicBoolean();
+            return call
+                    .doOnComplete(() -> {
+                        if (finished.compareAndSet(false, true)) {
+                            onSuccess();
+                        }
+                    })
+                    .doOnError(e -> {
+                        if (finished.compareAndSet(false, true)) {
+                            if (isUpstreamFailure(e)) {
+                                onFailure();
+                            } else {
+                                // Un 4xx significa que FastAPI responde
+                                onSuccess();
+                            }
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (finished.compareAndSet(false, true)) {
+                            onCancel();
+                        }
+                    });
+        });
+    }
+
+    /**
+     * @return {@code true} si el error indica que FastAPI no está disponible
+     *         (incluido el circuito abierto).
+     */
+    public static boolean isUnavailable(Throwable e) {
+        return e instanceof OpenException || isUpstreamFailure(e);
+    }
+
+    private static boolean isUpstreamFailure(Throwable e) {
+        if (e instanceof WebClientResponseException response) {
+            return response.getStatusCode().is5xxServerError();
+        }
+        return e instanceof WebClientRequestException
+                || e instanceof TimeoutException
+                || e instanceof ConnectException;
+    }
+
+    private synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt < openNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            default:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    private synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            System.out.println("FastAPI disponible de nuevo: circuito cerrado");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    private synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                System.err.println("ADVERTENCIA: FastAPI no disponible tras " + consecutiveFailures
+                        + " fallos. Circuito abierto durante " + Duration.ofNanos(openNanos).toSeconds() + "s");
+            }
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+        trialInFlight = false;
+    }
+
+    private synchronized void onCancel() {
+        trialInFlight = false;
+    }
+
+    private synchronized State currentState() {
+        return state;
+    }
+
+    /**
+     * Circuito abierto: FastAPI no se llama. Se responde con 503.
+     */
+    public static class OpenException extends ResponseStatusException {
+
+        public OpenException() {
+            super(HttpStatus.SERVICE_UNAVAILABLE, "Servidor FastAPI no disponible");
+        }
+    }
+}
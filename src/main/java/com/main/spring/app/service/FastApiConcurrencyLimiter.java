@@ -0,0 +1,252 @@
+package com.main.spring.app.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Límite adaptativo de llamadas concurrentes a FastAPI (AIMD).
+ *
+ * Como mucho {@code limit} llamadas en curso; el resto espera en una cola de
+ * {@code fastapi.limiter.max-queue} posiciones durante
+ * {@code fastapi.limiter.max-wait-ms}. Con la cola llena, o si se agota la
+ * espera, se responde 429 al momento en lugar de acumular peticiones en la
+ * GPU.
+ *
+ * El límite se ajusta con la latencia hasta el primer byte de FastAPI:
+ * <ul>
+ * <li>Respuesta por debajo de {@code fastapi.limiter.latency-threshold-ms}
+ * con al menos la mitad del límite en uso: suma {@code 1/limit} (aprox. +1
+ * por cada ventana de {@code limit} llamadas). Con poco tráfico el límite no
+ * sube: que FastAPI aguante 2 llamadas no dice nada de si aguanta 64.</li>
+ * <li>Respuesta lenta, timeout, error de conexión o 5xx: multiplica por
+ * {@code fastapi.limiter.backoff-ratio}.</li>
+ * </ul>
+ * Métricas: {@code fastapi.limiter.limit}, {@code fastapi.limiter.inflight},
+ * {@code fastapi.limiter.queue} y
+ * {@code fastapi.limiter.rejected{reason=queue_full|timeout}}.
+ */
+@Component
+public class FastApiConcurrencyLimiter {
+
+    private enum Outcome {
+        SUCCESS, DROP, IGNORE
+    }
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+    private final Duration maxWait;
+
+    private final Counter rejectedQueueFull;
+    private final Counter rejectedTimeout;
+
+    // Protegidos por this
+    private double limit;
+    private int inFlight;
+    private final Deque<Waiter> waiting = new ArrayDeque<>();
+
+    public FastApiConcurrencyLimiter(MeterRegistry meterRegistry,
+            @Value("${fastapi.limiter.enabled:true}") boolean enabled,
+            @Value("${fastapi.limiter.initial-limit:8}") int initialLimit,
+            @Value("${fastapi.limiter.min-limit:1}") int minLimit,
+            @Value("${fastapi.limiter.max-limit:64}") int maxLimit,
+            @Value("${fastapi.limiter.max-queue:100}") int maxQueue,
+            @Value("${fastapi.limiter.max-wait-ms:5000}") long maxWaitMs,
+            @Value("${fastapi.limiter.latency-threshold-ms:2000}") long latencyThresholdMs,
+            @Value("${fastapi.limiter.backoff-ratio:0.9}") double backoffRatio) {
+        this.enabled = enabled;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.maxQueue = maxQueue;
+        this.maxWait = Duration.ofMillis(maxWaitMs);
+        this.latencyThresholdNanos = Duration.ofMillis(latencyThresholdMs).toNanos();
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+
+        Gauge.builder("fastapi.limiter.limit", this, FastApiConcurrencyLimiter::currentLimit)
+                .description("Llamadas concurrentes permitidas a FastAPI")
+                .register(meterRegistry);
+        Gauge.builder("fastapi.limiter.inflight", this, FastApiConcurrencyLimiter::currentInFlight)
+                .register(meterRegistry);
+        Gauge.builder("fastapi.limiter.queue", this, FastApiConcurrencyLimiter::queueDepth)
+                .description("Peticiones esperando turno para FastAPI")
+                .register(meterRegistry);
+        this.rejectedQueueFull = Counter.builder("fastapi.limiter.rejected").tag("reason", "queue_full")
+                .register(meterRegistry);
+        this.rejectedTimeout = Counter.builder("fastapi.limiter.rejected").tag("reason", "timeout")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Ejecuta {@code call} cuando hay un hueco libre. El hueco se ocupa hasta
+     * que la respuesta termina, falla o se cancela.
+     *
+     * @throws ResponseStatusException 429 (en el Flux) si la cola está llena
+     *                                 o se agota la espera.
+     */
+    public <T> Flux<T> limit(Flux<T> call) {
+        if (!enabled) {
+            return call;
+        }
+
+        return Flux.usingWhen(
+                acquire(),
+                permit -> call.doOnEach(signal -> permit.markFirstSignal()),
+                permit -> Mono.fromRunnable(() -> release(permit, permit.isSlow() ? Outcome.DROP : Outcome.SUCCESS)),
+                (permit, e) -> Mono.fromRunnable(() -> release(permit, outcomeOf(e, permit))),
+                permit -> Mono.fromRunnable(() -> release(permit, Outcome.IGNORE)));
+    }
+
+    private Mono<Permit> acquire() {
+        return Mono.<Permit>create(sink -> {
+            Waiter waiter = new Waiter(sink);
+            sink.onCancel(() -> {
+                if (waiter.claimed.compareAndSet(false, true)) {
+                    synchronized (this) {
+                        waiting.remove(waiter);
+                    }
+                } else if (waiter.permit != null) {
+                    // Concedido justo cuando se canceló: nadie lo va a liberar
+                    release(waiter.permit, Outcome.IGNORE);
+                }
+            });
+
+            boolean granted = false;
+            boolean queued = false;
+            synchronized (this) {
+                if (inFlight < (int) limit && waiting.isEmpty()) {
+                    inFlight++;
+                    granted = true;
+                } else if (waiting.size() < maxQueue) {
+                    waiting.addLast(waiter);
+                    queued = true;
+                }
+            }
+
+            if (granted) {
+                Permit permit = new Permit();
+                waiter.permit = permit;
+                if (waiter.claimed.compareAndSet(false, true)) {
+                    sink.success(permit);
+                } else {
+                    release(permit, Outcome.IGNORE);
+                }
+            } else if (!queued) {
+                rejectedQueueFull.increment();
+                sink.error(new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                        "Servidor de procesamiento saturado, inténtalo de nuevo"));
+            }
+        }).timeout(maxWait, Mono.error(() -> {
+            rejectedTimeout.increment();
+            return new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                    "Servidor de procesamiento saturado, inténtalo de nuevo");
+        }));
+    }
+
+    private void release(Permit permit, Outcome outcome) {
+        if (!permit.released.compareAndSet(false, true)) {
+            return;
+        }
+
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            // Llamadas en curso contando esta
+            boolean saturated = inFlight * 2 >= limit;
+            inFlight--;
+            if (outcome == Outcome.SUCCESS && saturated) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            } else if (outcome == Outcome.DROP) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            }
+
+            while (inFlight < (int) limit && !waiting.isEmpty()) {
+                Waiter waiter = waiting.pollFirst();
+                Permit next = new Permit();
+                waiter.permit = next;
+                if (waiter.claimed.compareAndSet(false, true)) {
+                    inFlight++;
+                    granted.add(waiter);
+                }
+            }
+        }
+
+        // Fuera del lock: success() ejecuta la llamada del siguiente
+        for (Waiter waiter : granted) {
+            waiter.sink.success(waiter.permit);
+        }
+    }
+
+    private static Outcome outcomeOf(Throwable e, Permit permit) {
+        if (e instanceof WebClientResponseException response) {
+            return response.getStatusCode().is5xxServerError() ? Outcome.DROP : Outcome.IGNORE;
+        }
+        if (e instanceof WebClientRequestException || e instanceof TimeoutException) {
+            return Outcome.DROP;
+        }
+        // Circuito abierto u otros errores locales: no dicen nada de la carga de FastAPI
+        return permit.isSlow() ? Outcome.DROP : Outcome.IGNORE;
+    }
+
+    private synchronized double currentLimit() {
+        return limit;
+    }
+
+    private synchronized int currentInFlight() {
+        return inFlight;
+    }
+
+    private synchronized int queueDepth() {
+        return waiting.size();
+    }
+
+    private final class Permit {
+
+        private final long start = System.nanoTime();
+        private volatile long firstSignal;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        void markFirstSignal() {
+            if (firstSignal == 0) {
+                firstSignal = System.nanoTime();
+            }
+        }
+
+        boolean isSlow() {
+            long end = firstSignal != 0 ? firstSignal : System.nanoTime();
+            return end - start > latencyThresholdNanos;
+        }
+    }
+
+    private final class Waiter {
+
+        private final MonoSink<Permit> sink;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private volatile Permit permit;
+
+        Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+    }
+}
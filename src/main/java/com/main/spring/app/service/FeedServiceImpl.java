@@ -0,0 +1,86 @@
+package com.main.spring.app.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.main.spring.app.dto.PageResponse;
+import com.main.spring.app.interfaces.feed.FeedRepository;
+import com.main.spring.app.interfaces.feed.FeedService;
+import com.main.spring.app.schema.PostsSchema;
+
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+@Service
+public class FeedServiceImpl implements FeedService {
+
+    private static final int MAX_PAGE_SIZE = 50;
+    private static final int MAX_BATCH_WRITES = 500; // Límite de operaciones por WriteBatch
+
+    private final FeedRepository feedRepository;
+    private final int maxFanoutFollowers;
+    private final int fanoutBatchSize;
+
+    public FeedServiceImpl(FeedRepository feedRepository,
+            @Value("${feed.fanout.max-followers:10000}") int maxFanoutFollowers,
+            @Value("${feed.fanout.batch-size:500}") int fanoutBatchSize) {
+        this.feedRepository = feedRepository;
+        this.maxFanoutFollowers = maxFanoutFollowers;
+        this.fanoutBatchSize = Math.max(1, Math.min(fanoutBatchSize, MAX_BATCH_WRITES));
+    }
+
+    @Override
+    public Mono<PageResponse<PostsSchema>> getFeed(String userId, int pageSize, String cursor) {
+        int safePageSize = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+
+        return feedRepository.getFeed(userId, safePageSize, cursor)
+                .onErrorResume(e -> {
+                    if (e instanceof IllegalArgumentException && "INVALID_CURSOR".equals(e.getMessage())) {
+                        return Mono.error(new ResponseStatusException(
+                                HttpStatus.BAD_REQUEST, "El cursor de paginación no es válido."));
+                    }
+                    System.err.println("ERROR: Fallo al consultar el feed. Causa: " + e.getMessage());
+                    return Mono.just(new PageResponse<>(List.of(), null));
+                });
+    }
+
+    /**
+     * Reparte el post a los timelines de los seguidores en segundo plano. La
+     * petición de creación no espera a que termine.
+     */
+    @Override
+    public void fanOutPostAsync(String postId) {
+        feedRepository.fanOutPost(postId, maxFanoutFollowers, fanoutBatchSize)
+                .subscribe(
+                        written -> System.out.println(
+                                "LOG: Fan-out del post " + postId + " a " + written + " timelines"),
+                        e -> System.err.println(
+                                "ERROR: Fallo en fan-out del post " + postId + ". Causa: " + e.getMessage()));
+    }
+
+    @Override
+    public void removeAuthorFromFeedAsync(String userId, String authorUid) {
+        feedRepository.removeAuthorFromTimeline(userId, authorUid)
+                .subscribe(
+                        null,
+                        e -> System.err.println("ERROR: Fallo al limpiar el feed de " + userId
+                                + ". Causa: " + e.getMessage()));
+    }
+
+    /**
+     * Quita el post eliminado de los timelines en segundo plano, igual que el
+     * fan-out al crearlo.
+     */
+    @Override
+    public void removePostFromFeedsAsync(String postId, String authorUid) {
+        feedRepository.removePostFromTimelines(postId, authorUid, fanoutBatchSize)
+                .subscribe(
+                        removed -> System.out.println(
+                                "LOG: Post " + postId + " quitado de " + removed + " timelines de seguidores"),
+                        e -> System.err.println(
+                                "ERROR: Fallo al quitar el post " + postId + " de los feeds. Causa: " + e.getMessage()));
+    }
+}
@@ -0,0 +1,110 @@
+package com.main.spring.app.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.main.spring.app.service.cpu.CpuFilters;
+
+/**
+ * Parámetros de cada filtro a partir de texto (pasos de
+ * {@code /api/process/pipeline}), con los mismos tipos y valores por defecto
+ * que {@code ImageProcessingController}. Así un paso produce la misma clave
+ * en {@link FilterResultCache} que el endpoint individual.
+ */
+final class FilterParams {
+
+    private FilterParams() {
+    }
+
+    /**
+     * @throws ResponseStatusException 400 si el filtro no existe o algún
+     *                                 parámetro es desconocido o inválido.
+     */
+    static Map<String, Object> normalize(String filter, Map<String, String> raw) {
+        Map<String, String> values = raw != null ? raw : Map.of();
+        Map<String, Object> params = new LinkedHashMap<>();
+
+        switch (filter == null ? "" : filter) {
+            case "canny" -> {
+                params.put("kernel_size", kernelSize(values, 5));
+                params.put("sigma", floatValue(values, "sigma", 1.4f));
+                params.put("low_threshold", values.get("low_threshold"));
+                params.put("high_threshold", values.get("high_threshold"));
+                params.put("use_auto", boolValue(values, "use_auto"));
+            }
+            case "gaussian" -> {
+                params.put("kernel_size", kernelSize(values, 5));
+                params.put("sigma", floatValue(values, "sigma", 1.4f));
+                params.put("use_auto", boolValue(values, "use_auto"));
+            }
+            case "emboss" -> {
+                params.put("kernel_size", kernelSize(values, 3));
+                params.put("bias_value", intValue(values, "bias_value", 128));
+                params.put("use_auto", boolValue(values, "use_auto"));
+            }
+            case "watermark" -> {
+                params.put("scale", floatValue(values, "scale", 0.3f));
+                params.put("transparency", floatValue(values, "transparency", 0.3f));
+                params.put("spacing", floatValue(values, "spacing", 0.5f));
+            }
+            case "ripple" -> {
+                params.put("edge_threshold", floatValue(values, "edge_threshold", 100.0f));
+                params.put("color_levels", intValue(values, "color_levels", 8));
+                params.put("saturation", floatValue(values, "saturation", 1.2f));
+            }
+            case "negative", "collage" -> {
+            }
+            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Filtro desconocido: " + filter);
+        }
+
+        for (String name : values.keySet()) {
+            if (!params.containsKey(name)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Parámetro desconocido para " + filter + ": " + name);
+            }
+        }
+        return params;
+    }
+
+    private static Integer intValue(Map<String, String> values, String name, int defaultValue) {
+        String value = values.get(name);
+        try {
+            return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+        } catch (NumberFormatException e) {
+            throw invalid(name);
+        }
+    }
+
+    /**
+     * @throws ResponseStatusException 400 si no está entre 1 y
+     *                                 {@link CpuFilters#MAX_KERNEL_SIZE}.
+     */
+    private static Integer kernelSize(Map<String, String> values, int defaultValue) {
+        int kernelSize = intValue(values, "kernel_size", defaultValue);
+        if (kernelSize < 1 || kernelSize > CpuFilters.MAX_KERNEL_SIZE) {
+            throw invalid("kernel_size");
+        }
+        return kernelSize;
+    }
+
+    private static Float floatValue(Map<String, String> values, String name, float defaultValue) {
+        String value = values.get(name);
+        try {
+            return value != null ? Float.parseFloat(value.trim()) : defaultValue;
+        } catch (NumberFormatException e) {
+            throw invalid(name);
+        }
+    }
+
+    private static Boolean boolValue(Map<String, String> values, String name) {
+        String value = values.get(name);
+        return value != null ? Boolean.parseBoolean(value.trim()) : false;
+    }
+
+    private static ResponseStatusException invalid(String name) {
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, "Valor inválido para " + name);
+    }
+}
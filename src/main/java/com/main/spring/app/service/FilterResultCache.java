@@ -0,0 +1,289 @@
+package com.main.spring.app.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.main.spring.app.config.BlockingCallExecutor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caché de resultados de filtros, direccionada por contenido.
+ *
+ * La clave es el SHA-256 de la imagen de entrada + nombre del filtro +
+ * parámetros normalizados (ordenados por nombre, sin nulos). Tiene dos
+ * niveles:
+ * <ul>
+ * <li>Memoria: LRU acotado por bytes ({@code image-cache.memory.max-bytes}).</li>
+ * <li>Disco (opcional, {@code image-cache.disk.enabled}): un fichero por clave
+ * en {@code image-cache.disk.dir}, acotado por
+ * {@code image-cache.disk.max-bytes}. Sobrevive a reinicios; un acierto se
+ * lee entero y se promueve a memoria.</li>
+ * </ul>
+ * Solo se guardan respuestas correctas de FastAPI y de hasta
+ * {@code image-cache.max-entry-bytes}; las imágenes más grandes se
+ * transmiten sin pasar por la caché. Métricas:
+ * {@code image.cache.requests{result=memory|disk|miss}},
+ * {@code image.cache.hit.ratio} y {@code image.cache.bytes{tier}}.
+ *
+ * La E/S de disco corre en el pool de llamadas bloqueantes
+ * ({@link BlockingCallExecutor}); si está saturado, la lectura cuenta como
+ * fallo y la escritura se omite.
+ */
+@Component
+public class FilterResultCache {
+
+    private final boolean enabled;
+    private final long maxEntryBytes;
+    private final Cache<String, byte[]> memory;
+
+    private final boolean diskEnabled;
+    private final Path diskDir;
+    private final Cache<String, Long> diskIndex; // clave -> tamaño del fichero
+    private final Scheduler diskScheduler;
+
+    private final Counter memoryHits;
+    private final Counter diskHits;
+    private final Counter misses;
+
+    public FilterResultCache(MeterRegistry meterRegistry, BlockingCallExecutor blockingCalls,
+            @Value("${image-cache.enabled:true}") boolean enabled,
+            @Value("${image-cache.max-entry-bytes:4194304}") long maxEntryBytes,
+            @Value("${image-cache.memory.max-bytes:67108864}") long memoryMaxBytes,
+            @Value("${image-cache.disk.enabled:false}") boolean diskEnabled,
+            @Value("${image-cache.disk.dir:/tmp/upsglam-filter-cache}") String diskDir,
+            @Value("${image-cache.disk.max-bytes:536870912}") long diskMaxBytes) {
+        this.enabled = enabled;
+        this.maxEntryBytes = maxEntryBytes;
+        this.diskEnabled = enabled && diskEnabled;
+        this.diskDir = Paths.get(diskDir);
+        this.diskScheduler = blockingCalls.scheduler();
+
+        this.memory = Caffeine.newBuilder()
+                .maximumWeight(memoryMaxBytes)
+                .weigher((String key, byte[] value) -> value.length)
+                .recordStats()
+                .build();
+
+        this.diskIndex = Caffeine.newBuilder()
+                .maximumWeight(diskMaxBytes)
+                .weigher((String key, Long size) -> (int) Math.min(size, Integer.MAX_VALUE))
+                .removalListener((String key, Long size, RemovalCause cause) -> {
+                    // Reemplazar una entrada no borra el fichero que se acaba de escribir
+                    if (key != null && cause != RemovalCause.REPLACED) {
+                        deleteQuietly(filePath(key));
+                    }
+                })
+                .executor(Runnable::run)
+                .build();
+
+        this.memoryHits = Counter.builder("image.cache.requests").tag("result", "memory")
+                .register(meterRegistry);
+        this.diskHits = Counter.builder("image.cache.requests").tag("result", "disk")
+                .register(meterRegistry);
+        this.misses = Counter.builder("image.cache.requests").tag("result", "miss")
+                .register(meterRegistry);
+
+        Gauge.builder("image.cache.hit.ratio", this, FilterResultCache::hitRatio)
+                .description("Aciertos (memoria + disco) / peticiones")
+                .register(meterRegistry);
+        Gauge.builder("image.cache.bytes", memory, FilterResultCache::weightedSize)
+                .tag("tier", "memory")
+                .register(meterRegistry);
+        Gauge.builder("image.cache.bytes", diskIndex, FilterResultCache::weightedSize)
+                .tag("tier", "disk")
+                .register(meterRegistry);
+        FunctionCounter.builder("image.cache.evictions", memory, cache -> cache.stats().evictionCount())
+                .tag("tier", "memory")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void loadDiskIndex() {
+        if (!diskEnabled) {
+            return;
+        }
+        try {
+            Files.createDirectories(diskDir);
+            // Los resultados de ejecuciones anteriores siguen siendo válidos
+            try (Stream<Path> files = Files.list(diskDir)) {
+                files.filter(path -> !path.getFileName().toString().endsWith(".tmp"))
+                        .forEach(path -> diskIndex.put(path.getFileName().toString(), path.toFile().length()));
+            }
+        } catch (IOException e) {
+            System.err.println("ADVERTENCIA: No se pudo preparar la caché en disco " + diskDir + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param input  Bytes de la imagen original.
+     * @param filter Nombre del filtro (ej: "canny").
+     * @param params Parámetros ya normalizados; los nulos se ignoran.
+     * @return Clave hexadecimal de la combinación imagen + filtro + parámetros.
+     */
+    public static String key(byte[] input, String filter, Map<String, ?> params) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(input);
+
+            StringBuilder suffix = new StringBuilder("|").append(filter);
+            new TreeMap<>(params).forEach((name, value) -> {
+                if (value != null) {
+                    suffix.append('|').append(name).append('=').append(value.toString().trim());
+                }
+            });
+            digest.update(suffix.toString().getBytes(StandardCharsets.UTF_8));
+
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    /**
+     * Clave de un paso de un pipeline: depende de la clave del paso anterior,
+     * así cada prefijo del pipeline tiene su propia entrada.
+     */
+    public static String chainKey(String previousKey, String filter, Map<String, ?> params) {
+        return key(("pipeline|" + previousKey).getBytes(StandardCharsets.UTF_8), filter, params);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return Tamaño máximo de una entrada. Los resultados (y entradas) más
+     *         grandes no se cachean y se transmiten sin acumular.
+     */
+    public long maxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /**
+     * Busca en memoria y después en disco (promoviendo a memoria).
+     *
+     * @return El resultado cacheado, o vacío si no está (cuenta como fallo).
+     */
+    public Mono<byte[]> get(String key) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+
+        return Mono.defer(() -> {
+            byte[] cached = memory.getIfPresent(key);
+            if (cached != null) {
+                memoryHits.increment();
+                return Mono.just(cached);
+            }
+
+            return readFromDisk(key)
+                    .doOnNext(bytes -> {
+                        diskHits.increment();
+                        memory.put(key, bytes);
+                    })
+                    .switchIfEmpty(Mono.fromRunnable(misses::increment));
+        });
+    }
+
+    /**
+     * Guarda un resultado correcto de FastAPI. La escritura en disco es
+     * asíncrona y no retrasa la respuesta.
+     */
+    public void put(String key, byte[] result) {
+        if (!enabled || result.length > maxEntryBytes) {
+            return;
+        }
+        memory.put(key, result);
+        writeToDisk(key, result).subscribe();
+    }
+
+    private Mono<byte[]> readFromDisk(String key) {
+        if (!diskEnabled || diskIndex.getIfPresent(key) == null) {
+            return Mono.empty();
+        }
+
+        // Lectura directa: el resultado se promueve a memoria como byte[], y
+        // las entradas (hasta max-entry-bytes) son pequeñas para mapearlas
+        return Mono.fromCallable(() -> Files.readAllBytes(filePath(key)))
+                .subscribeOn(diskScheduler)
+                .onErrorResume(RejectedExecutionException.class, e -> Mono.empty())
+                .onErrorResume(e -> {
+                    // Fichero borrado o corrupto: se trata como fallo de caché
+                    diskIndex.invalidate(key);
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> writeToDisk(String key, byte[] bytes) {
+        if (!diskEnabled) {
+            return Mono.empty();
+        }
+
+        return Mono.fromRunnable(() -> {
+            try {
+                Path target = filePath(key);
+                Path tmp = diskDir.resolve(key + ".tmp");
+                Files.write(tmp, bytes);
+                // Movimiento atómico: un lector nunca ve un fichero a medias
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                diskIndex.put(key, (long) bytes.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).subscribeOn(diskScheduler)
+                .onErrorResume(e -> {
+                    System.err.println("ADVERTENCIA: No se pudo escribir en la caché en disco: " + e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private static double weightedSize(Cache<String, ?> cache) {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+
+    private Path filePath(String key) {
+        return diskDir.resolve(key);
+    }
+
+    private double hitRatio() {
+        double hits = memoryHits.count() + diskHits.count();
+        double total = hits + misses.count();
+        return total == 0 ? 0 : hits / total;
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("ADVERTENCIA: No se pudo borrar " + path + ": " + e.getMessage());
+        }
+    }
+}
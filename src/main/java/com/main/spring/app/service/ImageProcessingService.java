@@ -1,146 +1,485 @@
 package com.main.spring.app.service;
 
 import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
 import org.springframework.http.client.MultipartBodyBuilder;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import com.main.spring.app.dto.BatchItemResult;
+import com.main.spring.app.model.PipelineStep;
+import com.main.spring.app.service.cpu.CpuFilterEngine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Service
 public class ImageProcessingService {
 
     private final WebClient webClient;
+    private final FilterResultCache resultCache;
+    private final FastApiCircuitBreaker circuitBreaker;
+    private final CpuFilterEngine cpuFilters;
+    private final FastApiConcurrencyLimiter concurrencyLimiter;
+    private final int pipelineMaxSteps;
+    private final int pipelineMaxImageBytes;
+    private final int batchMaxFiles;
+    private final int batchConcurrency;
+    private final int batchMaxImageBytes;
+
+    // Llamadas a FastAPI en curso por clave de caché (single-flight)
+    private final Map<String, Sinks.One<byte[]>> inFlight = new ConcurrentHashMap<>();
+    private final Counter coalescedRequests;
 
     public ImageProcessingService(
-            @Qualifier("fastApiWebClient") WebClient webClient) {
+            @Qualifier("fastApiWebClient") WebClient webClient,
+            FilterResultCache resultCache,
+            FastApiCircuitBreaker circuitBreaker,
+            CpuFilterEngine cpuFilters,
+            FastApiConcurrencyLimiter concurrencyLimiter,
+            MeterRegistry meterRegistry,
+            @Value("${image.pipeline.max-steps:10}") int pipelineMaxSteps,
+            @Value("${image.pipeline.max-image-bytes:20971520}") int pipelineMaxImageBytes,
+            @Value("${image.batch.max-files:50}") int batchMaxFiles,
+            @Value("${image.batch.concurrency:4}") int batchConcurrency,
+            @Value("${image.batch.max-image-bytes:20971520}") int batchMaxImageBytes) {
         this.webClient = webClient;
+        this.resultCache = resultCache;
+        this.circuitBreaker = circuitBreaker;
+        this.cpuFilters = cpuFilters;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.pipelineMaxSteps = pipelineMaxSteps;
+        this.pipelineMaxImageBytes = pipelineMaxImageBytes;
+        this.batchMaxFiles = batchMaxFiles;
+        this.batchConcurrency = Math.max(1, batchConcurrency);
+        this.batchMaxImageBytes = batchMaxImageBytes;
+        this.coalescedRequests = Counter.builder("image.coalesced.requests")
+                .description("Peticiones servidas por una llamada idéntica ya en curso")
+                .register(meterRegistry);
     }
 
-    public Mono<byte[]> processCanny(FilePart file, Integer kernelSize, Float sigma, String lowThreshold,
+    public Flux<DataBuffer> processCanny(FilePart file, Long uploadSize, Integer kernelSize, Float sigma, String lowThreshold,
             String highThreshold, Boolean useAuto) {
-        MultipartBodyBuilder builder = new MultipartBodyBuilder();
-        builder.asyncPart("file", file.content(), DataBuffer.class).filename(file.filename());
-
-        if (kernelSize != null)
-            builder.part("kernel_size", kernelSize);
-        if (sigma != null)
-            builder.part("sigma", sigma);
-        if (lowThreshold != null)
-            builder.part("low_threshold", lowThreshold);
-        if (highThreshold != null)
-            builder.part("high_threshold", highThreshold);
-        if (useAuto != null)
-            builder.part("use_auto", useAuto);
-
-        return webClient.post()
-                .uri("/api/canny")
-                .contentType(MediaType.MULTIPART_FORM_DATA)
-                .body(BodyInserters.fromMultipartData(builder.build()))
-                .retrieve()
-                .bodyToMono(byte[].class);
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("kernel_size", kernelSize);
+        params.put("sigma", sigma);
+        params.put("low_threshold", lowThreshold);
+        params.put("high_threshold", highThreshold);
+        params.put("use_auto", useAuto);
+
+        return process("canny", file, uploadSize, params);
     }
 
-    public Mono<byte[]> processGaussian(FilePart file, Integer kernelSize, Float sigma, Boolean useAuto) {
-        MultipartBodyBuilder builder = new MultipartBodyBuilder();
-        builder.asyncPart("file", file.content(), DataBuffer.class).filename(file.filename());
+    public Flux<DataBuffer> processGaussian(FilePart file, Long uploadSize, Integer kernelSize, Float sigma, Boolean useAuto) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("kernel_size", kernelSize);
+        params.put("sigma", sigma);
+        params.put("use_auto", useAuto);
 
-        if (kernelSize != null)
-            builder.part("kernel_size", kernelSize);
-        if (sigma != null)
-            builder.part("sigma", sigma);
-        if (useAuto != null)
-            builder.part("use_auto", useAuto);
+        return process("gaussian", file, uploadSize, params);
+    }
 
-        return webClient.post()
-                .uri("/api/gaussian")
-                .contentType(MediaType.MULTIPART_FORM_DATA)
-                .body(BodyInserters.fromMultipartData(builder.build()))
-                .retrieve()
-                .bodyToMono(byte[].class);
+    public Flux<DataBuffer> processNegative(FilePart file, Long uploadSize) {
+        return process("negative", file, uploadSize, Map.of());
     }
 
-    public Mono<byte[]> processNegative(FilePart file) {
-        MultipartBodyBuilder builder = new MultipartBodyBuilder();
-        builder.asyncPart("file", file.content(), DataBuffer.class).filename(file.filename());
+    public Flux<DataBuffer> processEmboss(FilePart file, Long uploadSize, Integer kernelSize, Integer biasValue, Boolean useAuto) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("kernel_size", kernelSize);
+        params.put("bias_value", biasValue);
+        params.put("use_auto", useAuto);
 
-        return webClient.post()
-                .uri("/api/negative")
-                .contentType(MediaType.MULTIPART_FORM_DATA)
-                .body(BodyInserters.fromMultipartData(builder.build()))
-                .retrieve()
-                .bodyToMono(byte[].class);
+        return process("emboss", file, uploadSize, params);
     }
 
-    public Mono<byte[]> processEmboss(FilePart file, Integer kernelSize, Integer biasValue, Boolean useAuto) {
-        MultipartBodyBuilder builder = new MultipartBodyBuilder();
-        builder.asyncPart("file", file.content(), DataBuffer.class).filename(file.filename());
+    public Flux<DataBuffer> processWatermark(FilePart file, Long uploadSize, Float scale, Float transparency, Float spacing) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("scale", scale);
+        params.put("transparency", transparency);
+        params.put("spacing", spacing);
 
-        if (kernelSize != null)
-            builder.part("kernel_size", kernelSize);
-        if (biasValue != null)
-            builder.part("bias_value", biasValue);
-        if (useAuto != null)
-            builder.part("use_auto", useAuto);
+        return process("watermark", file, uploadSize, params);
+    }
 
-        return webClient.post()
-                .uri("/api/emboss")
-                .contentType(MediaType.MULTIPART_FORM_DATA)
-                .body(BodyInserters.fromMultipartData(builder.build()))
-                .retrieve()
-                .bodyToMono(byte[].class);
+    public Flux<DataBuffer> processRipple(FilePart file, Long uploadSize, Float edgeThreshold, Integer colorLevels, Float saturation) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("edge_threshold", edgeThreshold);
+        params.put("color_levels", colorLevels);
+        params.put("saturation", saturation);
+
+        return process("ripple", file, uploadSize, params);
     }
 
-    public Mono<byte[]> processWatermark(FilePart file, Float scale, Float transparency, Float spacing) {
-        MultipartBodyBuilder builder = new MultipartBodyBuilder();
-        builder.asyncPart("file", file.content(), DataBuffer.class).filename(file.filename());
+    public Flux<DataBuffer> processCollage(FilePart file, Long uploadSize) {
+        return process("collage", file, uploadSize, Map.of());
+    }
 
-        if (scale != null)
-            builder.part("scale", scale);
-        if (transparency != null)
-            builder.part("transparency", transparency);
-        if (spacing != null)
-            builder.part("spacing", spacing);
+    /**
+     * Aplica varios filtros seguidos sobre una sola subida. Los resultados
+     * intermedios no salen del servidor: cada paso recibe la salida del
+     * anterior.
+     *
+     * Cada prefijo del pipeline se cachea con
+     * {@link FilterResultCache#chainKey}, así que al cambiar solo el último
+     * paso se reutiliza la salida de los anteriores. Se empieza desde el
+     * prefijo cacheado más largo. Si un paso se aplica en CPU por no estar
+     * disponible FastAPI, ni ese paso ni los siguientes se cachean.
+     */
+    public Flux<DataBuffer> processPipeline(FilePart file, List<PipelineStep> steps) {
+        if (steps == null || steps.isEmpty() || steps.size() > pipelineMaxSteps) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "El pipeline debe tener entre 1 y " + pipelineMaxSteps + " pasos"));
+        }
 
-        return webClient.post()
-                .uri("/api/watermark")
-                .contentType(MediaType.MULTIPART_FORM_DATA)
-                .body(BodyInserters.fromMultipartData(builder.build()))
-                .retrieve()
-                .bodyToMono(byte[].class);
+        List<String> filters = new ArrayList<>();
+        List<Map<String, Object>> params = new ArrayList<>();
+        try {
+            for (PipelineStep step : steps) {
+                params.add(FilterParams.normalize(step.getFilter(), step.getParams()));
+                filters.add(step.getFilter());
+            }
+        } catch (ResponseStatusException e) {
+            return Flux.error(e);
+        }
+
+        return readUpload(file, pipelineMaxImageBytes)
+                .flatMapMany(input -> {
+                    List<String> keys = new ArrayList<>();
+                    for (int i = 0; i < filters.size(); i++) {
+                        keys.add(i == 0
+                                ? FilterResultCache.key(input, filters.get(i), params.get(i))
+                                : FilterResultCache.chainKey(keys.get(i - 1), filters.get(i), params.get(i)));
+                    }
+
+                    return longestCachedPrefix(keys, keys.size() - 1)
+                            .defaultIfEmpty(new PipelineStage(-1, input, true))
+                            .flatMapMany(stage -> runPipeline(stage, filters, params, keys, file.filename()));
+                });
     }
 
-    public Mono<byte[]> processRipple(FilePart file, Float edgeThreshold, Integer colorLevels, Float saturation) {
-        MultipartBodyBuilder builder = new MultipartBodyBuilder();
-        builder.asyncPart("file", file.content(), DataBuffer.class).filename(file.filename());
+    /**
+     * Aplica el mismo filtro a varias imágenes, como mucho
+     * {@code image.batch.concurrency} a la vez. Los resultados se emiten en
+     * orden de finalización; un fallo en una imagen se devuelve como
+     * resultado de esa imagen sin cortar el resto.
+     */
+    public Flux<BatchItemResult> processBatch(Flux<FilePart> files, PipelineStep spec) {
+        Map<String, Object> params;
+        try {
+            params = FilterParams.normalize(spec != null ? spec.getFilter() : null,
+                    spec != null ? spec.getParams() : null);
+        } catch (ResponseStatusException e) {
+            return Flux.error(e);
+        }
+        String filter = spec.getFilter();
 
-        if (edgeThreshold != null)
-            builder.part("edge_threshold", edgeThreshold);
-        if (colorLevels != null)
-            builder.part("color_levels", colorLevels);
-        if (saturation != null)
-            builder.part("saturation", saturation);
+        return files.collectList()
+                .flatMapMany(list -> {
+                    if (list.isEmpty() || list.size() > batchMaxFiles) {
+                        return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                                "El lote debe tener entre 1 y " + batchMaxFiles + " imágenes"));
+                    }
+                    return Flux.fromIterable(list).index();
+                })
+                .flatMap(indexed -> processBatchItem(indexed.getT1().intValue(), indexed.getT2(), filter, params),
+                        batchConcurrency);
+    }
 
-        return webClient.post()
-                .uri("/api/ripple")
-                .contentType(MediaType.MULTIPART_FORM_DATA)
-                .body(BodyInserters.fromMultipartData(builder.build()))
-                .retrieve()
-                .bodyToMono(byte[].class);
+    private Mono<BatchItemResult> processBatchItem(int index, FilePart file, String filter, Map<String, Object> params) {
+        return readUpload(file, batchMaxImageBytes)
+                .flatMap(input -> DataBufferUtils.join(processBytes(filter, input, file.filename(), params),
+                        batchMaxImageBytes))
+                .map(result -> new BatchItemResult(index, file.filename(), HttpStatus.OK.value(), null,
+                        toBytes(result)))
+                .onErrorResume(e -> {
+                    HttpStatusCode status = e instanceof ResponseStatusException rse ? rse.getStatusCode()
+                            : e instanceof WebClientResponseException wre ? wre.getStatusCode()
+                            : e instanceof DataBufferLimitException ? HttpStatus.PAYLOAD_TOO_LARGE
+                            : HttpStatus.INTERNAL_SERVER_ERROR;
+                    String message = e instanceof ResponseStatusException rse && rse.getReason() != null
+                            ? rse.getReason()
+                            : "Error al procesar la imagen";
+                    if (status.is5xxServerError()) {
+                        System.err.println("ERROR LOTE: Imagen " + index + " (" + file.filename() + "). Causa: "
+                                + e.getMessage());
+                    }
+                    return Mono.just(new BatchItemResult(index, file.filename(), status.value(), message, null));
+                });
     }
 
-    public Mono<byte[]> processCollage(FilePart file) {
+    /**
+     * Transmite la respuesta de FastAPI al cliente como {@link DataBuffer}
+     * sin acumularla.
+     *
+     * Si la subida es pequeña ({@code uploadSize}, el Content-Length de la
+     * petición, no supera {@link FilterResultCache#maxEntryBytes()}), se lee
+     * una vez para calcular su clave y, si el resultado ya está en
+     * {@link FilterResultCache}, no se llama a FastAPI. Las subidas grandes o
+     * sin tamaño conocido se envían en streaming y no usan la caché.
+     *
+     * Si FastAPI no está disponible, los filtros que soporta
+     * {@link CpuFilterEngine} se aplican en CPU. Sus resultados no se
+     * cachean porque no son idénticos a los de FastAPI.
+     */
+    private Flux<DataBuffer> process(String filter, FilePart file, Long uploadSize, Map<String, Object> params) {
+        if (!resultCache.isEnabled() || uploadSize == null || uploadSize > resultCache.maxEntryBytes()) {
+            if (!circuitBreaker.allowsCalls()) {
+                return processOnCpu(filter, file, params);
+            }
+            return callFastApi(filter, file.content(), file.filename(), params);
+        }
+
+        return readUpload(file, (int) resultCache.maxEntryBytes())
+                .flatMapMany(bytes -> processBytes(filter, bytes, file.filename(), params));
+    }
+
+    /**
+     * Procesa una imagen ya leída: caché, single-flight y respaldo en CPU.
+     * Las imágenes mayores que {@link FilterResultCache#maxEntryBytes()} no
+     * usan la caché.
+     */
+    private Flux<DataBuffer> processBytes(String filter, byte[] input, String filename, Map<String, Object> params) {
+        Supplier<Flux<DataBuffer>> call = () -> callFastApi(filter,
+                Mono.fromSupplier(() -> DefaultDataBufferFactory.sharedInstance.wrap(input)), filename, params);
+
+        if (!resultCache.isEnabled() || input.length > resultCache.maxEntryBytes()) {
+            return withCpuFallback(filter, input, params, call.get());
+        }
+
+        String key = FilterResultCache.key(input, filter, params);
+        return resultCache.get(key)
+                .map(cached -> (DataBuffer) DefaultDataBufferFactory.sharedInstance.wrap(cached))
+                .flux()
+                .switchIfEmpty(Flux.defer(() -> withCpuFallback(filter, input, params, coalesce(key, call))));
+    }
+
+    /**
+     * Si FastAPI falla antes de enviar el primer byte (o el circuito está
+     * abierto), el filtro se aplica en CPU con la imagen ya leída.
+     */
+    private Flux<DataBuffer> withCpuFallback(String filter, byte[] input, Map<String, Object> params,
+            Flux<DataBuffer> upstream) {
+        if (!cpuFilters.supports(filter)) {
+            return upstream;
+        }
+
+        return Flux.defer(() -> {
+            AtomicBoolean started = new AtomicBoolean();
+            return upstream
+                    .doOnNext(buffer -> started.set(true))
+                    .onErrorResume(e -> !started.get() && FastApiCircuitBreaker.isUnavailable(e),
+                            e -> runOnCpu(filter, input, params));
+        });
+    }
+
+    private Flux<DataBuffer> processOnCpu(String filter, FilePart file, Map<String, Object> params) {
+        if (!cpuFilters.supports(filter)) {
+            return Flux.error(new FastApiCircuitBreaker.OpenException());
+        }
+
+        return readUpload(file, cpuFilters.maxInputBytes())
+                .flatMapMany(bytes -> runOnCpu(filter, bytes, params));
+    }
+
+    private Flux<DataBuffer> runOnCpu(String filter, byte[] input, Map<String, Object> params) {
+        return cpuFilters.apply(filter, input, params)
+                .map(result -> (DataBuffer) DefaultDataBufferFactory.sharedInstance.wrap(result))
+                .flux();
+    }
+
+    private Mono<PipelineStage> longestCachedPrefix(List<String> keys, int index) {
+        if (index < 0) {
+            return Mono.empty();
+        }
+        return resultCache.get(keys.get(index))
+                .map(cached -> new PipelineStage(index, cached, true))
+                .switchIfEmpty(Mono.defer(() -> longestCachedPrefix(keys, index - 1)));
+    }
+
+    private Flux<DataBuffer> runPipeline(PipelineStage cached, List<String> filters,
+            List<Map<String, Object>> params, List<String> keys, String filename) {
+        int last = filters.size() - 1;
+        if (cached.index() == last) {
+            return Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(cached.image()));
+        }
+
+        Mono<PipelineStage> stage = Mono.just(cached);
+        for (int i = cached.index() + 1; i < last; i++) {
+            int step = i;
+            stage = stage.flatMap(previous -> runIntermediateStep(step, previous, filters.get(step),
+                    params.get(step), keys.get(step), filename));
+        }
+
+        return stage.flatMapMany(previous -> {
+            Supplier<Flux<DataBuffer>> call = () -> callFastApi(filters.get(last),
+                    Mono.fromSupplier(() -> DefaultDataBufferFactory.sharedInstance.wrap(previous.image())),
+                    filename, params.get(last));
+            Flux<DataBuffer> result = previous.exact() ? coalesce(keys.get(last), call) : call.get();
+            return withCpuFallback(filters.get(last), previous.image(), params.get(last), result);
+        });
+    }
+
+    private Mono<PipelineStage> runIntermediateStep(int index, PipelineStage previous, String filter,
+            Map<String, Object> params, String key, String filename) {
+        Flux<DataBuffer> result = callFastApi(filter,
+                Mono.fromSupplier(() -> DefaultDataBufferFactory.sharedInstance.wrap(previous.image())),
+                filename, params);
+
+        return DataBufferUtils.join(result, pipelineMaxImageBytes)
+                .map(ImageProcessingService::toBytes)
+                .map(bytes -> {
+                    if (previous.exact()) {
+                        resultCache.put(key, bytes);
+                    }
+                    return new PipelineStage(index, bytes, previous.exact());
+                })
+                .onErrorResume(e -> cpuFilters.supports(filter) && FastApiCircuitBreaker.isUnavailable(e),
+                        e -> cpuFilters.apply(filter, previous.image(), params)
+                                .map(bytes -> new PipelineStage(index, bytes, false)))
+                .onErrorMap(DataBufferLimitException.class,
+                        e -> new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                                "Resultado intermedio demasiado grande"));
+    }
+
+    private static Mono<byte[]> readUpload(FilePart file, int maxBytes) {
+        return DataBufferUtils.join(file.content(), maxBytes)
+                .map(ImageProcessingService::toBytes)
+                .onErrorMap(DataBufferLimitException.class,
+                        e -> new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "La imagen es demasiado grande"));
+    }
+
+    private static byte[] toBytes(DataBuffer dataBuffer) {
+        byte[] bytes = new byte[dataBuffer.readableByteCount()];
+        dataBuffer.read(bytes);
+        DataBufferUtils.release(dataBuffer);
+        return bytes;
+    }
+
+    private Flux<DataBuffer> callFastApi(String filter, Publisher<DataBuffer> image, String filename,
+            Map<String, Object> params) {
         MultipartBodyBuilder builder = new MultipartBodyBuilder();
-        builder.asyncPart("file", file.content(), DataBuffer.class).filename(file.filename());
+        builder.asyncPart("file", image, DataBuffer.class).filename(filename);
 
-        return webClient.post()
-                .uri("/api/collage")
+        params.forEach((name, value) -> {
+            if (value != null)
+                builder.part(name, value);
+        });
+
+        // El limitador va por fuera: un 429 no cuenta como fallo de FastAPI
+        return concurrencyLimiter.limit(circuitBreaker.protect(webClient.post()
+                .uri("/api/" + filter)
                 .contentType(MediaType.MULTIPART_FORM_DATA)
                 .body(BodyInserters.fromMultipartData(builder.build()))
                 .retrieve()
-                .bodyToMono(byte[].class);
+                .bodyToFlux(DataBuffer.class)))
+                // Buffers del pool que no llegan a escribirse (ej: el cliente cancela)
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    /**
+     * Single-flight: peticiones simultáneas con la misma clave comparten una
+     * sola llamada a FastAPI. La primera (líder) recibe la respuesta en
+     * streaming; las demás esperan su copia y la reciben entera al terminar.
+     *
+     * Si el resultado no cabe en {@link FilterResultCache#maxEntryBytes()} o
+     * el cliente del líder cancela, las que esperan hacen su propia llamada.
+     * Los errores de FastAPI se comparten.
+     */
+    private Flux<DataBuffer> coalesce(String key, Supplier<Flux<DataBuffer>> upstream) {
+        return Flux.defer(() -> {
+            Sinks.One<byte[]> flight = Sinks.one();
+            Sinks.One<byte[]> current = inFlight.putIfAbsent(key, flight);
+            if (current == null) {
+                return teeIntoCache(key, upstream.get(), flight);
+            }
+
+            coalescedRequests.increment();
+            return current.asMono()
+                    .map(result -> (DataBuffer) DefaultDataBufferFactory.sharedInstance.wrap(result))
+                    .flux()
+                    .switchIfEmpty(Flux.defer(() -> teeIntoCache(key, upstream.get(), null)));
+        });
+    }
+
+    /**
+     * Copia los buffers a la caché mientras pasan hacia el cliente. Si el
+     * resultado supera el tamaño máximo de entrada, se deja de copiar.
+     *
+     * @param flight Llamada compartida de {@link #coalesce} a completar con
+     *               el resultado, o {@code null}.
+     */
+    private Flux<DataBuffer> teeIntoCache(String key, Flux<DataBuffer> result, Sinks.One<byte[]> flight) {
+        return Flux.defer(() -> {
+            ByteArrayOutputStream[] copy = { new ByteArrayOutputStream() };
+
+            return result
+                    .doOnNext(buffer -> {
+                        ByteArrayOutputStream current = copy[0];
+                        if (current == null) {
+                            return;
+                        }
+                        int length = buffer.readableByteCount();
+                        if (current.size() + length > resultCache.maxEntryBytes()) {
+                            copy[0] = null;
+                            // Demasiado grande para compartir: los demás no esperan al final
+                            finishFlight(key, flight, Sinks.One::tryEmitEmpty);
+                            return;
+                        }
+                        byte[] chunk = new byte[length];
+                        buffer.toByteBuffer(buffer.readPosition(), ByteBuffer.wrap(chunk), 0, length);
+                        current.write(chunk, 0, length);
+                    })
+                    .doOnComplete(() -> {
+                        if (copy[0] != null) {
+                            byte[] bytes = copy[0].toByteArray();
+                            resultCache.put(key, bytes);
+                            finishFlight(key, flight, sink -> sink.tryEmitValue(bytes));
+                        }
+                    })
+                    .doOnError(e -> finishFlight(key, flight, sink -> sink.tryEmitError(e)))
+                    .doOnCancel(() -> finishFlight(key, flight, Sinks.One::tryEmitEmpty));
+        });
+    }
+
+    private void finishFlight(String key, Sinks.One<byte[]> flight, Consumer<Sinks.One<byte[]>> outcome) {
+        if (flight == null) {
+            return;
+        }
+        // Primero se quita del mapa: las peticiones nuevas ya leen la caché
+        inFlight.remove(key, flight);
+        outcome.accept(flight);
+    }
+
+    /**
+     * Resultado de los pasos {@code 0..index} de un pipeline ({@code -1}: la
+     * imagen original). {@code exact} es falso si algún paso se aplicó en CPU.
+     */
+    private record PipelineStage(int index, byte[] image, boolean exact) {
     }
 }
@@ -4,6 +4,8 @@ import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
+import com.main.spring.app.dto.PageResponse;
+import com.main.spring.app.interfaces.feed.FeedService;
 import com.main.spring.app.interfaces.posts.PostRepository;
 import com.main.spring.app.interfaces.posts.PostService;
 import com.main.spring.app.interfaces.users.UserRepository;
@@ -16,9 +18,11 @@ import reactor.core.publisher.Mono;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class PostsServiceImpl implements PostService {
@@ -26,12 +30,15 @@ public class PostsServiceImpl implements PostService {
     private final PostRepository postRepository;
     private final SupabaseStorageService supabaseStorageService;
     private final UserRepository userRepository;
+    private final FeedService feedService;
+    private static final int MAX_PAGE_SIZE = 50;
 
     public PostsServiceImpl(PostRepository postRepository, SupabaseStorageService supabaseStorageService,
-            UserRepository userRepository) {
+            UserRepository userRepository, FeedService feedService) {
         this.postRepository = postRepository;
         this.supabaseStorageService = supabaseStorageService;
         this.userRepository = userRepository;
+        this.feedService = feedService;
     }
 
     @Override
@@ -43,12 +50,19 @@ public class PostsServiceImpl implements PostService {
         // 2. Crear el Post pasando la lista de UIDs
         return mentionedUidsMono
                 .flatMap(mentionedUids -> postRepository.createPost(filePart, caption, authorUid, mentionedUids)
-                        .doOnSuccess(postId ->
-                        // Log de éxito: Indica que la publicación y la subida fueron completadas.
-                        System.out.println("LOG: Post creado exitosamente con ID: " + postId))
+                        .doOnSuccess(postId -> {
+                            // Log de éxito: Indica que la publicación y la subida fueron completadas.
+                            System.out.println("LOG: Post creado exitosamente con ID: " + postId);
+
+                            // Repartir a los timelines de los seguidores sin bloquear la respuesta
+                            feedService.fanOutPostAsync(postId);
+                        })
                         .onErrorResume(e -> {
                             // Manejo de Errores: Capturamos cualquier excepción lanzada por el repositorio
                             // (subida/Firestore).
+                            if (e instanceof ResponseStatusException) {
+                                return Mono.error(e); // ej: 413 imagen demasiado grande
+                            }
                             String errorMessage = e.getMessage();
 
                             // Si el repositorio lanza un error de Runtime (ej: fallo de conexión, permisos)
@@ -110,14 +124,21 @@ public class PostsServiceImpl implements PostService {
     }
 
     @Override
-    public Flux<PostsSchema> getPostsByAuthor(String authorUid) {
+    public Mono<PageResponse<PostsSchema>> getPostsByAuthor(String authorUid, int pageSize, String cursor) {
+
+        // Acotamos el tamaño de página para que las respuestas sean de tamaño constante
+        int safePageSize = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
 
         // Delegamos la consulta directamente al repositorio
-        return postRepository.getPostsByAuthor(authorUid)
+        return postRepository.getPostsByAuthor(authorUid, safePageSize, cursor)
                 .onErrorResume(e -> {
+                    if (e instanceof IllegalArgumentException && "INVALID_CURSOR".equals(e.getMessage())) {
+                        return Mono.error(new ResponseStatusException(
+                                HttpStatus.BAD_REQUEST, "El cursor de paginación no es válido."));
+                    }
                     System.err.println("ERROR: Fallo al consultar posts por autor. Causa: " + e.getMessage());
-                    // Devolvemos un Flux vacío en caso de error de consulta
-                    return Flux.empty();
+                    // Devolvemos una página vacía en caso de error de consulta
+                    return Mono.just(new PageResponse<>(List.of(), null));
                 });
     }
 
@@ -134,14 +155,21 @@ public class PostsServiceImpl implements PostService {
                                 HttpStatus.FORBIDDEN, "No tienes permiso para eliminar este post."));
                     }
 
-                    // 3. Eliminar la imagen de Supabase Storage
-                    Mono<Void> deleteImageMono = supabaseStorageService.deleteImage(post.getPos_imageUrl())
-                            .onErrorResume(e -> {
-                                // Si falla la eliminación de la imagen, logueamos pero continuamos
-                                System.err.println(
-                                        "ADVERTENCIA: No se pudo eliminar la imagen de Supabase: " + e.getMessage());
-                                return Mono.empty(); // Continuamos con la eliminación del post
-                            });
+                    // 3. Eliminar de Supabase Storage la imagen y sus miniaturas. Los
+                    // posts antiguos no tienen miniaturas: solo se borran las URLs presentes
+                    List<String> imageUrls = Stream.of(post.getPos_imageUrl(), post.getPos_imageUrl150(),
+                            post.getPos_imageUrl480(), post.getPos_imageUrl1080())
+                            .filter(Objects::nonNull)
+                            .toList();
+                    Mono<Void> deleteImageMono = Flux.fromIterable(imageUrls)
+                            .flatMap(imageUrl -> supabaseStorageService.deleteImage(imageUrl)
+                                    .onErrorResume(e -> {
+                                        // Si falla (o ya no existe), logueamos pero continuamos
+                                        System.err.println("ADVERTENCIA: No se pudo eliminar la imagen " + imageUrl
+                                                + " de Supabase: " + e.getMessage());
+                                        return Mono.empty(); // Continuamos con la eliminación del post
+                                    }))
+                            .then();
 
                     // 4. Eliminar el post de Firestore
                     Mono<Void> deletePostMono = postRepository.deletePost(postId);
@@ -150,8 +178,11 @@ public class PostsServiceImpl implements PostService {
                     return deleteImageMono
                             .then(deletePostMono)
                             .thenReturn("Post eliminado correctamente")
-                            .doOnSuccess(
-                                    message -> System.out.println("LOG: Post eliminado exitosamente con ID: " + postId))
+                            .doOnSuccess(message -> {
+                                System.out.println("LOG: Post eliminado exitosamente con ID: " + postId);
+                                // Quitarlo de los timelines sin bloquear la respuesta
+                                feedService.removePostFromFeedsAsync(postId, authorUid);
+                            })
                             .onErrorResume(e -> {
                                 System.err.println("ERROR: Fallo al eliminar el post. Causa: " + e.getMessage());
                                 return Mono.error(new ResponseStatusException(
@@ -3,25 +3,33 @@ package com.main.spring.app.service;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
+import com.main.spring.app.dto.PageResponse;
 import com.main.spring.app.dto.UserSearchResponse;
+import com.main.spring.app.interfaces.feed.FeedService;
 import com.main.spring.app.interfaces.subscriptions.SubscriptionRepository;
 import com.main.spring.app.interfaces.subscriptions.SubscriptionService;
 import com.main.spring.app.interfaces.users.UserRepository;
 
 import org.springframework.http.HttpStatus;
 
-import reactor.core.publisher.Flux;
+import java.util.List;
+
 import reactor.core.publisher.Mono;
 
 @Service
 public class SubscriptionServiceImpl implements SubscriptionService {
 
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final SubscriptionRepository subscriptionRepository;
     private final UserRepository userRepository;
+    private final FeedService feedService;
 
-    public SubscriptionServiceImpl(SubscriptionRepository subscriptionRepository, UserRepository userRepository) {
+    public SubscriptionServiceImpl(SubscriptionRepository subscriptionRepository, UserRepository userRepository,
+            FeedService feedService) {
         this.subscriptionRepository = subscriptionRepository;
         this.userRepository = userRepository;
+        this.feedService = feedService;
     }
 
     @Override
@@ -78,8 +86,12 @@ public class SubscriptionServiceImpl implements SubscriptionService {
                     // 3. Eliminar la relación bidireccional
                     return subscriptionRepository.unsubscribe(followerUid, followingUid)
                             .thenReturn("Suscripción eliminada correctamente")
-                            .doOnSuccess(message -> System.out.println(
-                                    "LOG: Usuario " + followerUid + " se desuscribió de " + followingUid))
+                            .doOnSuccess(message -> {
+                                System.out.println(
+                                        "LOG: Usuario " + followerUid + " se desuscribió de " + followingUid);
+                                // Quitar del feed los posts ya repartidos de ese autor
+                                feedService.removeAuthorFromFeedAsync(followerUid, followingUid);
+                            })
                             .onErrorResume(e -> {
                                 System.err.println("ERROR: Fallo al eliminar suscripción. Causa: " + e.getMessage());
                                 return Mono.error(new ResponseStatusException(
@@ -89,53 +101,46 @@ public class SubscriptionServiceImpl implements SubscriptionService {
     }
 
     @Override
-    public Flux<UserSearchResponse> getFollowing(String userId) {
-        // 1. Obtener lista de UIDs que sigue el usuario
-        return subscriptionRepository.getFollowing(userId)
-                .flatMap(followingUid -> {
-                    // 2. Para cada UID, obtener los datos completos del usuario
-                    return userRepository.getUserById(followingUid)
-                            .map(user -> new UserSearchResponse(
-                                    followingUid,
-                                    user.getUsr_username(),
-                                    user.getUsr_email(),
-                                    user.getUsr_photoUrl()
-                            ))
-                            .onErrorResume(e -> {
-                                // Si el usuario no existe, retornar null y filtrar después
-                                System.err.println("ADVERTENCIA: Usuario " + followingUid + " no encontrado");
-                                return Mono.empty();
-                            });
-                })
-                .onErrorResume(e -> {
-                    System.err.println("ERROR: Fallo al obtener following. Causa: " + e.getMessage());
-                    return Flux.empty();
-                });
+    public Mono<PageResponse<UserSearchResponse>> getFollowing(String userId, int pageSize, String cursor) {
+        // 1. Página de UIDs que sigue el usuario
+        return subscriptionRepository.getFollowing(userId, clampPageSize(pageSize), cursor)
+                // 2. Datos completos de la página en lecturas getAll por lotes
+                .flatMap(this::loadUsers)
+                .onErrorResume(e -> handlePageError("following", e));
     }
 
     @Override
-    public Flux<UserSearchResponse> getFollowers(String userId) {
-        // 1. Obtener lista de UIDs que siguen al usuario
-        return subscriptionRepository.getFollowers(userId)
-                .flatMap(followerUid -> {
-                    // 2. Para cada UID, obtener los datos completos del usuario
-                    return userRepository.getUserById(followerUid)
-                            .map(user -> new UserSearchResponse(
-                                    followerUid,
-                                    user.getUsr_username(),
-                                    user.getUsr_email(),
-                                    user.getUsr_photoUrl()
-                            ))
-                            .onErrorResume(e -> {
-                                // Si el usuario no existe, retornar null y filtrar después
-                                System.err.println("ADVERTENCIA: Usuario " + followerUid + " no encontrado");
-                                return Mono.empty();
-                            });
-                })
-                .onErrorResume(e -> {
-                    System.err.println("ERROR: Fallo al obtener followers. Causa: " + e.getMessage());
-                    return Flux.empty();
-                });
+    public Mono<PageResponse<UserSearchResponse>> getFollowers(String userId, int pageSize, String cursor) {
+        // 1. Página de UIDs que siguen al usuario
+        return subscriptionRepository.getFollowers(userId, clampPageSize(pageSize), cursor)
+                // 2. Datos completos de la página en lecturas getAll por lotes
+                .flatMap(this::loadUsers)
+                .onErrorResume(e -> handlePageError("followers", e));
     }
-}
 
+    private Mono<PageResponse<UserSearchResponse>> loadUsers(PageResponse<String> uidPage) {
+        // Los usuarios que ya no existen se omiten de la página
+        return userRepository.getUsersByIds(uidPage.getItems())
+                .map(user -> new UserSearchResponse(
+                        user.getUsr_id(),
+                        user.getUsr_username(),
+                        user.getUsr_email(),
+                        user.getUsr_photoUrl()))
+                .collectList()
+                .map(users -> new PageResponse<>(users, uidPage.getNextCursor()));
+    }
+
+    private Mono<PageResponse<UserSearchResponse>> handlePageError(String list, Throwable e) {
+        if (e instanceof IllegalArgumentException && "INVALID_CURSOR".equals(e.getMessage())) {
+            return Mono.error(new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, "El cursor de paginación no es válido."));
+        }
+        System.err.println("ERROR: Fallo al obtener " + list + ". Causa: " + e.getMessage());
+        return Mono.just(new PageResponse<>(List.of(), null));
+    }
+
+    private static int clampPageSize(int pageSize) {
+        // Acotamos el tamaño de página para que las respuestas sean de tamaño constante
+        return Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+    }
+}
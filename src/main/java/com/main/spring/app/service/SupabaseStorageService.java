@@ -1,13 +1,24 @@
 package com.main.spring.app.service;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.UUID;
 
 @Service
@@ -24,21 +35,44 @@ public class SupabaseStorageService {
     @Value("${supabase.bucket:}")
     private String supabaseBucket;
 
+    private final long maxUploadBytes;
+
     public SupabaseStorageService(
-            @Qualifier("fastApiWebClient") WebClient webClient) {
+            @Qualifier("supabaseWebClient") WebClient webClient,
+            @Value("${supabase.max-upload-bytes:20971520}") long maxUploadBytes) {
         this.webClient = webClient;
+        this.maxUploadBytes = maxUploadBytes;
+    }
+
+    /**
+     * Sube la imagen a Supabase Storage tal como llega del multipart, sin
+     * juntarla en memoria: los {@link DataBuffer} se reenvían en un cuerpo
+     * chunked según se reciben. El tamaño y el SHA-256 se calculan al pasar
+     * cada buffer, así que la memoria por subida no depende del tamaño del
+     * fichero.
+     *
+     * @return la URL pública; error 413 si se supera
+     *         {@code supabase.max-upload-bytes} (la subida se corta).
+     */
+    public Mono<String> uploadImage(Flux<DataBuffer> content, String filename) {
+        return uploadImage(content, filename, MediaType.IMAGE_PNG);
     }
 
-    public Mono<String> uploadImage(byte[] imageBytes, String filename) {
+    /**
+     * Igual que {@link #uploadImage(Flux, String)} con otro tipo de imagen
+     * (ej: las miniaturas JPEG de {@link ThumbnailService}).
+     */
+    public Mono<String> uploadImage(Flux<DataBuffer> content, String filename, MediaType contentType) {
         if (supabaseUrl.isEmpty() || supabaseKey.isEmpty() || supabaseBucket.isEmpty()) {
             return Mono.error(new RuntimeException("Supabase configuration is missing in application.properties"));
         }
 
         // Generar un nombre único y sanitizado
-        // Asegurar que la extensión sea .png ya que el filtro devuelve PNG
+        // Asegurar que la extensión coincida con el tipo (PNG por defecto, el filtro devuelve PNG)
+        String extension = MediaType.IMAGE_JPEG.equals(contentType) ? ".jpg" : ".png";
         String safeFilename = filename.replaceAll("[^a-zA-Z0-9.-]", "_");
-        if (!safeFilename.toLowerCase().endsWith(".png")) {
-            safeFilename = safeFilename + ".png";
+        if (!safeFilename.toLowerCase().endsWith(extension)) {
+            safeFilename = safeFilename + extension;
         }
         String uniqueFilename = UUID.randomUUID().toString() + "_" + safeFilename;
 
@@ -60,18 +94,66 @@ public class SupabaseStorageService {
         String storageUrl = "https://" + finalProjectId + ".supabase.co/storage/v1/object/" + supabaseBucket + "/"
                 + uniqueFilename;
 
-        return webClient.post()
-                .uri(storageUrl)
-                .header("Authorization", "Bearer " + supabaseKey)
-                .contentType(MediaType.IMAGE_PNG)
-                .body(BodyInserters.fromValue(imageBytes))
-                .retrieve()
-                .onStatus(status -> status.is4xxClientError() || status.is5xxServerError(),
-                        clientResponse -> clientResponse.bodyToMono(String.class)
-                                .flatMap(errorBody -> Mono.error(new RuntimeException("Error uploading to Supabase: "
-                                        + clientResponse.statusCode() + " - " + errorBody))))
-                .bodyToMono(String.class)
-                .map(response -> getPublicUrl(finalProjectId, uniqueFilename));
+        return Mono.defer(() -> {
+            UploadDigest digest = new UploadDigest();
+
+            return webClient.post()
+                    .uri(storageUrl)
+                    .header("Authorization", "Bearer " + supabaseKey)
+                    .contentType(contentType)
+                    .body(BodyInserters.fromDataBuffers(content.handle(digest::accept)))
+                    .retrieve()
+                    .onStatus(status -> status.is4xxClientError() || status.is5xxServerError(),
+                            clientResponse -> clientResponse.bodyToMono(String.class)
+                                    .flatMap(errorBody -> Mono.error(new RuntimeException("Error uploading to Supabase: "
+                                            + clientResponse.statusCode() + " - " + errorBody))))
+                    .bodyToMono(String.class)
+                    .map(response -> getPublicUrl(finalProjectId, uniqueFilename))
+                    // El 413 del límite de tamaño llega envuelto en el error de la petición
+                    .onErrorMap(WebClientRequestException.class,
+                            e -> e.getCause() instanceof ResponseStatusException rse ? rse : e)
+                    .doOnSuccess(url -> System.out.println("LOG: Imagen subida a Supabase: " + uniqueFilename
+                            + " (" + digest.size + " bytes, sha256=" + digest.hex() + ")"));
+        });
+    }
+
+    /**
+     * Tamaño y SHA-256 de una subida, calculados buffer a buffer.
+     */
+    private final class UploadDigest {
+
+        private final MessageDigest sha256;
+        private long size;
+
+        UploadDigest() {
+            try {
+                this.sha256 = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void accept(DataBuffer buffer, SynchronousSink<DataBuffer> sink) {
+            size += buffer.readableByteCount();
+            if (size > maxUploadBytes) {
+                DataBufferUtils.release(buffer);
+                sink.error(new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                        "La imagen supera el tamaño máximo de " + maxUploadBytes + " bytes"));
+                return;
+            }
+            // Los ByteBuffer son vistas de solo lectura: no mueven la posición del buffer
+            try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                while (iterator.hasNext()) {
+                    ByteBuffer byteBuffer = iterator.next();
+                    sha256.update(byteBuffer);
+                }
+            }
+            sink.next(buffer);
+        }
+
+        String hex() {
+            return HexFormat.of().formatHex(sha256.digest());
+        }
     }
 
     private String getPublicUrl(String projectId, String filename) {
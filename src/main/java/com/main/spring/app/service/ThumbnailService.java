@@ -0,0 +1,329 @@
+package com.main.spring.app.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Service;
+
+/**
+ * Miniaturas de las imágenes de los posts (150, 480 y 1080 px en el lado
+ * mayor, JPEG) para que el feed no descargue la imagen original.
+ *
+ * La imagen se decodifica mientras se sube a Supabase, desde los mismos
+ * {@link DataBuffer} ({@link #tee(Flux)}), y las miniaturas se generan en
+ * paralelo en un scheduler acotado ({@code posts.thumbnails.parallelism}).
+ * Entre la subida y el generador hay una cola acotada: la memoria no crece
+ * con el tamaño de la imagen aunque decodificar vaya más lento que subir.
+ * Las imágenes muy grandes se decodifican submuestreadas, con al menos el
+ * doble de resolución que la miniatura mayor.
+ *
+ * Métrica: {@code posts.thumbnails} (tiempo de decodificar y generar todas).
+ */
+@Service
+public class ThumbnailService {
+
+    public static final List<Integer> SIZES = List.of(150, 480, 1080);
+
+    /**
+     * Copia de la subida para el almacenamiento y miniaturas generadas a
+     * partir de ella. {@code thumbnails} solo avanza mientras se consume
+     * {@code content}.
+     */
+    public record TeedUpload(Flux<DataBuffer> content, Mono<List<Thumbnail>> thumbnails) {
+    }
+
+    public record Thumbnail(int size, byte[] jpeg) {
+    }
+
+    private final boolean enabled;
+    private final float jpegQuality;
+    private final int maxBufferedChunks;
+    private final Scheduler scheduler;
+    private final Timer timer;
+
+    public ThumbnailService(MeterRegistry meterRegistry,
+            @Value("${posts.thumbnails.enabled:true}") boolean enabled,
+            @Value("${posts.thumbnails.parallelism:0}") int parallelism,
+            @Value("${posts.thumbnails.jpeg-quality:0.8}") float jpegQuality,
+            @Value("${posts.thumbnails.max-buffered-chunks:16}") int maxBufferedChunks) {
+        this.enabled = enabled;
+        this.jpegQuality = jpegQuality;
+        this.maxBufferedChunks = maxBufferedChunks;
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.scheduler = Schedulers.newBoundedElastic(threads, 1000, "thumbnails", 60, true);
+        this.timer = Timer.builder("posts.thumbnails")
+                .description("Decodificar una imagen y generar sus miniaturas")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.dispose();
+    }
+
+    /**
+     * Reparte {@code content} entre el almacenamiento y el generador de
+     * miniaturas sin acumular la imagen: cada buffer se retiene una vez más y
+     * el generador lo libera al leerlo.
+     *
+     * La copia pasa por una cola acotada
+     * ({@code posts.thumbnails.max-buffered-chunks}): si el generador va por
+     * detrás, la subida espera a que lea en lugar de llenar el heap. Hay que
+     * suscribirse a {@code thumbnails} junto con {@code content}; cuando
+     * {@code thumbnails} termina o se cancela, el resto de la subida ya no
+     * se copia.
+     *
+     * Si las miniaturas están desactivadas o la imagen no se puede leer,
+     * {@code thumbnails} es una lista vacía; nunca falla.
+     */
+    public TeedUpload tee(Flux<DataBuffer> content) {
+        if (!enabled) {
+            return new TeedUpload(content, Mono.just(List.of()));
+        }
+
+        BoundedCopy copy = new BoundedCopy(maxBufferedChunks);
+        Flux<DataBuffer> teed = content
+                .concatMap(copy::offer, 1)
+                // Buffers ya retenidos que concatMap descarta al cancelar
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                .doOnComplete(copy::complete)
+                .doOnError(copy::error)
+                .doOnCancel(() -> copy.error(new IOException("Subida cancelada")));
+
+        Mono<List<Thumbnail>> thumbnails = Mono
+                .fromCallable(() -> decode(copy.asFlux()))
+                .subscribeOn(scheduler)
+                .flatMapMany(source -> Flux.fromIterable(SIZES)
+                        .flatMap(size -> Mono.fromCallable(() -> new Thumbnail(size, encode(resize(source, size))))
+                                .subscribeOn(scheduler)))
+                .collectList()
+                .transform(this::timed)
+                .onErrorResume(e -> {
+                    System.err.println("ERROR MINIATURAS: No se pudieron generar. Causa: " + e.getMessage());
+                    return Mono.just(List.of());
+                })
+                // Si el generador no llegó a leer, nadie más libera la copia
+                .doFinally(signal -> copy.drain());
+
+        return new TeedUpload(teed, thumbnails);
+    }
+
+    /**
+     * Copia de la subida para el generador, en una cola de como mucho
+     * {@code capacity} buffers. {@link #offer(DataBuffer)} no entrega el
+     * buffer a la subida hasta que cabe en la cola; cada vez que el generador
+     * saca uno se despierta a quien espere.
+     */
+    private static final class BoundedCopy {
+
+        private final int capacity;
+        private final Sinks.Many<DataBuffer> sink = Sinks.many().unicast().onBackpressureBuffer();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final AtomicReference<Sinks.Empty<Void>> space = new AtomicReference<>(Sinks.empty());
+
+        BoundedCopy(int capacity) {
+            this.capacity = capacity;
+        }
+
+        Flux<DataBuffer> asFlux() {
+            return sink.asFlux()
+                    .doOnNext(buffer -> {
+                        queued.decrementAndGet();
+                        signalSpace();
+                    })
+                    .doOnCancel(this::close)
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+        }
+
+        Mono<DataBuffer> offer(DataBuffer buffer) {
+            DataBufferUtils.retain(buffer);
+            AtomicBoolean handedOver = new AtomicBoolean();
+            return Mono.defer(() -> {
+                // Se toma antes de mirar la cola: un aviso entre medias no se pierde
+                Sinks.Empty<Void> waiter = space.get();
+                if (queued.get() >= capacity && !closed.get()) {
+                    return waiter.asMono().then(Mono.<DataBuffer>empty());
+                }
+                handedOver.set(true);
+                if (!emit(buffer)) {
+                    // Sin generador (terminó, falló o se canceló): solo se sube
+                    DataBufferUtils.release(buffer);
+                }
+                return Mono.just(buffer);
+            }).repeatWhenEmpty(retries -> retries)
+                    .doOnCancel(() -> {
+                        if (!handedOver.get()) {
+                            // Cancelada mientras esperaba: ni la subida ni la copia lo liberarán
+                            DataBufferUtils.release(buffer);
+                            DataBufferUtils.release(buffer);
+                        }
+                    });
+        }
+
+        // Excluye a close(): tras cerrar no entra nada más en la cola
+        private synchronized boolean emit(DataBuffer buffer) {
+            if (closed.get()) {
+                return false;
+            }
+            queued.incrementAndGet();
+            if (sink.tryEmitNext(buffer).isFailure()) {
+                queued.decrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        void complete() {
+            sink.tryEmitComplete();
+            signalSpace();
+        }
+
+        void error(Throwable error) {
+            sink.tryEmitError(error);
+            signalSpace();
+        }
+
+        /**
+         * Libera lo que quede en la cola si el generador nunca se suscribió.
+         * Si ya se suscribió, la cola es suya y esta segunda suscripción se
+         * rechaza sin efecto. Cierra la cola con error para que un generador
+         * que sigue esperando datos (la subida falló sin llegar a leer el
+         * cuerpo) no deje bloqueado su hilo.
+         */
+        void drain() {
+            close();
+            sink.tryEmitError(new IOException("Miniaturas canceladas"));
+            sink.asFlux().subscribe(DataBufferUtils::release, e -> {
+            });
+        }
+
+        // El generador ya no lee: la subida deja de esperarlo
+        private void close() {
+            synchronized (this) {
+                closed.set(true);
+            }
+            signalSpace();
+        }
+
+        private void signalSpace() {
+            space.getAndSet(Sinks.empty()).tryEmitEmpty();
+        }
+    }
+
+    private Mono<List<Thumbnail>> timed(Mono<List<Thumbnail>> mono) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start();
+            return mono.doOnSuccess(result -> sample.stop(timer));
+        });
+    }
+
+    private BufferedImage decode(Flux<DataBuffer> content) throws IOException {
+        // Al cerrar, los buffers que queden se liberan y los siguientes ya no
+        // se retienen (tryEmitNext falla)
+        try (InputStream input = DataBufferUtils.subscriberInputStream(content, 16);
+                ImageInputStream stream = ImageIO.createImageInputStream(input)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                throw new IOException("Formato de imagen no soportado");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+
+                // Submuestrear al leer: no hace falta el original completo en memoria
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, longest / (2 * SIZES.get(SIZES.size() - 1)));
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Reduce a la mitad con interpolación bilineal hasta quedar a menos del
+     * doble del tamaño final, y hace el último paso al tamaño exacto. Cada
+     * paso promedia los píxeles que descarta, sin el aliasing de un único
+     * escalado grande. Nunca amplía: una imagen menor que {@code size} se
+     * recodifica con su tamaño.
+     */
+    static BufferedImage resize(BufferedImage source, int size) {
+        int longest = Math.max(source.getWidth(), source.getHeight());
+        double scale = Math.min(1.0, (double) size / longest);
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            current = scaleStep(current, width, height);
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private static BufferedImage scaleStep(BufferedImage source, int width, int height) {
+        // JPEG no tiene canal alfa: las zonas transparentes quedan en blanco
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    private byte[] encode(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(output)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return output.toByteArray();
+    }
+}
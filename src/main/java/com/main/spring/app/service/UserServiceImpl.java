@@ -1,6 +1,5 @@
 package com.main.spring.app.service;
 
-import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
@@ -15,7 +14,6 @@ import org.springframework.http.HttpStatus;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.nio.ByteBuffer;
 
 @Service
 public class UserServiceImpl implements UserService {
@@ -49,19 +47,10 @@ public class UserServiceImpl implements UserService {
                 .switchIfEmpty(Mono.error(new ResponseStatusException(
                         HttpStatus.NOT_FOUND, "El usuario no existe.")))
                 .flatMap(user -> {
-                    // 2. Convertir FilePart a byte[] de forma reactiva
-                    Mono<byte[]> imageBytesMono = DataBufferUtils.join(filePart.content())
-                            .map(dataBuffer -> {
-                                ByteBuffer byteBuffer = dataBuffer.asByteBuffer();
-                                byte[] bytes = new byte[byteBuffer.remaining()];
-                                byteBuffer.get(bytes);
-                                DataBufferUtils.release(dataBuffer);
-                                return bytes;
-                            });
-
-                    // 3. Subir la imagen al bucket y obtener la URL
-                    Mono<String> imageUrlMono = imageBytesMono
-                            .flatMap(bytes -> supabaseStorageService.uploadImage(bytes, filePart.filename()));
+                    // 2-3. Subir la imagen al bucket según llega (sin copiarla a un
+                    // byte[]) y obtener la URL
+                    Mono<String> imageUrlMono = supabaseStorageService.uploadImage(filePart.content(),
+                            filePart.filename());
 
                     // 4. Actualizar el photoUrl en Firestore
                     return imageUrlMono
@@ -70,6 +59,9 @@ public class UserServiceImpl implements UserService {
                             .doOnSuccess(message -> System.out.println(
                                     "LOG: Foto de perfil actualizada para usuario: " + userId))
                             .onErrorResume(e -> {
+                                if (e instanceof ResponseStatusException) {
+                                    return Mono.error(e); // ej: 413 imagen demasiado grande
+                                }
                                 System.err.println("ERROR: Fallo al actualizar foto de perfil. Causa: " + e.getMessage());
                                 return Mono.error(new ResponseStatusException(
                                         HttpStatus.INTERNAL_SERVER_ERROR, "Error interno al actualizar la foto de perfil."));
@@ -0,0 +1,232 @@
+package com.main.spring.app.service.cpu;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Motor de filtros en CPU para cuando FastAPI no está disponible.
+ *
+ * Soporta negative, gaussian, emboss y canny con los mismos parámetros que
+ * {@code ImageProcessingController}. Decodifica la imagen a un {@code int[]}
+ * ARGB, aplica {@link CpuFilters} en un {@link ForkJoinPool} propio
+ * ({@code image.cpu-fallback.parallelism}, por defecto un hilo por núcleo) y
+ * devuelve un PNG. Todo el trabajo corre en ese pool, nunca en el event loop.
+ *
+ * Como mucho {@code image.cpu-fallback.max-concurrent} imágenes (por defecto
+ * una por hilo del pool) se procesan o esperan a la vez; el resto recibe 503
+ * al momento en lugar de encolarse. Las dimensiones se leen de la cabecera
+ * antes de decodificar y las imágenes de más de
+ * {@code image.cpu-fallback.max-pixels} píxeles se rechazan con 413.
+ */
+@Component
+public class CpuFilterEngine {
+
+    private static final Set<String> FILTERS = Set.of("negative", "gaussian", "emboss", "canny");
+
+    private final boolean enabled;
+    private final int maxInputBytes;
+    private final long maxPixels;
+    private final Semaphore permits;
+    private final ForkJoinPool pool;
+    private final Scheduler scheduler;
+    private final MeterRegistry meterRegistry;
+
+    public CpuFilterEngine(MeterRegistry meterRegistry,
+            @Value("${image.cpu-fallback.enabled:true}") boolean enabled,
+            @Value("${image.cpu-fallback.parallelism:0}") int parallelism,
+            @Value("${image.cpu-fallback.max-input-bytes:20971520}") int maxInputBytes,
+            @Value("${image.cpu-fallback.max-pixels:25000000}") long maxPixels,
+            @Value("${image.cpu-fallback.max-concurrent:0}") int maxConcurrent) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.maxInputBytes = maxInputBytes;
+        this.maxPixels = maxPixels;
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.permits = new Semaphore(maxConcurrent > 0 ? maxConcurrent : threads);
+        this.pool = new ForkJoinPool(threads);
+        this.scheduler = Schedulers.fromExecutorService(pool, "cpu-filters");
+
+        // Sin caché en disco: las imágenes ya están en memoria
+        ImageIO.setUseCache(false);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.dispose();
+        pool.shutdown();
+    }
+
+    public boolean supports(String filter) {
+        return enabled && FILTERS.contains(filter);
+    }
+
+    /**
+     * @return Tamaño máximo de la imagen original que se procesa en CPU.
+     */
+    public int maxInputBytes() {
+        return maxInputBytes;
+    }
+
+    /**
+     * @param filter Nombre del filtro (ej: "canny").
+     * @param input  Imagen original (PNG, JPEG...).
+     * @param params Parámetros del controlador; los nulos toman el valor por
+     *               defecto.
+     * @return La imagen filtrada en PNG, o 503 si ya hay
+     *         {@code max-concurrent} imágenes en curso.
+     */
+    public Mono<byte[]> apply(String filter, byte[] input, Map<String, Object> params) {
+        if (!supports(filter)) {
+            return Mono.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Filtro no disponible sin el servidor FastAPI"));
+        }
+
+        Timer timer = Timer.builder("image.cpu.fallback")
+                .description("Filtros aplicados en CPU por no estar disponible FastAPI")
+                .tag("filter", filter)
+                .register(meterRegistry);
+
+        return Mono.defer(() -> {
+            if (!permits.tryAcquire()) {
+                return Mono.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Procesamiento en CPU saturado, reintenta más tarde"));
+            }
+            // El permiso lo libera la tarea al terminar, o la cancelación si
+            // la tarea aún no había empezado (una tarea en curso no se detiene)
+            AtomicBoolean started = new AtomicBoolean();
+            return Mono.fromCallable(() -> {
+                if (!started.compareAndSet(false, true)) {
+                    return null;
+                }
+                try {
+                    return timer.recordCallable(() -> run(filter, input, params));
+                } finally {
+                    permits.release();
+                }
+            })
+                    .subscribeOn(scheduler)
+                    .doOnCancel(() -> {
+                        if (started.compareAndSet(false, true)) {
+                            permits.release();
+                        }
+                    });
+        });
+    }
+
+    private byte[] run(String filter, byte[] input, Map<String, Object> params) throws IOException {
+        BufferedImage image = decode(input);
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        boolean auto = Boolean.TRUE.equals(params.get("use_auto"));
+        int kernelSize = auto
+                ? CpuFilters.autoKernelSize(width, height)
+                : intParam(params, "kernel_size", filter.equals("emboss") ? 3 : 5);
+        if (kernelSize < 1 || kernelSize > CpuFilters.MAX_KERNEL_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Valor inválido para kernel_size");
+        }
+
+        int[] result = switch (filter) {
+            case "negative" -> CpuFilters.negative(pool, pixels, width, height);
+            case "gaussian" -> CpuFilters.gaussian(pool, pixels, width, height, kernelSize,
+                    auto ? 0 : floatParam(params, "sigma", 1.4f));
+            case "emboss" -> CpuFilters.emboss(pool, pixels, width, height, kernelSize,
+                    intParam(params, "bias_value", 128));
+            case "canny" -> CpuFilters.canny(pool, pixels, width, height, kernelSize,
+                    floatParam(params, "sigma", 1.4f),
+                    auto ? null : threshold(params, "low_threshold"),
+                    auto ? null : threshold(params, "high_threshold"));
+            default -> throw new IllegalArgumentException(filter);
+        };
+
+        System.arraycopy(result, 0, pixels, 0, pixels.length);
+        return encode(image);
+    }
+
+    /**
+     * Decodifica a {@link BufferedImage#TYPE_INT_ARGB} para trabajar
+     * directamente sobre su {@code int[]}. Las dimensiones se comprueban con
+     * la cabecera, antes de reservar memoria para los píxeles.
+     */
+    private BufferedImage decode(byte[] input) throws IOException {
+        BufferedImage decoded;
+        try (ImageInputStream stream = ImageIO.createImageInputStream(new ByteArrayInputStream(input))) {
+            Iterator<ImageReader> readers = stream != null ? ImageIO.getImageReaders(stream) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Formato de imagen no soportado");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                if ((long) reader.getWidth(0) * reader.getHeight(0) > maxPixels) {
+                    throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                            "La imagen tiene demasiados píxeles para procesarse en CPU");
+                }
+                decoded = reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+        if (decoded.getType() == BufferedImage.TYPE_INT_ARGB) {
+            return decoded;
+        }
+
+        BufferedImage argb = new BufferedImage(decoded.getWidth(), decoded.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        argb.createGraphics().drawImage(decoded, 0, 0, null);
+        return argb;
+    }
+
+    private static byte[] encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+        return output.toByteArray();
+    }
+
+    private static int intParam(Map<String, Object> params, String name, int defaultValue) {
+        Object value = params.get(name);
+        return value instanceof Number number ? number.intValue() : defaultValue;
+    }
+
+    private static float floatParam(Map<String, Object> params, String name, float defaultValue) {
+        Object value = params.get(name);
+        return value instanceof Number number ? number.floatValue() : defaultValue;
+    }
+
+    private static Double threshold(Map<String, Object> params, String name) {
+        Object value = params.get(name);
+        if (value == null || value.toString().isBlank()) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Valor inválido para " + name);
+        }
+    }
+}
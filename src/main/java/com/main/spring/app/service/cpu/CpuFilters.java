@@ -0,0 +1,391 @@
+package com.main.spring.app.service.cpu;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Filtros de imagen en CPU sobre arrays primitivos.
+ *
+ * Las imágenes son {@code int[]} ARGB empaquetados (un int por píxel, fila a
+ * fila). Cada paso se reparte en franjas de filas contiguas que se procesan
+ * en paralelo en el {@link ForkJoinPool} recibido; una franja tiene como
+ * mucho {@link #TILE_PIXELS} píxeles para que quepa en caché.
+ *
+ * Los resultados se parecen a los del servicio FastAPI, pero no son
+ * idénticos píxel a píxel (bordes replicados, umbrales automáticos por
+ * mediana).
+ */
+public final class CpuFilters {
+
+    static final int TILE_PIXELS = 64 * 1024;
+    private static final int OPAQUE = 0xFF000000;
+
+    /**
+     * Tamaño de kernel máximo admitido, también en modo {@code use_auto}. Por
+     * encima el coste por píxel crece sin mejora visible.
+     */
+    public static final int MAX_KERNEL_SIZE = 31;
+
+    private CpuFilters() {
+    }
+
+    public static int[] negative(ForkJoinPool pool, int[] src, int width, int height) {
+        int[] dst = new int[src.length];
+        forEachTile(pool, width, height, (from, to) -> {
+            for (int i = from * width; i < to * width; i++) {
+                dst[i] = (src[i] & OPAQUE) | (~src[i] & 0x00FFFFFF);
+            }
+        });
+        return dst;
+    }
+
+    /**
+     * Desenfoque gaussiano separable (horizontal y después vertical).
+     *
+     * @param sigma Si es {@code <= 0} se deriva del tamaño del kernel.
+     */
+    public static int[] gaussian(ForkJoinPool pool, int[] src, int width, int height, int kernelSize, float sigma) {
+        float[] kernel = gaussianKernel(kernelSize, sigma);
+        int radius = kernel.length / 2;
+        int[] tmp = new int[src.length];
+        int[] dst = new int[src.length];
+
+        forEachTile(pool, width, height, (from, to) -> {
+            for (int y = from; y < to; y++) {
+                int row = y * width;
+                for (int x = 0; x < width; x++) {
+                    float r = 0, g = 0, b = 0;
+                    for (int k = -radius; k <= radius; k++) {
+                        int p = src[row + clamp(x + k, width)];
+                        float w = kernel[k + radius];
+                        r += w * ((p >> 16) & 0xFF);
+                        g += w * ((p >> 8) & 0xFF);
+                        b += w * (p & 0xFF);
+                    }
+                    tmp[row + x] = (src[row + x] & OPAQUE) | pack(r, g, b);
+                }
+            }
+        });
+
+        forEachTile(pool, width, height, (from, to) -> {
+            for (int y = from; y < to; y++) {
+                int row = y * width;
+                for (int x = 0; x < width; x++) {
+                    float r = 0, g = 0, b = 0;
+                    for (int k = -radius; k <= radius; k++) {
+                        int p = tmp[clamp(y + k, height) * width + x];
+                        float w = kernel[k + radius];
+                        r += w * ((p >> 16) & 0xFF);
+                        g += w * ((p >> 8) & 0xFF);
+                        b += w * (p & 0xFF);
+                    }
+                    dst[row + x] = (tmp[row + x] & OPAQUE) | pack(r, g, b);
+                }
+            }
+        });
+        return dst;
+    }
+
+    /**
+     * Relieve en escala de grises: kernel antisimétrico en diagonal (negativo
+     * arriba a la izquierda, positivo abajo a la derecha) más {@code bias}.
+     */
+    public static int[] emboss(ForkJoinPool pool, int[] src, int width, int height, int kernelSize, int bias) {
+        int size = oddAtLeast3(kernelSize);
+        int radius = size / 2;
+        float[] weights = new float[size * size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                weights[i * size + j] = (float) (i + j - (size - 1)) / (size - 1);
+            }
+        }
+
+        float[] gray = grayscale(pool, src, width, height);
+        int[] dst = new int[src.length];
+        forEachTile(pool, width, height, (from, to) -> {
+            for (int y = from; y < to; y++) {
+                for (int x = 0; x < width; x++) {
+                    float sum = 0;
+                    for (int i = -radius; i <= radius; i++) {
+                        int row = clamp(y + i, height) * width;
+                        for (int j = -radius; j <= radius; j++) {
+                            sum += weights[(i + radius) * size + j + radius] * gray[row + clamp(x + j, width)];
+                        }
+                    }
+                    dst[y * width + x] = gray(sum + bias);
+                }
+            }
+        });
+        return dst;
+    }
+
+    /**
+     * Detector de bordes de Canny: suavizado gaussiano, gradiente de Sobel
+     * (norma L1), supresión de no máximos e histéresis. Bordes blancos sobre
+     * negro.
+     *
+     * @param low  Umbral bajo; si alguno es {@code null} se calculan ambos a
+     *             partir de la mediana de la imagen suavizada.
+     * @param high Umbral alto.
+     */
+    public static int[] canny(ForkJoinPool pool, int[] src, int width, int height, int kernelSize, float sigma,
+            Double low, Double high) {
+        float[] kernel = gaussianKernel(kernelSize, sigma);
+        float[] blurred = blurPlane(pool, grayscale(pool, src, width, height), width, height, kernel);
+
+        if (low == null || high == null) {
+            float median = median(blurred);
+            low = Math.max(0, 0.67 * median);
+            high = Math.min(255, 1.33 * median);
+        }
+        float lowThreshold = low.floatValue();
+        float highThreshold = high.floatValue();
+
+        // Gradiente y dirección cuantizada (0: 0°, 1: 45°, 2: 90°, 3: 135°)
+        float[] magnitude = new float[blurred.length];
+        byte[] direction = new byte[blurred.length];
+        forEachTile(pool, width, height, (from, to) -> {
+            for (int y = from; y < to; y++) {
+                int up = clamp(y - 1, height) * width;
+                int row = y * width;
+                int down = clamp(y + 1, height) * width;
+                for (int x = 0; x < width; x++) {
+                    int left = clamp(x - 1, width);
+                    int right = clamp(x + 1, width);
+                    float gx = (blurred[up + right] + 2 * blurred[row + right] + blurred[down + right])
+                            - (blurred[up + left] + 2 * blurred[row + left] + blurred[down + left]);
+                    float gy = (blurred[down + left] + 2 * blurred[down + x] + blurred[down + right])
+                            - (blurred[up + left] + 2 * blurred[up + x] + blurred[up + right]);
+                    magnitude[row + x] = Math.abs(gx) + Math.abs(gy);
+                    direction[row + x] = quantize(gx, gy);
+                }
+            }
+        });
+
+        // Supresión de no máximos y clasificación (0: nada, 1: débil, 2: fuerte)
+        byte[] edges = new byte[blurred.length];
+        forEachTile(pool, width, height, (from, to) -> {
+            for (int y = Math.max(from, 1); y < Math.min(to, height - 1); y++) {
+                for (int x = 1; x < width - 1; x++) {
+                    int i = y * width + x;
+                    int step = switch (direction[i]) {
+                        case 0 -> 1;
+                        case 1 -> width + 1;
+                        case 2 -> width;
+                        default -> width - 1;
+                    };
+                    float m = magnitude[i];
+                    if (m < lowThreshold || m < magnitude[i - step] || m < magnitude[i + step]) {
+                        continue;
+                    }
+                    edges[i] = (byte) (m >= highThreshold ? 2 : 1);
+                }
+            }
+        });
+
+        // Histéresis: los bordes débiles conectados a uno fuerte se conservan
+        int[] stack = new int[64];
+        int top = 0;
+        for (int i = 0; i < edges.length; i++) {
+            if (edges[i] == 2) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = i;
+            }
+        }
+        while (top > 0) {
+            int i = stack[--top];
+            int x = i % width;
+            int y = i / width;
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    int nx = x + dx;
+                    int ny = y + dy;
+                    if (nx < 0 || ny < 0 || nx >= width || ny >= height) {
+                        continue;
+                    }
+                    int n = ny * width + nx;
+                    if (edges[n] == 1) {
+                        edges[n] = 2;
+                        if (top == stack.length) {
+                            stack = Arrays.copyOf(stack, stack.length * 2);
+                        }
+                        stack[top++] = n;
+                    }
+                }
+            }
+        }
+
+        int[] dst = new int[src.length];
+        forEachTile(pool, width, height, (from, to) -> {
+            for (int i = from * width; i < to * width; i++) {
+                dst[i] = edges[i] == 2 ? 0xFFFFFFFF : OPAQUE;
+            }
+        });
+        return dst;
+    }
+
+    /**
+     * @return Tamaño de kernel impar proporcional a la imagen (modo
+     *         {@code use_auto}).
+     */
+    public static int autoKernelSize(int width, int height) {
+        return oddAtLeast3(Math.min(MAX_KERNEL_SIZE, Math.min(width, height) / 100));
+    }
+
+    static float[] gaussianKernel(int kernelSize, float sigma) {
+        int size = oddAtLeast3(kernelSize);
+        // Misma fórmula que OpenCV cuando sigma no se indica
+        double s = sigma > 0 ? sigma : 0.3 * ((size - 1) * 0.5 - 1) + 0.8;
+        float[] kernel = new float[size];
+        int radius = size / 2;
+        double sum = 0;
+        for (int i = -radius; i <= radius; i++) {
+            double value = Math.exp(-(i * i) / (2 * s * s));
+            kernel[i + radius] = (float) value;
+            sum += value;
+        }
+        for (int i = 0; i < size; i++) {
+            kernel[i] /= (float) sum;
+        }
+        return kernel;
+    }
+
+    private static float[] grayscale(ForkJoinPool pool, int[] src, int width, int height) {
+        float[] gray = new float[src.length];
+        forEachTile(pool, width, height, (from, to) -> {
+            for (int i = from * width; i < to * width; i++) {
+                int p = src[i];
+                gray[i] = 0.299f * ((p >> 16) & 0xFF) + 0.587f * ((p >> 8) & 0xFF) + 0.114f * (p & 0xFF);
+            }
+        });
+        return gray;
+    }
+
+    private static float[] blurPlane(ForkJoinPool pool, float[] src, int width, int height, float[] kernel) {
+        int radius = kernel.length / 2;
+        float[] tmp = new float[src.length];
+        float[] dst = new float[src.length];
+        forEachTile(pool, width, height, (from, to) -> {
+            for (int y = from; y < to; y++) {
+                int row = y * width;
+                for (int x = 0; x < width; x++) {
+                    float sum = 0;
+                    for (int k = -radius; k <= radius; k++) {
+                        sum += kernel[k + radius] * src[row + clamp(x + k, width)];
+                    }
+                    tmp[row + x] = sum;
+                }
+            }
+        });
+        forEachTile(pool, width, height, (from, to) -> {
+            for (int y = from; y < to; y++) {
+                for (int x = 0; x < width; x++) {
+                    float sum = 0;
+                    for (int k = -radius; k <= radius; k++) {
+                        sum += kernel[k + radius] * tmp[clamp(y + k, height) * width + x];
+                    }
+                    dst[y * width + x] = sum;
+                }
+            }
+        });
+        return dst;
+    }
+
+    private static float median(float[] values) {
+        int[] histogram = new int[256];
+        for (float value : values) {
+            histogram[Math.min(255, Math.max(0, (int) value))]++;
+        }
+        int half = values.length / 2;
+        int seen = 0;
+        for (int level = 0; level < 256; level++) {
+            seen += histogram[level];
+            if (seen > half) {
+                return level;
+            }
+        }
+        return 255;
+    }
+
+    private static byte quantize(float gx, float gy) {
+        double angle = Math.toDegrees(Math.atan2(gy, gx));
+        if (angle < 0) {
+            angle += 180;
+        }
+        if (angle < 22.5 || angle >= 157.5) {
+            return 0;
+        }
+        if (angle < 67.5) {
+            return 1;
+        }
+        if (angle < 112.5) {
+            return 2;
+        }
+        return 3;
+    }
+
+    private static int oddAtLeast3(int size) {
+        size = Math.max(3, size);
+        return size % 2 == 0 ? size + 1 : size;
+    }
+
+    private static int clamp(int index, int length) {
+        return index < 0 ? 0 : index >= length ? length - 1 : index;
+    }
+
+    private static int channel(float value) {
+        int v = Math.round(value);
+        return v < 0 ? 0 : v > 255 ? 255 : v;
+    }
+
+    private static int pack(float r, float g, float b) {
+        return (channel(r) << 16) | (channel(g) << 8) | channel(b);
+    }
+
+    private static int gray(float value) {
+        int v = channel(value);
+        return OPAQUE | (v << 16) | (v << 8) | v;
+    }
+
+    /**
+     * Ejecuta {@code op} sobre franjas de filas en paralelo y espera a que
+     * terminen todas.
+     */
+    static void forEachTile(ForkJoinPool pool, int width, int height, RowRange op) {
+        int rowsPerTile = Math.max(1, TILE_PIXELS / Math.max(1, width));
+        pool.invoke(new Tile(0, height, rowsPerTile, op));
+    }
+
+    @FunctionalInterface
+    interface RowRange {
+        void apply(int fromRow, int toRow);
+    }
+
+    private static final class Tile extends RecursiveAction {
+
+        private final int from;
+        private final int to;
+        private final int rowsPerTile;
+        private final RowRange op;
+
+        Tile(int from, int to, int rowsPerTile, RowRange op) {
+            this.from = from;
+            this.to = to;
+            this.rowsPerTile = rowsPerTile;
+            this.op = op;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= rowsPerTile) {
+                op.apply(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Tile(from, middle, rowsPerTile, op), new Tile(middle, to, rowsPerTile, op));
+        }
+    }
+}
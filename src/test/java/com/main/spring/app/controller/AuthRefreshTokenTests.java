@@ -0,0 +1,120 @@
+package com.main.spring.app.controller;
+
+import com.main.spring.app.dto.FirebaseTokenResponse;
+import com.main.spring.app.repository.AuthRepositoryImpl;
+import com.main.spring.app.service.AuthServiceImpl;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * {@code POST /api/auth/refresh} de punta a punta (controlador, servicio y
+ * repositorio) sin red: el WebClient de Firebase responde con un
+ * {@code ExchangeFunction} simulado en lugar de securetoken.googleapis.com.
+ */
+class AuthRefreshTokenTests {
+
+    private final List<ClientRequest> requests = new CopyOnWriteArrayList<>();
+
+    @Test
+    void secureTokenResponseIsMappedToTheLoginShape() {
+        WebTestClient client = client(HttpStatus.OK, """
+                {
+                  "id_token": "nuevo-id-token",
+                  "refresh_token": "nuevo-refresh-token",
+                  "expires_in": "3600",
+                  "token_type": "Bearer",
+                  "user_id": "uid-123",
+                  "project_id": "upsglam"
+                }
+                """);
+
+        FirebaseTokenResponse tokens = client.post().uri("/api/auth/refresh")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("refreshToken", "refresh-token"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(FirebaseTokenResponse.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertThat(tokens).isNotNull();
+        assertThat(tokens.getIdToken()).isEqualTo("nuevo-id-token");
+        assertThat(tokens.getRefreshToken()).isEqualTo("nuevo-refresh-token");
+        assertThat(tokens.getExpiresIn()).isEqualTo("3600");
+        assertThat(tokens.getLocalId()).isEqualTo("uid-123");
+
+        ClientRequest request = requests.get(0);
+        assertThat(request.method()).isEqualTo(HttpMethod.POST);
+        assertThat(request.url().toString()).isEqualTo("https://securetoken.googleapis.com/v1/token?key=api-key");
+        assertThat(request.headers().getContentType()).isEqualTo(MediaType.APPLICATION_FORM_URLENCODED);
+    }
+
+    @Test
+    void rejectedRefreshTokenIsUnauthorized() {
+        WebTestClient client = client(HttpStatus.BAD_REQUEST, """
+                {"error": {"code": 400, "message": "TOKEN_EXPIRED", "status": "INVALID_ARGUMENT"}}
+                """);
+
+        client.post().uri("/api/auth/refresh")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("refreshToken", "caducado"))
+                .exchange()
+                .expectStatus().isUnauthorized();
+
+        // El repositorio traduce el 4xx de securetoken a REFRESH_TOKEN_INVALIDO
+        assertThatThrownBy(() -> repository(HttpStatus.BAD_REQUEST, "{}").refreshToken("caducado")
+                .block(Duration.ofSeconds(5)))
+                .hasMessageContaining("REFRESH_TOKEN_INVALIDO");
+    }
+
+    @Test
+    void blankRefreshTokenIsRejectedBeforeCallingFirebase() {
+        WebTestClient client = client(HttpStatus.OK, "{}");
+
+        client.post().uri("/api/auth/refresh")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("refreshToken", " "))
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        assertThat(requests).isEmpty();
+    }
+
+    private WebTestClient client(HttpStatus status, String body) {
+        AuthRepositoryImpl repository = repository(status, body);
+        return WebTestClient.bindToController(new AuthControllerImpl(new AuthServiceImpl(repository))).build();
+    }
+
+    private AuthRepositoryImpl repository(HttpStatus status, String body) {
+        WebClient firebaseWebClient = WebClient.builder()
+                .baseUrl("https://identitytoolkit.googleapis.com/v1")
+                .exchangeFunction(request -> {
+                    requests.add(request);
+                    return Mono.just(ClientResponse.create(status)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body(body)
+                            .build());
+                })
+                .build();
+
+        return new AuthRepositoryImpl(null, firebaseWebClient, "api-key", null, null);
+    }
+}
@@ -0,0 +1,82 @@
+package com.main.spring.app.controller;
+
+import com.main.spring.app.dto.FirebaseTokenResponse;
+import com.main.spring.app.interfaces.auth.AuthService;
+import com.main.spring.app.model.auth.LoginRequest;
+import com.main.spring.app.model.auth.RefreshTokenRequest;
+import com.main.spring.app.model.auth.RegisterRequest;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.server.ResponseStatusException;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Códigos de {@code POST /api/auth/register} ante errores que no son de
+ * negocio, con un {@link AuthService} que falla con el error indicado.
+ */
+class AuthRegisterErrorTests {
+
+    @Test
+    void saturatedBlockingPoolIsServiceUnavailable() {
+        register(new RejectedExecutionException("Pool blocking saturado"))
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+
+        // El Admin SDK lo entrega como causa del future fallido
+        register(new ExecutionException(new RejectedExecutionException("Pool blocking saturado")))
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @Test
+    void responseStatusKeepsItsStatus() {
+        register(new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Demasiadas peticiones"))
+                .expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    @Test
+    void unknownErrorIsInternalServerError() {
+        register(new IllegalStateException("fallo"))
+                .expectStatus().isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    private WebTestClient.ResponseSpec register(Throwable error) {
+        AuthService failing = new AuthService() {
+            @Override
+            public Mono<String> registerUser(RegisterRequest request) {
+                return Mono.error(error);
+            }
+
+            @Override
+            public Mono<String> loginUser(LoginRequest request) {
+                return Mono.error(new UnsupportedOperationException());
+            }
+
+            @Override
+            public Mono<FirebaseTokenResponse> loginUserWithTokens(LoginRequest request) {
+                return Mono.error(new UnsupportedOperationException());
+            }
+
+            @Override
+            public Mono<FirebaseTokenResponse> refreshToken(RefreshTokenRequest request) {
+                return Mono.error(new UnsupportedOperationException());
+            }
+        };
+
+        return WebTestClient.bindToController(new AuthControllerImpl(failing)).build()
+                .post().uri("/api/auth/register")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of(
+                        "usr_username", "ana",
+                        "usr_email", "ana@upsglam.com",
+                        "usr_password", "secreto",
+                        "usr_confirmPassword", "secreto"))
+                .exchange();
+    }
+}
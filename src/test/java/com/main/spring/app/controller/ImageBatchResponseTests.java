@@ -0,0 +1,165 @@
+package com.main.spring.app.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.main.spring.app.config.BlockingCallExecutor;
+import com.main.spring.app.service.FastApiCircuitBreaker;
+import com.main.spring.app.service.FastApiConcurrencyLimiter;
+import com.main.spring.app.service.FilterResultCache;
+import com.main.spring.app.service.ImageProcessingService;
+import com.main.spring.app.service.cpu.CpuFilterEngine;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.test.web.reactive.server.EntityExchangeResult;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Respuesta {@code multipart/mixed} de {@code /api/process/batch} leída
+ * byte a byte: una parte por imagen, los fallos como parte JSON y el
+ * delimitador de cierre al final.
+ *
+ * Un servidor Netty local hace de FastAPI y responde 422 a las imágenes que
+ * contienen "corrupta".
+ */
+class ImageBatchResponseTests {
+
+    private DisposableServer fastApi;
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() {
+        fastApi = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.post("/api/{filter}", (request, response) -> request.receive()
+                        .aggregate().asString(StandardCharsets.ISO_8859_1)
+                        .flatMap(body -> body.contains("corrupta")
+                                ? response.status(HttpResponseStatus.UNPROCESSABLE_ENTITY)
+                                        .sendString(Mono.just("{\"detail\":\"imagen inválida\"}")).then()
+                                : response.sendString(Mono.just("png-ok")).then())))
+                .bindNow();
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        WebClient webClient = WebClient.builder()
+                .baseUrl("http://localhost:" + fastApi.port())
+                .build();
+        FilterResultCache cache = new FilterResultCache(registry,
+                new BlockingCallExecutor(registry, "bounded", 4, 100), true, 4 * 1024 * 1024,
+                64 * 1024 * 1024, false, "/tmp/upsglam-test-cache", 0);
+        ImageProcessingService service = new ImageProcessingService(webClient, cache,
+                new FastApiCircuitBreaker(registry, 5, 30), new CpuFilterEngine(registry, false, 1, 0, 0, 0),
+                new FastApiConcurrencyLimiter(registry, true, 8, 1, 64, 100, 5000, 2000, 0.9), registry, 10,
+                20 * 1024 * 1024, 50, 4, 20 * 1024 * 1024);
+        client = WebTestClient.bindToController(new ImageProcessingController(service, new ObjectMapper())).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        fastApi.disposeNow();
+    }
+
+    @Test
+    void everyItemIsAPartAndTheBodyIsClosed() {
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        file(builder, "form-data; name=\"files\"; filename=\"a.png\"", "imagen-a");
+        file(builder, "form-data; name=\"files\"; filename=\"b.png\"", "imagen corrupta");
+        // filename* (RFC 5987) permite CR/LF codificados en el nombre
+        file(builder, "form-data; name=\"files\"; filename*=UTF-8''c%0D%0AX-Injected%3A%201.png", "imagen-c");
+        builder.part("spec", "{\"filter\":\"negative\"}");
+
+        EntityExchangeResult<byte[]> result = client.post().uri("/api/process/batch")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(builder.build()))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .returnResult();
+
+        MediaType contentType = result.getResponseHeaders().getContentType();
+        assertThat(contentType.isCompatibleWith(MediaType.parseMediaType("multipart/mixed"))).isTrue();
+        String boundary = contentType.getParameter("boundary");
+        String body = new String(result.getResponseBody(), StandardCharsets.UTF_8);
+
+        assertThat(body).endsWith("\r\n--" + boundary + "--\r\n");
+        List<Part> parts = parse(body, boundary);
+        assertThat(parts).extracting(part -> part.headers().get("X-Batch-Index"))
+                .containsExactlyInAnyOrder("0", "1", "2");
+
+        for (Part part : parts) {
+            assertThat(part.headers()).doesNotContainKey("X-Injected");
+            switch (part.headers().get("X-Batch-Index")) {
+                case "0" -> {
+                    assertThat(part.headers()).containsEntry("X-Batch-Status", "200")
+                            .containsEntry(HttpHeaders.CONTENT_TYPE, MediaType.IMAGE_PNG_VALUE);
+                    assertThat(part.body()).isEqualTo("png-ok");
+                }
+                case "1" -> {
+                    assertThat(part.headers()).containsEntry("X-Batch-Status", "422")
+                            .containsEntry(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+                    assertThat(part.body()).contains("\"index\":1").contains("\"status\":422");
+                }
+                default -> {
+                    assertThat(part.headers()).containsEntry("X-Batch-Status", "200");
+                    assertThat(part.headers().get(HttpHeaders.CONTENT_DISPOSITION))
+                            .isEqualTo("attachment; filename=\"cX-Injected: 1.png\"");
+                }
+            }
+        }
+    }
+
+    private record Part(Map<String, String> headers, String body) {
+    }
+
+    private static void file(MultipartBodyBuilder builder, String contentDisposition, String content) {
+        builder.part("files", new ByteArrayResource(content.getBytes(StandardCharsets.UTF_8)))
+                .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition)
+                .contentType(MediaType.IMAGE_PNG);
+    }
+
+    // Partes entre "--boundary\r\n" y "\r\n--boundary"; cabeceras hasta la línea vacía
+    private static List<Part> parse(String body, String boundary) {
+        String delimiter = "--" + boundary;
+        String closing = delimiter + "--\r\n";
+        assertThat(body).startsWith(delimiter + "\r\n");
+
+        List<Part> parts = new ArrayList<>();
+        String rest = body.substring(0, body.length() - closing.length());
+        for (String raw : rest.split(Pattern.quote(delimiter + "\r\n"))) {
+            if (raw.isEmpty()) {
+                continue;
+            }
+            assertThat(raw).endsWith("\r\n");
+            int end = raw.indexOf("\r\n\r\n");
+            Map<String, String> headers = new LinkedHashMap<>();
+            for (String line : raw.substring(0, end).split("\r\n")) {
+                int colon = line.indexOf(':');
+                assertThat(colon).as("cabecera mal formada: %s", line).isPositive();
+                headers.put(line.substring(0, colon), line.substring(colon + 1).strip());
+            }
+            parts.add(new Part(headers, raw.substring(end + 4, raw.length() - 2)));
+        }
+        return parts;
+    }
+}
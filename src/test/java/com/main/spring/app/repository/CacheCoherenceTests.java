@@ -0,0 +1,94 @@
+package com.main.spring.app.repository;
+
+import com.google.cloud.firestore.Firestore;
+import com.main.spring.app.schema.UserSchema;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Dos contextos de Spring en la misma JVM simulan dos réplicas del backend,
+ * cada una con su cliente de Firestore y su caché de perfiles. Una escritura
+ * en la réplica B debe invalidar la caché de la réplica A a través de
+ * {@code CacheInvalidations}, aunque el TTL de la caché sea de una hora.
+ *
+ * Ejecutar con: {@code FIRESTORE_EMULATOR_HOST=localhost:8081 ./mvnw test}
+ */
+@EnabledIfEnvironmentVariable(named = "FIRESTORE_EMULATOR_HOST", matches = ".+")
+class CacheCoherenceTests {
+
+    private Firestore firestoreA;
+    private Firestore firestoreB;
+    private AnnotationConfigApplicationContext replicaA;
+    private AnnotationConfigApplicationContext replicaB;
+
+    @BeforeEach
+    void setUp() {
+        firestoreA = FirestoreEmulatorSupport.create();
+        firestoreB = FirestoreEmulatorSupport.create();
+        replicaA = startReplica(firestoreA);
+        replicaB = startReplica(firestoreB);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        replicaA.close();
+        replicaB.close();
+        firestoreA.close();
+        firestoreB.close();
+    }
+
+    @Test
+    void writeOnOneReplicaInvalidatesTheOtherReplicaCache() throws Exception {
+        String userId = "coherence-user-" + UUID.randomUUID();
+        firestoreA.collection("Users").document(userId)
+                .set(new UserSchema("coherence", userId + "@example.com", null, "bio original")).get();
+
+        UserRepositoryImpl usersA = replicaA.getBean(UserRepositoryImpl.class);
+        UserRepositoryImpl usersB = replicaB.getBean(UserRepositoryImpl.class);
+
+        // La réplica A guarda el perfil en su caché
+        assertThat(usersA.getUserById(userId).block().getUsr_bio()).isEqualTo("bio original");
+
+        // La réplica B modifica el perfil
+        usersB.updateBio(userId, "bio nueva").block(Duration.ofSeconds(10));
+
+        // La réplica A debe dejar de servir la versión cacheada
+        String bio = null;
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            bio = usersA.getUserById(userId).block().getUsr_bio();
+            if ("bio nueva".equals(bio)) {
+                break;
+            }
+            Thread.sleep(100);
+        }
+        assertThat(bio).isEqualTo("bio nueva");
+    }
+
+    private static AnnotationConfigApplicationContext startReplica(Firestore firestoreDb) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("replica", Map.of(
+                "cache.coherence.enabled", "true",
+                "users.cache.ttl-seconds", "3600")));
+
+        context.registerBean(Firestore.class, () -> firestoreDb);
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.register(UserProfileCacheImpl.class, FirestoreCacheCoherence.class, UserRepositoryImpl.class);
+        context.refresh();
+        return context;
+    }
+}
@@ -0,0 +1,220 @@
+package com.main.spring.app.repository;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.UpdateBuilder;
+import com.google.cloud.firestore.WriteBatch;
+import com.main.spring.app.interfaces.counters.ShardedCounterRepository;
+import com.main.spring.app.schema.PostsSchema;
+
+import io.grpc.Status;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Write-behind de {@link CounterAggregatorImpl} con un Firestore simulado:
+ * cada {@link WriteBatch} guarda los incrementos que recibe y, al hacer
+ * commit, los suma a {@link #totals} o falla con el código configurado para
+ * alguno de sus posts. Los futures se completan al momento, así que los
+ * volcados disparados por {@code add} terminan antes de que este devuelva.
+ */
+class CounterAggregatorTests {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final Map<String, Long> totals = new ConcurrentHashMap<>();
+    private final Map<String, Status> failingPosts = new ConcurrentHashMap<>();
+    private final Map<WriteBatch, List<Increment>> staged = new ConcurrentHashMap<>();
+    private final AtomicInteger commits = new AtomicInteger();
+
+    private record Increment(String postId, String field, long delta) {
+    }
+
+    private SimpleMeterRegistry registry;
+    private Firestore firestore;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        firestore = mock(Firestore.class);
+        when(firestore.batch()).thenAnswer(invocation -> newBatch());
+    }
+
+    @Test
+    void deltasOfTheSameCounterAreMergedIntoOneWrite() {
+        CounterAggregatorImpl aggregator = aggregator(1000, 10_000);
+
+        for (int i = 0; i < 1000; i++) {
+            aggregator.add("p1", "pos_likesCount", 1).block(TIMEOUT);
+        }
+        for (int i = 0; i < 5; i++) {
+            aggregator.add("p1", "pos_likesCount", -1).block(TIMEOUT);
+        }
+        aggregator.add("p1", "pos_commentsCount", 1).block(TIMEOUT);
+        aggregator.flush().block(TIMEOUT);
+
+        assertThat(totals).containsExactlyInAnyOrderEntriesOf(Map.of(
+                "p1/pos_likesCount", 995L,
+                "p1/pos_commentsCount", 1L));
+        assertThat(commits.get()).isEqualTo(1);
+        assertThat(bufferedDeltas()).isZero();
+    }
+
+    @Test
+    void reachingFlushThresholdFlushesWithoutWaitingForTheInterval() {
+        CounterAggregatorImpl aggregator = aggregator(3, 10_000);
+
+        aggregator.add("p1", "pos_likesCount", 1).block(TIMEOUT);
+        aggregator.add("p2", "pos_likesCount", 1).block(TIMEOUT);
+        assertThat(commits.get()).isZero();
+
+        aggregator.add("p3", "pos_likesCount", 1).block(TIMEOUT);
+
+        assertThat(commits.get()).isEqualTo(1);
+        assertThat(totals).containsOnlyKeys("p1/pos_likesCount", "p2/pos_likesCount", "p3/pos_likesCount");
+    }
+
+    @Test
+    void failedPostIsRequeuedWithItsEventsAndRetried() {
+        CounterAggregatorImpl aggregator = aggregator(1000, 10_000);
+        failingPosts.put("p2", Status.UNAVAILABLE);
+
+        aggregator.add("p1", "pos_likesCount", 1).block(TIMEOUT);
+        aggregator.add("p2", "pos_likesCount", 1).block(TIMEOUT);
+        aggregator.add("p2", "pos_likesCount", 1).block(TIMEOUT);
+        aggregator.flush().block(TIMEOUT);
+
+        // El lote falla entero y se reintenta post a post: p1 se escribe
+        assertThat(totals).containsExactlyEntriesOf(Map.of("p1/pos_likesCount", 1L));
+        assertThat(bufferedDeltas()).isEqualTo(2);
+
+        failingPosts.clear();
+        aggregator.flush().block(TIMEOUT);
+
+        assertThat(totals).containsEntry("p2/pos_likesCount", 2L);
+        assertThat(bufferedDeltas()).isZero();
+    }
+
+    @Test
+    void deletedPostIsDiscarded() {
+        CounterAggregatorImpl aggregator = aggregator(1000, 10_000);
+        failingPosts.put("p1", Status.NOT_FOUND);
+
+        aggregator.add("p1", "pos_likesCount", 1).block(TIMEOUT);
+        aggregator.flush().block(TIMEOUT);
+
+        assertThat(totals).isEmpty();
+        assertThat(bufferedDeltas()).isZero();
+    }
+
+    @Test
+    void failedDirectWriteIsDroppedWhenTheBufferIsFull() {
+        CounterAggregatorImpl aggregator = aggregator(1, 1);
+        failingPosts.put("p1", Status.UNAVAILABLE);
+        failingPosts.put("p2", Status.UNAVAILABLE);
+
+        // p1 ocupa el único hueco tras fallar su volcado
+        aggregator.add("p1", "pos_likesCount", 1).block(TIMEOUT);
+        aggregator.add("p2", "pos_likesCount", 1).block(TIMEOUT);
+
+        assertThat(registry.get("counters.writebehind.direct.writes").counter().count()).isEqualTo(1);
+        assertThat(registry.get("counters.writebehind.dropped").counter().count()).isEqualTo(1);
+        assertThat(registry.get("counters.writebehind.buffered.counters").gauge().value()).isEqualTo(1);
+        assertThat(bufferedDeltas()).isEqualTo(1);
+    }
+
+    @Test
+    void shutdownFlushesPendingDeltas() {
+        CounterAggregatorImpl aggregator = aggregator(1000, 10_000);
+
+        aggregator.add("p1", "pos_likesCount", 1).block(TIMEOUT);
+        aggregator.add("p1", "pos_commentsCount", 1).block(TIMEOUT);
+        assertThat(totals).isEmpty();
+
+        aggregator.stopFlush();
+
+        assertThat(totals).containsExactlyInAnyOrderEntriesOf(Map.of(
+                "p1/pos_likesCount", 1L,
+                "p1/pos_commentsCount", 1L));
+    }
+
+    private CounterAggregatorImpl aggregator(int flushThreshold, int maxPending) {
+        return new CounterAggregatorImpl(firestore, new StagingShards(), registry, true, 60_000,
+                flushThreshold, maxPending);
+    }
+
+    private double bufferedDeltas() {
+        return registry.get("counters.writebehind.buffered.deltas").gauge().value();
+    }
+
+    private WriteBatch newBatch() {
+        WriteBatch batch = mock(WriteBatch.class);
+        staged.put(batch, new ArrayList<>());
+        when(batch.commit()).thenAnswer(invocation -> {
+            List<Increment> writes = staged.remove(batch);
+            for (Increment write : writes) {
+                Status status = failingPosts.get(write.postId());
+                if (status != null) {
+                    return ApiFutures.immediateFailedFuture(status.asRuntimeException());
+                }
+            }
+            commits.incrementAndGet();
+            writes.forEach(write -> totals.merge(write.postId() + "/" + write.field(), write.delta(), Long::sum));
+            return ApiFutures.immediateFuture(List.of());
+        });
+        return batch;
+    }
+
+    // Contadores distribuidos activos: cada incremento queda anotado en su lote
+    private class StagingShards implements ShardedCounterRepository {
+
+        @Override
+        public boolean isEnabled() {
+            return true;
+        }
+
+        @Override
+        public Mono<Void> increment(String postId, String field, int delta) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void increment(UpdateBuilder<?> writer, String postId, String field, long delta) {
+            staged.get(writer).add(new Increment(postId, field, delta));
+        }
+
+        @Override
+        public void reportFailure(String postId, Throwable error) {
+        }
+
+        @Override
+        public Mono<Boolean> rollUp(String postId) {
+            return Mono.just(true);
+        }
+
+        @Override
+        public Mono<PostsSchema> withShardTotals(PostsSchema post) {
+            return Mono.just(post);
+        }
+
+        @Override
+        public Mono<List<PostsSchema>> withShardTotals(List<PostsSchema> posts) {
+            return Mono.just(posts);
+        }
+    }
+}
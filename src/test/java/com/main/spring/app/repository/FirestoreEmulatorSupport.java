@@ -0,0 +1,24 @@
+package com.main.spring.app.repository;
+
+import com.google.cloud.NoCredentials;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+
+/**
+ * Cliente de Firestore apuntando al emulador indicado en
+ * {@code FIRESTORE_EMULATOR_HOST} (ej: {@code localhost:8081}).
+ */
+final class FirestoreEmulatorSupport {
+
+    private FirestoreEmulatorSupport() {
+    }
+
+    static Firestore create() {
+        return FirestoreOptions.newBuilder()
+                .setProjectId("demo-upsglam")
+                .setEmulatorHost(System.getenv("FIRESTORE_EMULATOR_HOST"))
+                .setCredentials(NoCredentials.getInstance())
+                .build()
+                .getService();
+    }
+}
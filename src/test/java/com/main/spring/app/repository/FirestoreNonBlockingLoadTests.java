@@ -0,0 +1,97 @@
+package com.main.spring.app.repository;
+
+import com.google.cloud.firestore.Firestore;
+import com.main.spring.app.schema.PostsSchema;
+import com.main.spring.app.schema.UserSchema;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Prueba de carga contra el emulador de Firestore.
+ *
+ * Las operaciones se suscriben en {@link Schedulers#parallel()}, cuyos hilos
+ * son "non-blocking" igual que el event loop de Netty. Con BlockHound
+ * instalado, cualquier {@code future.get()} o I/O bloqueante en esos hilos
+ * lanza un error y la prueba falla.
+ *
+ * Ejecutar con: {@code FIRESTORE_EMULATOR_HOST=localhost:8081 ./mvnw test}
+ */
+@EnabledIfEnvironmentVariable(named = "FIRESTORE_EMULATOR_HOST", matches = ".+")
+class FirestoreNonBlockingLoadTests {
+
+    private static final int OPERATIONS = 500;
+    private static final int CONCURRENCY = 64;
+
+    private static Firestore firestoreDb;
+    private static String postId;
+    private static String userId;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        firestoreDb = FirestoreEmulatorSupport.create();
+
+        // Datos iniciales (en el hilo main, antes de instalar BlockHound)
+        postId = "load-post-" + UUID.randomUUID();
+        userId = "load-user-" + UUID.randomUUID();
+        firestoreDb.collection("Posts").document(postId)
+                .set(new PostsSchema(userId, "https://example.com/img.png", "load test")).get();
+        firestoreDb.collection("Users").document(userId)
+                .set(new UserSchema("load", userId + "@example.com", null, null)).get();
+
+        BlockHound.install();
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        if (firestoreDb != null) {
+            firestoreDb.close();
+        }
+    }
+
+    @Test
+    void repositoriesNeverBlockNonBlockingThreads() {
+        ShardedCounterRepositoryImpl counters = new ShardedCounterRepositoryImpl(firestoreDb, false, 10, 100, 5000);
+        CounterAggregatorImpl aggregator = new CounterAggregatorImpl(firestoreDb, counters, new SimpleMeterRegistry(),
+                false, 1000, 1000, 10000);
+        PostRepositoryImpl postRepository = new PostRepositoryImpl(firestoreDb, null, counters, aggregator, null);
+        UserProfileCacheImpl profileCache = new UserProfileCacheImpl(new SimpleMeterRegistry(), true, 60, 10000);
+        UserRepositoryImpl userRepository = new UserRepositoryImpl(firestoreDb, profileCache,
+                new FirestoreCacheCoherence(firestoreDb, List.of(profileCache), false, 24, 10));
+        CommentsRepositoryImpl commentsRepository = new CommentsRepositoryImpl(firestoreDb);
+        LikeRepositoryImpl likeRepository = new LikeRepositoryImpl(firestoreDb, counters, aggregator);
+        SubscriptionRepositoryImpl subscriptionRepository = new SubscriptionRepositoryImpl(firestoreDb);
+
+        Long completed = Flux.range(0, OPERATIONS)
+                .flatMap(i -> {
+                    Mono<?> operation = switch (i % 6) {
+                        case 0 -> postRepository.getPostById(postId);
+                        case 1 -> postRepository.updateLikeCount(postId, 1);
+                        case 2 -> userRepository.getUserById(userId);
+                        case 3 -> commentsRepository.createComment(postId, userId, "comentario " + i);
+                        case 4 -> likeRepository.createLike(postId, "liker-" + i);
+                        default -> subscriptionRepository.isSubscribed(userId, "other-" + i);
+                    };
+                    return operation.then(Mono.just(i)).subscribeOn(Schedulers.parallel());
+                }, CONCURRENCY)
+                .count()
+                .block(Duration.ofMinutes(2));
+
+        assertThat(completed).isEqualTo(OPERATIONS);
+    }
+}
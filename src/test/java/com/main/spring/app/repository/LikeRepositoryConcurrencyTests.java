@@ -0,0 +1,113 @@
+package com.main.spring.app.repository;
+
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.main.spring.app.schema.PostsSchema;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Toggles de like concurrentes contra el emulador de Firestore: varios
+ * usuarios tocan "like" muchas veces en paralelo (incluyendo dobles toques del
+ * mismo usuario) y al final el contador debe coincidir exactamente con los
+ * documentos de la subcolección Likes.
+ */
+@EnabledIfEnvironmentVariable(named = "FIRESTORE_EMULATOR_HOST", matches = ".+")
+class LikeRepositoryConcurrencyTests {
+
+    private static final int USERS = 10;
+    private static final int TAPS_PER_USER = 7; // Impar: cada usuario termina con like
+
+    private static Firestore firestoreDb;
+
+    @BeforeAll
+    static void setUp() {
+        firestoreDb = FirestoreEmulatorSupport.create();
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        if (firestoreDb != null) {
+            firestoreDb.close();
+        }
+    }
+
+    @Test
+    void likeCountStaysExactUnderParallelToggles() throws Exception {
+        DocumentReference postRef = createPost();
+        ShardedCounterRepositoryImpl counters = new ShardedCounterRepositoryImpl(firestoreDb, false, 10, 100, 5000);
+
+        toggleInParallel(new LikeRepositoryImpl(firestoreDb, counters, aggregator(counters, false)), postRef.getId());
+
+        long likeDocuments = postRef.collection("Likes").get().get().size();
+        long likesCount = postRef.get().get().getLong("pos_likesCount");
+
+        assertThat(likeDocuments).isEqualTo(USERS);
+        assertThat(likesCount).isEqualTo(likeDocuments);
+    }
+
+    @Test
+    void shardedLikeCountStaysExactAfterRollUp() throws Exception {
+        DocumentReference postRef = createPost();
+        ShardedCounterRepositoryImpl counters = new ShardedCounterRepositoryImpl(firestoreDb, true, 4, 16, 5000);
+
+        toggleInParallel(new LikeRepositoryImpl(firestoreDb, counters, aggregator(counters, false)), postRef.getId());
+
+        // Antes de consolidar, la lectura suma los shards
+        PostsSchema unconsolidated = postRef.get().get().toObject(PostsSchema.class);
+        unconsolidated.setPos_postId(postRef.getId());
+        assertThat(counters.withShardTotals(unconsolidated).block(Duration.ofSeconds(30)).getPos_likesCount())
+                .isEqualTo(USERS);
+
+        assertThat(counters.rollUp(postRef.getId()).block(Duration.ofSeconds(30))).isTrue();
+
+        long likesCount = postRef.get().get().getLong("pos_likesCount");
+        assertThat(likesCount).isEqualTo(USERS);
+    }
+
+    @Test
+    void writeBehindLikeCountStaysExactAfterFlush() throws Exception {
+        DocumentReference postRef = createPost();
+        ShardedCounterRepositoryImpl counters = new ShardedCounterRepositoryImpl(firestoreDb, false, 10, 100, 5000);
+        CounterAggregatorImpl aggregator = aggregator(counters, true);
+
+        toggleInParallel(new LikeRepositoryImpl(firestoreDb, counters, aggregator), postRef.getId());
+        aggregator.flush().block(Duration.ofSeconds(30));
+
+        long likesCount = postRef.get().get().getLong("pos_likesCount");
+        assertThat(likesCount).isEqualTo(USERS);
+    }
+
+    private static CounterAggregatorImpl aggregator(ShardedCounterRepositoryImpl counters, boolean enabled) {
+        // Intervalo y umbral altos: en la prueba solo se vuelca con flush() explícito
+        return new CounterAggregatorImpl(firestoreDb, counters, new SimpleMeterRegistry(), enabled,
+                60_000, 10_000, 10_000);
+    }
+
+    private static DocumentReference createPost() throws Exception {
+        DocumentReference postRef = firestoreDb.collection("Posts").document("like-post-" + UUID.randomUUID());
+        postRef.set(new PostsSchema("author", "https://example.com/img.png", "concurrency")).get();
+        return postRef;
+    }
+
+    private static void toggleInParallel(LikeRepositoryImpl likeRepository, String postId) {
+        Flux.range(0, USERS * TAPS_PER_USER)
+                .flatMap(i -> likeRepository.createLike(postId, "user-" + (i % USERS))
+                        .subscribeOn(Schedulers.parallel()), USERS * TAPS_PER_USER)
+                .then()
+                .block(Duration.ofMinutes(2));
+    }
+}
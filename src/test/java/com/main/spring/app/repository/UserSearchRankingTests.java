@@ -0,0 +1,67 @@
+package com.main.spring.app.repository;
+
+import com.main.spring.app.dto.UserSearchResponse;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Orden de relevancia de la búsqueda de usuarios ({@link UserRepositoryImpl#rank}),
+ * sin Firestore: los candidatos son los que devolverían las consultas por
+ * prefijo y por trigrama.
+ */
+class UserSearchRankingTests {
+
+    @Test
+    void ordersExactPrefixWordContainsThenEmail() {
+        List<UserSearchResponse> candidates = List.of(
+                user("1", "xanax", "x@upsglam.com"),
+                user("2", "anabel", "b@upsglam.com"),
+                user("3", "maria ana", "m@upsglam.com"),
+                user("4", "pepe", "ana.p@upsglam.com"),
+                user("5", "Ana", "a@upsglam.com"),
+                user("6", "pedro", "juana@upsglam.com"));
+
+        assertThat(ids(UserRepositoryImpl.rank(candidates, "ana", 10)))
+                .containsExactly("5", "2", "3", "1", "4", "6");
+    }
+
+    @Test
+    void dropsFalsePositivesAndDuplicates() {
+        // "anabel" llega por el prefijo y por el trigrama; "anatomia" solo comparte el trigrama
+        List<UserSearchResponse> candidates = List.of(
+                user("1", "anabel", "b@upsglam.com"),
+                user("2", "anatomia", "t@upsglam.com"),
+                user("1", "anabel", "b@upsglam.com"));
+
+        assertThat(ids(UserRepositoryImpl.rank(candidates, "anab", 10))).containsExactly("1");
+    }
+
+    @Test
+    void shorterUsernameFirstAndLimitApplied() {
+        List<UserSearchResponse> candidates = List.of(
+                user("1", "anabella", "a1@upsglam.com"),
+                user("2", "anabel", "a2@upsglam.com"),
+                user("3", "anab", "a3@upsglam.com"));
+
+        assertThat(ids(UserRepositoryImpl.rank(candidates, "ana", 2))).containsExactly("3", "2");
+    }
+
+    @Test
+    void matchingIgnoresCaseAndAccents() {
+        List<UserSearchResponse> candidates = List.of(user("1", "José Pérez", "j@upsglam.com"));
+
+        assertThat(ids(UserRepositoryImpl.rank(candidates, "perez", 10))).containsExactly("1");
+    }
+
+    private static UserSearchResponse user(String uid, String username, String email) {
+        return new UserSearchResponse(uid, username, email, null);
+    }
+
+    private static List<String> ids(List<UserSearchResponse> users) {
+        return users.stream().map(UserSearchResponse::getUid).toList();
+    }
+}
@@ -0,0 +1,112 @@
+package com.main.spring.app.repository.support;
+
+import org.junit.jupiter.api.Test;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * {@link Saga} con pasos simulados: se ejecutan a la vez y, si uno falla,
+ * solo se deshacen los que terminaron bien. Si el cliente cancela, se espera
+ * a los pasos en vuelo y se deshacen todos.
+ */
+class SagaTests {
+
+    private final List<String> compensated = new CopyOnWriteArrayList<>();
+
+    @Test
+    void independentStepsRunConcurrently() {
+        Saga saga = new Saga("test");
+
+        long start = System.nanoTime();
+        saga.run(Mono.whenDelayError(
+                saga.step(slow("auth", 300), () -> undo("auth")),
+                saga.step(slow("username", 300), () -> undo("username")),
+                saga.step(slow("profile", 300), () -> undo("profile"))))
+                .block(Duration.ofSeconds(5));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // El paso más lento, no la suma de los tres
+        assertThat(elapsedMillis).isLessThan(800);
+        assertThat(compensated).isEmpty();
+    }
+
+    @Test
+    void failedStepCompensatesTheCompletedOnes() {
+        Saga saga = new Saga("test");
+
+        Mono<Void> registration = saga.run(Mono.whenDelayError(
+                saga.step(slow("auth", 200), () -> undo("auth")),
+                saga.step(Mono.error(new RuntimeException("USERNAME_ALREADY_EXISTS")), () -> undo("username")),
+                saga.step(slow("profile", 50), () -> undo("profile"))));
+
+        assertThatThrownBy(() -> registration.block(Duration.ofSeconds(5)))
+                .hasMessageContaining("USERNAME_ALREADY_EXISTS");
+        assertThat(compensated).containsExactlyInAnyOrder("auth", "profile");
+    }
+
+    @Test
+    void failedCompensationIsRetried() {
+        Saga saga = new Saga("test");
+        List<Integer> attempts = new CopyOnWriteArrayList<>();
+
+        Mono<Void> registration = saga.run(Mono.whenDelayError(
+                saga.step(slow("auth", 10), () -> Mono.defer(() -> {
+                    attempts.add(attempts.size());
+                    return attempts.size() < 2 ? Mono.error(new RuntimeException("timeout")) : undo("auth");
+                })),
+                saga.step(Mono.error(new RuntimeException("fallo")), () -> undo("profile"))));
+
+        assertThatThrownBy(() -> registration.block(Duration.ofSeconds(5))).hasMessageContaining("fallo");
+        assertThat(attempts).hasSize(2);
+        assertThat(compensated).containsExactly("auth");
+    }
+
+    @Test
+    void stepCompletingAfterCancelIsCompensated() throws InterruptedException {
+        Saga saga = new Saga("test");
+
+        Disposable registration = saga.run(Mono.whenDelayError(
+                saga.step(slow("auth", 300), () -> undo("auth")),
+                saga.step(slow("profile", 20), () -> undo("profile"))))
+                .subscribe();
+
+        // El cliente se va con "profile" hecho y "auth" aún en vuelo
+        Thread.sleep(100);
+        registration.dispose();
+        assertThat(compensated).isEmpty();
+
+        // "auth" termina después de la cancelación y también se deshace
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (compensated.size() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(compensated).containsExactlyInAnyOrder("auth", "profile");
+    }
+
+    @Test
+    void completedSagaIsNotCompensated() throws InterruptedException {
+        Saga saga = new Saga("test");
+
+        String result = saga.run(saga.step(slow("auth", 10), () -> undo("auth"))).block(Duration.ofSeconds(5));
+
+        Thread.sleep(100);
+        assertThat(result).isEqualTo("auth");
+        assertThat(compensated).isEmpty();
+    }
+
+    private static Mono<String> slow(String step, long millis) {
+        return Mono.delay(Duration.ofMillis(millis)).thenReturn(step);
+    }
+
+    private Mono<Void> undo(String step) {
+        return Mono.fromRunnable(() -> compensated.add(step));
+    }
+}
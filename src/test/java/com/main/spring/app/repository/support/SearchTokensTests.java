@@ -0,0 +1,64 @@
+package com.main.spring.app.repository.support;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link SearchTokens}: normalización, tokens guardados por usuario y tokens
+ * de consulta.
+ */
+class SearchTokensTests {
+
+    @Test
+    void normalizeIgnoresCaseAccentsAndExtraSpaces() {
+        assertThat(SearchTokens.normalize("  José   MARÍA ")).isEqualTo("jose maria");
+        assertThat(SearchTokens.normalize(null)).isEmpty();
+    }
+
+    @Test
+    void userTokensCoverPrefixesWordsEmailAndTrigrams() {
+        var tokens = SearchTokens.forUser("Ana Pérez", "ana.p@upsglam.com");
+
+        // Prefijos del username completo y de cada palabra
+        assertThat(tokens).contains("a", "an", "ana", "ana p", "ana perez", "p", "pe", "perez");
+        // Parte local del email, sin el dominio
+        assertThat(tokens).contains("ana.p").doesNotContain("upsglam");
+        // Trigramas para "contiene"
+        assertThat(tokens).contains("ere", "rez", "a.p");
+        assertThat(tokens).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void prefixTokenIsTheNormalizedQueryCappedAtMaxLength() {
+        assertThat(SearchTokens.prefixToken("Pérez")).isEqualTo("perez");
+        assertThat(SearchTokens.prefixToken("a".repeat(30))).hasSize(SearchTokens.MAX_PREFIX_LENGTH);
+        assertThat(SearchTokens.prefixToken("   ")).isNull();
+    }
+
+    @Test
+    void ngramTokensOnlyForQueriesLongerThanATrigram() {
+        assertThat(SearchTokens.ngramTokens("ana")).isEmpty();
+        assertThat(SearchTokens.ngramTokens("an")).isEmpty();
+    }
+
+    @Test
+    void ngramTokensAreSpreadAcrossTheQuery() {
+        // Principio, mitad y final
+        assertThat(SearchTokens.ngramTokens("Pérez García")).containsExactly("per", " ga", "cia");
+        // Sin repetir cuando la consulta tiene pocos trigramas
+        assertThat(SearchTokens.ngramTokens("Pérez")).containsExactly("per", "ere", "rez");
+        assertThat(SearchTokens.ngramTokens("lola")).containsExactly("lol", "ola");
+        // Solo trigramas de la parte indexada del texto
+        String longQuery = "a".repeat(38) + "bcdefgh";
+        assertThat(SearchTokens.ngramTokens(longQuery)).last().isEqualTo("abc");
+    }
+
+    @Test
+    void queryTokensMatchTheUserTokens() {
+        var tokens = SearchTokens.forUser("MariaLopez", "ml@upsglam.com");
+
+        assertThat(tokens).contains(SearchTokens.prefixToken("marial"));
+        assertThat(tokens).containsAll(SearchTokens.ngramTokens("lopez"));
+    }
+}
@@ -0,0 +1,108 @@
+package com.main.spring.app.security;
+
+import com.main.spring.app.interfaces.auth.IdTokenVerifier;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Caché de tokens verificados de {@link FirebaseAuthenticationManager}, con un
+ * {@link IdTokenVerifier} simulado que cuenta las verificaciones y un reloj
+ * controlable.
+ */
+class FirebaseAuthenticationManagerTests {
+
+    private static final Instant NOW = Instant.parse("2026-01-01T12:00:00Z");
+    private static final long CLOCK_SKEW_SECONDS = 60;
+
+    private final AtomicInteger verifications = new AtomicInteger();
+    private volatile Instant now = NOW;
+
+    // Tokens de una hora, como los de Firebase
+    private final IdTokenVerifier verifier = idToken -> Mono.fromSupplier(() -> {
+        verifications.incrementAndGet();
+        return new VerifiedIdToken("uid-" + idToken, "Ana", "ana@upsglam.com",
+                now.getEpochSecond() + 3600);
+    });
+
+    private final Clock clock = new Clock() {
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    };
+
+    @Test
+    void cachedTokenIsNotVerifiedAgain() {
+        FirebaseAuthenticationManager manager = manager(true);
+
+        assertThat(authenticate(manager, "token-a").getPrincipal()).isEqualTo("uid-token-a");
+        now = NOW.plusSeconds(1800);
+        assertThat(authenticate(manager, "token-a").getPrincipal()).isEqualTo("uid-token-a");
+
+        assertThat(verifications).hasValue(1);
+
+        // Otro token no comparte entrada
+        authenticate(manager, "token-b");
+        assertThat(verifications).hasValue(2);
+    }
+
+    @Test
+    void tokenIsVerifiedAgainOnceWithinTheClockSkewOfExp() {
+        FirebaseAuthenticationManager manager = manager(true);
+
+        authenticate(manager, "token-a");
+
+        // La entrada sigue en la caché (caduca por tiempo real), pero el reloj
+        // ya pasó exp - margen: no se sirve sin verificar
+        now = NOW.plusSeconds(3600 - CLOCK_SKEW_SECONDS);
+        authenticate(manager, "token-a");
+
+        assertThat(verifications).hasValue(2);
+    }
+
+    @Test
+    void disabledCacheVerifiesEveryRequest() {
+        FirebaseAuthenticationManager manager = manager(false);
+
+        authenticate(manager, "token-a");
+        authenticate(manager, "token-a");
+        authenticate(manager, "token-a");
+
+        assertThat(verifications).hasValue(3);
+    }
+
+    private FirebaseAuthenticationManager manager(boolean cacheEnabled) {
+        return new FirebaseAuthenticationManager(verifier, new SimpleMeterRegistry(), cacheEnabled, 100,
+                CLOCK_SKEW_SECONDS, clock);
+    }
+
+    private static Authentication authenticate(FirebaseAuthenticationManager manager, String token) {
+        return manager.authenticate(new UsernamePasswordAuthenticationToken(token, token))
+                .block(Duration.ofSeconds(5));
+    }
+}
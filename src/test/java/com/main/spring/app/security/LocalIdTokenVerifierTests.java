@@ -0,0 +1,173 @@
+package com.main.spring.app.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.main.spring.app.security.SigningKeySource.SigningKeys;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * {@link LocalIdTokenVerifier} sin red: las claves de firma se generan en el
+ * test y se sirven con un {@link SigningKeySource} propio, igual que haría
+ * Google.
+ */
+class LocalIdTokenVerifierTests {
+
+    private static final String PROJECT_ID = "upsglam-test";
+    private static final Instant NOW = Instant.parse("2026-01-01T12:00:00Z");
+
+    private final AtomicInteger fetches = new AtomicInteger();
+    private KeyPair oldKey;
+    private KeyPair newKey;
+    private volatile Map<String, KeyPair> published;
+    private volatile Instant now = NOW;
+    private LocalIdTokenVerifier verifier;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        oldKey = generator.generateKeyPair();
+        newKey = generator.generateKeyPair();
+        published = Map.of("old", oldKey);
+
+        SigningKeySource source = () -> Mono.fromSupplier(() -> {
+            fetches.incrementAndGet();
+            Map<String, PublicKey> keys = new LinkedHashMap<>();
+            published.forEach((kid, pair) -> keys.put(kid, pair.getPublic()));
+            return new SigningKeys(keys, Duration.ofHours(6));
+        }).delayElement(Duration.ofMillis(50));
+
+        Clock clock = new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return now;
+            }
+        };
+        verifier = new LocalIdTokenVerifier(source, PROJECT_ID, 300, clock);
+    }
+
+    @AfterEach
+    void tearDown() {
+        verifier.stop();
+    }
+
+    @Test
+    void validTokenIsVerifiedWithLocalKeys() {
+        VerifiedIdToken token = verifier.verify(sign("old", oldKey, claims())).block();
+
+        assertThat(token.uid()).isEqualTo("user-1");
+        assertThat(token.name()).isEqualTo("Ana");
+        assertThat(token.expiresAtEpochSecond()).isEqualTo(NOW.plusSeconds(3600).getEpochSecond());
+    }
+
+    @Test
+    void invalidTokensAreRejected() {
+        Map<String, Object> expired = claims();
+        expired.put("exp", NOW.minusSeconds(600).getEpochSecond());
+        Map<String, Object> otherProject = claims();
+        otherProject.put("aud", "otro-proyecto");
+        Map<String, Object> futureIat = claims();
+        futureIat.put("iat", NOW.plusSeconds(900).getEpochSecond());
+        String valid = sign("old", oldKey, claims());
+        String tampered = valid.substring(0, valid.lastIndexOf('.') + 1) + sign("old", newKey, claims())
+                .substring(valid.lastIndexOf('.') + 1);
+
+        for (String token : List.of(sign("old", oldKey, expired), sign("old", oldKey, otherProject),
+                sign("old", oldKey, futureIat), tampered, "no-es-un-jwt")) {
+            assertThatThrownBy(() -> verifier.verify(token).block()).isInstanceOf(BadCredentialsException.class);
+        }
+    }
+
+    @Test
+    void concurrentRequestsShareOneKeyFetch() {
+        List<VerifiedIdToken> tokens = Flux.range(0, 20)
+                .flatMap(i -> verifier.verify(sign("old", oldKey, claims())))
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertThat(tokens).hasSize(20);
+        assertThat(fetches.get()).isEqualTo(1);
+    }
+
+    @Test
+    void unknownKeyIdRefreshesTheKeySet() {
+        verifier.verify(sign("old", oldKey, claims())).block();
+
+        // Google rota: aparece una clave nueva
+        published = Map.of("old", oldKey, "new", newKey);
+
+        // Justo después de una renovación no se vuelve a pedir (kid falsos)
+        assertThatThrownBy(() -> verifier.verify(sign("new", newKey, claims())).block())
+                .isInstanceOf(BadCredentialsException.class);
+        assertThat(fetches.get()).isEqualTo(1);
+
+        now = NOW.plusSeconds(120);
+        VerifiedIdToken token = verifier.verify(sign("new", newKey, claims())).block();
+
+        assertThat(token.uid()).isEqualTo("user-1");
+        assertThat(fetches.get()).isEqualTo(2);
+    }
+
+    private static Map<String, Object> claims() {
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put("iss", "https://securetoken.google.com/" + PROJECT_ID);
+        claims.put("aud", PROJECT_ID);
+        claims.put("sub", "user-1");
+        claims.put("name", "Ana");
+        claims.put("iat", NOW.minusSeconds(60).getEpochSecond());
+        claims.put("auth_time", NOW.minusSeconds(60).getEpochSecond());
+        claims.put("exp", NOW.plusSeconds(3600).getEpochSecond());
+        return claims;
+    }
+
+    private static String sign(String kid, KeyPair key, Map<String, Object> claims) {
+        try {
+            ObjectMapper json = new ObjectMapper();
+            Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+            String content = encoder.encodeToString(json.writeValueAsBytes(Map.of("alg", "RS256", "kid", kid)))
+                    + "." + encoder.encodeToString(json.writeValueAsBytes(claims));
+
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(key.getPrivate());
+            signature.update(content.getBytes(StandardCharsets.US_ASCII));
+            return content + "." + encoder.encodeToString(signature.sign());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.main.spring.app.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.offset;
+
+/**
+ * Cola, rechazos y ajuste AIMD de {@link FastApiConcurrencyLimiter}, con
+ * llamadas simuladas en lugar de FastAPI.
+ */
+class FastApiConcurrencyLimiterTests {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void fullQueueIsRejectedWith429() {
+        FastApiConcurrencyLimiter limiter = limiter(1, 1, 5000, 2000);
+        Disposable running = limiter.limit(Flux.never()).subscribe();
+        Disposable queued = limiter.limit(Flux.never()).subscribe();
+
+        assertTooManyRequests(limiter.limit(Flux.just("ok")));
+        assertThat(rejected("queue_full")).isEqualTo(1);
+
+        running.dispose();
+        queued.dispose();
+    }
+
+    @Test
+    void waitOverMaxWaitIsRejectedWith429() {
+        FastApiConcurrencyLimiter limiter = limiter(1, 10, 100, 2000);
+        Disposable running = limiter.limit(Flux.never()).subscribe();
+
+        assertTooManyRequests(limiter.limit(Flux.just("ok")));
+        assertThat(rejected("timeout")).isEqualTo(1);
+        assertThat(gauge("fastapi.limiter.queue")).isZero();
+
+        running.dispose();
+    }
+
+    @Test
+    void slowResponseLowersTheLimit() {
+        FastApiConcurrencyLimiter limiter = limiter(8, 10, 5000, 50);
+
+        limiter.limit(Mono.delay(Duration.ofMillis(150)).flux()).blockLast(TIMEOUT);
+
+        assertThat(gauge("fastapi.limiter.limit")).isCloseTo(8 * 0.9, offset(1e-9));
+    }
+
+    @Test
+    void serverErrorLowersTheLimit() {
+        FastApiConcurrencyLimiter limiter = limiter(8, 10, 5000, 2000);
+        WebClientResponseException unavailable = WebClientResponseException.create(503, "Service Unavailable",
+                null, "ocupado".getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+
+        assertThatThrownBy(() -> limiter.limit(Flux.error(unavailable)).blockLast(TIMEOUT))
+                .isSameAs(unavailable);
+
+        assertThat(gauge("fastapi.limiter.limit")).isCloseTo(8 * 0.9, offset(1e-9));
+    }
+
+    @Test
+    void limitGrowsOnlyWhileSaturated() {
+        FastApiConcurrencyLimiter limiter = limiter(8, 10, 5000, 2000);
+
+        // Una llamada cada vez: FastAPI va rápido pero el límite no se usa
+        for (int i = 0; i < 20; i++) {
+            limiter.limit(Flux.just("ok")).blockLast(TIMEOUT);
+        }
+        assertThat(gauge("fastapi.limiter.limit")).isEqualTo(8);
+
+        // 8 llamadas a la vez: todas terminan rápido con el límite lleno
+        List<Sinks.One<String>> responses = new ArrayList<>();
+        List<Mono<String>> calls = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Sinks.One<String> response = Sinks.one();
+            responses.add(response);
+            calls.add(limiter.limit(response.asMono().flux()).single());
+        }
+        Mono<List<String>> all = Flux.merge(calls).collectList().cache();
+        all.subscribe();
+        assertThat(gauge("fastapi.limiter.inflight")).isEqualTo(8);
+        responses.forEach(response -> response.tryEmitValue("ok"));
+        all.block(TIMEOUT);
+
+        assertThat(gauge("fastapi.limiter.limit")).isGreaterThan(8);
+    }
+
+    @Test
+    void cancelledCallReleasesItsPermit() {
+        FastApiConcurrencyLimiter limiter = limiter(1, 10, 5000, 2000);
+
+        Disposable running = limiter.limit(Flux.never()).subscribe();
+        Disposable queued = limiter.limit(Flux.never()).subscribe();
+        assertThat(gauge("fastapi.limiter.inflight")).isEqualTo(1);
+        assertThat(gauge("fastapi.limiter.queue")).isEqualTo(1);
+
+        // Cancelar en cola la saca de la cola; cancelar en curso libera el hueco
+        queued.dispose();
+        assertThat(gauge("fastapi.limiter.queue")).isZero();
+        running.dispose();
+        assertThat(gauge("fastapi.limiter.inflight")).isZero();
+        // Una cancelación no dice nada de la carga de FastAPI
+        assertThat(gauge("fastapi.limiter.limit")).isEqualTo(1);
+
+        assertThat(limiter.limit(Flux.just("ok")).blockLast(TIMEOUT)).isEqualTo("ok");
+    }
+
+    private FastApiConcurrencyLimiter limiter(int initialLimit, int maxQueue, long maxWaitMs, long latencyThresholdMs) {
+        return new FastApiConcurrencyLimiter(registry, true, initialLimit, 1, 64, maxQueue, maxWaitMs,
+                latencyThresholdMs, 0.9);
+    }
+
+    private void assertTooManyRequests(Flux<String> call) {
+        assertThatThrownBy(() -> call.blockLast(TIMEOUT))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS));
+    }
+
+    private double rejected(String reason) {
+        return registry.get("fastapi.limiter.rejected").tag("reason", reason).counter().count();
+    }
+
+    private double gauge(String name) {
+        return registry.get(name).gauge().value();
+    }
+}
@@ -0,0 +1,180 @@
+package com.main.spring.app.service;
+
+import com.main.spring.app.config.BlockingCallExecutor;
+import com.main.spring.app.model.PipelineStep;
+import com.main.spring.app.service.cpu.CpuFilterEngine;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.imageio.ImageIO;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Caché por prefijos de {@code /api/process/pipeline}: un pipeline que repite
+ * los primeros pasos de otro solo llama a FastAPI para los que cambian.
+ *
+ * Un servidor Netty local hace de FastAPI, anota cada filtro que recibe y
+ * responde {@code <filtro>-<n>}, o 503 para los filtros marcados como caídos.
+ */
+class ImagePipelineCacheTests {
+
+    private final List<String> upstreamCalls = new CopyOnWriteArrayList<>();
+    private final Set<String> unavailableFilters = ConcurrentHashMap.newKeySet();
+    private DisposableServer fastApi;
+    private SimpleMeterRegistry registry;
+    private ImageProcessingService service;
+
+    @BeforeEach
+    void setUp() {
+        fastApi = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.post("/api/{filter}", (request, response) -> {
+                    String filter = request.param("filter");
+                    upstreamCalls.add(filter);
+                    if (unavailableFilters.contains(filter)) {
+                        return response.status(HttpResponseStatus.SERVICE_UNAVAILABLE)
+                                .sendString(request.receive().aggregate().asString().then(Mono.just("caído")));
+                    }
+                    return response.sendString(request.receive().aggregate().asString().then(
+                            Mono.fromSupplier(() -> filter + "-" + upstreamCalls.size())));
+                }))
+                .bindNow();
+
+        registry = new SimpleMeterRegistry();
+        WebClient webClient = WebClient.builder()
+                .baseUrl("http://localhost:" + fastApi.port())
+                .build();
+        FilterResultCache cache = new FilterResultCache(registry,
+                new BlockingCallExecutor(registry, "bounded", 4, 100), true, 4 * 1024 * 1024,
+                64 * 1024 * 1024, false, "/tmp/upsglam-test-cache", 0);
+        service = new ImageProcessingService(webClient, cache, new FastApiCircuitBreaker(registry, 5, 30),
+                new CpuFilterEngine(registry, true, 1, 20 * 1024 * 1024, 25_000_000, 0),
+                new FastApiConcurrencyLimiter(registry, true, 8, 1, 64, 100, 5000, 2000, 0.9), registry, 10,
+                20 * 1024 * 1024, 50, 4, 20 * 1024 * 1024);
+    }
+
+    @AfterEach
+    void tearDown() {
+        fastApi.disposeNow();
+    }
+
+    @Test
+    void changingOnlyTheLastStepMakesOneUpstreamCall() throws IOException {
+        byte[] image = png();
+
+        assertThat(pipeline(image, step("negative"), step("gaussian", "kernel_size", "7"), step("emboss")))
+                .isEqualTo("emboss-3");
+        assertThat(upstreamCalls).containsExactly("negative", "gaussian", "emboss");
+
+        assertThat(pipeline(image, step("negative"), step("gaussian", "kernel_size", "7"), step("canny")))
+                .isEqualTo("canny-4");
+        assertThat(upstreamCalls).containsExactly("negative", "gaussian", "emboss", "canny");
+
+        // El pipeline completo ya está en caché
+        assertThat(pipeline(image, step("negative"), step("gaussian", "kernel_size", "7"), step("canny")))
+                .isEqualTo("canny-4");
+        assertThat(upstreamCalls).hasSize(4);
+    }
+
+    @Test
+    void cpuFallbackStepIsNotCachedNorAreTheStepsAfterIt() throws IOException {
+        byte[] image = png();
+        unavailableFilters.add("negative");
+
+        // negative se aplica en CPU; watermark recibe ese resultado
+        assertThat(pipeline(image, step("negative"), step("watermark"))).isEqualTo("watermark-2");
+        assertThat(registry.get("image.cpu.fallback").timer().count()).isEqualTo(1);
+
+        // Con FastAPI de vuelta no hay nada reutilizable: se repiten los dos pasos
+        unavailableFilters.clear();
+        assertThat(pipeline(image, step("negative"), step("watermark"))).isEqualTo("watermark-4");
+        assertThat(upstreamCalls).containsExactly("negative", "watermark", "negative", "watermark");
+
+        // Este resultado sí vino entero de FastAPI y queda en caché
+        assertThat(pipeline(image, step("negative"), step("watermark"))).isEqualTo("watermark-4");
+        assertThat(upstreamCalls).hasSize(4);
+    }
+
+    private String pipeline(byte[] image, PipelineStep... steps) {
+        FilePart file = new TestFilePart(image);
+        return DataBufferUtils.join(service.processPipeline(file, List.of(steps)))
+                .map(buffer -> {
+                    String result = buffer.toString(StandardCharsets.UTF_8);
+                    DataBufferUtils.release(buffer);
+                    return result;
+                })
+                .block(Duration.ofSeconds(30));
+    }
+
+    private static PipelineStep step(String filter, String... params) {
+        PipelineStep step = new PipelineStep();
+        step.setFilter(filter);
+        step.setParams(params.length == 0 ? Map.of() : Map.of(params[0], params[1]));
+        return step;
+    }
+
+    // Imagen real: el paso en CPU la decodifica
+    private static byte[] png() throws IOException {
+        BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+        return output.toByteArray();
+    }
+
+    private record TestFilePart(byte[] image) implements FilePart {
+
+        @Override
+        public String name() {
+            return "file";
+        }
+
+        @Override
+        public String filename() {
+            return "image.png";
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return HttpHeaders.EMPTY;
+        }
+
+        @Override
+        public Flux<DataBuffer> content() {
+            return Flux.defer(() -> Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(image)));
+        }
+
+        @Override
+        public Mono<Void> transferTo(Path dest) {
+            return Mono.error(new UnsupportedOperationException());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.main.spring.app.service;
+
+import com.main.spring.app.config.BlockingCallExecutor;
+import com.main.spring.app.service.cpu.CpuFilterEngine;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Single-flight de {@link ImageProcessingService}: peticiones idénticas y
+ * simultáneas hacen una sola llamada a FastAPI.
+ *
+ * Un servidor Netty local hace de FastAPI, cuenta las llamadas y tarda en
+ * responder para que todas las peticiones coincidan en el tiempo.
+ */
+class ImageRequestCoalescingTests {
+
+    private static final int PARALLEL_REQUESTS = 50;
+    private static final Duration FASTAPI_LATENCY = Duration.ofMillis(500);
+
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+    private DisposableServer fastApi;
+    private SimpleMeterRegistry registry;
+    private ImageProcessingService service;
+
+    @BeforeEach
+    void setUp() {
+        fastApi = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.post("/api/{filter}", (request, response) -> {
+                    int call = upstreamCalls.incrementAndGet();
+                    return response.sendString(request.receive().aggregate().asString()
+                            .delayElement(FASTAPI_LATENCY)
+                            .thenReturn(request.param("filter") + "-result-" + call));
+                }))
+                .bindNow();
+
+        registry = new SimpleMeterRegistry();
+        WebClient webClient = WebClient.builder()
+                .baseUrl("http://localhost:" + fastApi.port())
+                .build();
+        FilterResultCache cache = new FilterResultCache(registry,
+                new BlockingCallExecutor(registry, "bounded", 4, 100), true, 4 * 1024 * 1024,
+                64 * 1024 * 1024, false, "/tmp/upsglam-test-cache", 0);
+        service = new ImageProcessingService(webClient, cache, new FastApiCircuitBreaker(registry, 5, 30),
+                new CpuFilterEngine(registry, false, 1, 0, 0, 0),
+                new FastApiConcurrencyLimiter(registry, true, 8, 1, 64, 100, 5000, 2000, 0.9), registry, 10,
+                20 * 1024 * 1024, 50, 4, 20 * 1024 * 1024);
+    }
+
+    @AfterEach
+    void tearDown() {
+        fastApi.disposeNow();
+    }
+
+    @Test
+    void identicalParallelRequestsMakeOneUpstreamCall() {
+        List<String> results = Flux.range(0, PARALLEL_REQUESTS)
+                .flatMap(i -> negative("viral-image").subscribeOn(Schedulers.parallel()), PARALLEL_REQUESTS)
+                .collectList()
+                .block(Duration.ofSeconds(30));
+
+        assertThat(upstreamCalls.get()).isEqualTo(1);
+        assertThat(results).hasSize(PARALLEL_REQUESTS).containsOnly("negative-result-1");
+        assertThat(registry.get("image.coalesced.requests").counter().count())
+                .isEqualTo(PARALLEL_REQUESTS - 1);
+    }
+
+    @Test
+    void differentImagesAreNotCoalesced() {
+        Flux.range(0, 4)
+                .flatMap(i -> negative("image-" + i), 4)
+                .blockLast(Duration.ofSeconds(30));
+
+        assertThat(upstreamCalls.get()).isEqualTo(4);
+    }
+
+    @Test
+    void waitingRequestsStillCompleteWhenTheLeaderCancels() {
+        // El líder se cancela antes de que FastAPI responda
+        negative("cancelled-image").timeout(Duration.ofMillis(100), Mono.empty()).subscribe();
+        Mono<String> follower = Mono.delay(Duration.ofMillis(50)).then(negative("cancelled-image"));
+
+        assertThat(follower.block(Duration.ofSeconds(30))).startsWith("negative-result-");
+        assertThat(upstreamCalls.get()).isEqualTo(2);
+    }
+
+    private Mono<String> negative(String content) {
+        FilePart file = new TestFilePart(content.getBytes(StandardCharsets.UTF_8));
+        return DataBufferUtils.join(service.processNegative(file, (long) content.length()))
+                .map(buffer -> {
+                    String result = buffer.toString(StandardCharsets.UTF_8);
+                    DataBufferUtils.release(buffer);
+                    return result;
+                });
+    }
+
+    private record TestFilePart(byte[] image) implements FilePart {
+
+        @Override
+        public String name() {
+            return "file";
+        }
+
+        @Override
+        public String filename() {
+            return "image.png";
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return HttpHeaders.EMPTY;
+        }
+
+        @Override
+        public Flux<DataBuffer> content() {
+            return Flux.defer(() -> Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(image)));
+        }
+
+        @Override
+        public Mono<Void> transferTo(Path dest) {
+            return Mono.error(new UnsupportedOperationException());
+        }
+    }
+}
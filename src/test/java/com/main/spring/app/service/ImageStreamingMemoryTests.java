@@ -0,0 +1,164 @@
+package com.main.spring.app.service;
+
+import com.main.spring.app.config.BlockingCallExecutor;
+import com.main.spring.app.service.cpu.CpuFilterEngine;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Prueba de memoria del streaming de resultados de filtros.
+ *
+ * Un servidor Netty local hace de FastAPI y devuelve imágenes del tamaño
+ * pedido en bloques de 64 KB. Varias peticiones concurrentes consumen la
+ * respuesta del servicio liberando cada buffer, como hace el servidor al
+ * escribirlo al cliente. El pico de heap no debe crecer con el tamaño de la
+ * imagen: con un {@code byte[]} por respuesta, 8 imágenes de 64 MB
+ * necesitarían más de 512 MB.
+ */
+class ImageStreamingMemoryTests {
+
+    private static final int CHUNK = 64 * 1024;
+    private static final int CONCURRENCY = 8;
+    private static final long SMALL_IMAGE = 1024 * 1024;
+    private static final long LARGE_IMAGE = 64L * 1024 * 1024;
+    private static final long MAX_HEAP_GROWTH = 96L * 1024 * 1024;
+
+    private static final AtomicLong responseBytes = new AtomicLong();
+    // Cada subida es distinta para que ninguna respuesta salga de la caché
+    private static final AtomicLong uploads = new AtomicLong();
+
+    private static DisposableServer fastApi;
+    private static ImageProcessingService service;
+
+    @BeforeAll
+    static void setUp() {
+        fastApi = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.post("/api/{filter}", (request, response) -> request.receive()
+                        .then()
+                        .thenMany(response.header(HttpHeaders.CONTENT_TYPE, "image/png")
+                                .send(Flux.range(0, (int) (responseBytes.get() / CHUNK))
+                                        .map(i -> response.alloc().buffer(CHUNK).writeZero(CHUNK))))))
+                .bindNow();
+
+        WebClient webClient = WebClient.builder()
+                .baseUrl("http://localhost:" + fastApi.port())
+                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(2 * 1024 * 1024))
+                .build();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        // Caché activa: la subida es pequeña, así que se prueba también la copia a la caché
+        FilterResultCache cache = new FilterResultCache(registry,
+                new BlockingCallExecutor(registry, "bounded", 4, 100), true, 4 * 1024 * 1024,
+                64 * 1024 * 1024, false, "/tmp/upsglam-test-cache", 0);
+        service = new ImageProcessingService(webClient, cache, new FastApiCircuitBreaker(registry, 5, 30),
+                new CpuFilterEngine(registry, false, 1, 0, 0, 0),
+                new FastApiConcurrencyLimiter(registry, true, 8, 1, 64, 100, 5000, 2000, 0.9), registry, 10,
+                20 * 1024 * 1024, 50, 4, 20 * 1024 * 1024);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        fastApi.disposeNow();
+    }
+
+    @Test
+    void heapStaysFlatAsImageSizeGrows() {
+        long small = peakHeapGrowth(SMALL_IMAGE);
+        long large = peakHeapGrowth(LARGE_IMAGE);
+
+        System.out.printf("Pico de heap: %d MB (1 MB), %d MB (64 MB)%n", small >> 20, large >> 20);
+        assertThat(large).isLessThan(MAX_HEAP_GROWTH);
+        assertThat(large - small).isLessThan(MAX_HEAP_GROWTH / 2);
+    }
+
+    private static long peakHeapGrowth(long imageBytes) {
+        responseBytes.set(imageBytes);
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long baseline = memory.getHeapMemoryUsage().getUsed();
+
+        AtomicLong peak = new AtomicLong(baseline);
+        Thread sampler = Thread.ofPlatform().daemon().start(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+
+        try {
+            AtomicLong received = new AtomicLong();
+            Flux.range(0, CONCURRENCY)
+                    .flatMap(i -> service.processNegative(new TestFilePart(uploads.incrementAndGet()), (long) CHUNK)
+                            .doOnNext(buffer -> {
+                                received.addAndGet(buffer.readableByteCount());
+                                DataBufferUtils.release(buffer);
+                            }), CONCURRENCY)
+                    .blockLast(Duration.ofSeconds(120));
+
+            assertThat(received.get()).isEqualTo(imageBytes * CONCURRENCY);
+        } finally {
+            sampler.interrupt();
+        }
+        return peak.get() - baseline;
+    }
+
+    private record TestFilePart(long index) implements FilePart {
+
+        @Override
+        public String name() {
+            return "file";
+        }
+
+        @Override
+        public String filename() {
+            return "image-" + index + ".png";
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return HttpHeaders.EMPTY;
+        }
+
+        @Override
+        public Flux<DataBuffer> content() {
+            return Flux.defer(() -> {
+                byte[] image = new byte[CHUNK];
+                ByteBuffer.wrap(image).putLong(index);
+                return Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(image));
+            });
+        }
+
+        @Override
+        public Mono<Void> transferTo(Path dest) {
+            return Mono.error(new UnsupportedOperationException());
+        }
+    }
+}
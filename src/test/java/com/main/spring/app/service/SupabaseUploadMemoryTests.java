@@ -0,0 +1,171 @@
+package com.main.spring.app.service;
+
+import io.netty.buffer.PooledByteBufAllocator;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Prueba de memoria de la subida a Supabase Storage.
+ *
+ * Un servidor Netty local hace de Supabase (las URLs de
+ * {@link SupabaseStorageService} se redirigen a él) y cuenta los bytes que le
+ * llegan. Las imágenes se generan en bloques de 64 KB según se piden, como un
+ * multipart real. El pico de heap no debe crecer con el tamaño de la imagen,
+ * y una subida mayor que {@code supabase.max-upload-bytes} se corta con 413
+ * sin leer el resto.
+ */
+class SupabaseUploadMemoryTests {
+
+    private static final int CHUNK = 64 * 1024;
+    private static final int CONCURRENCY = 8;
+    private static final long SMALL_IMAGE = 1024 * 1024;
+    private static final long LARGE_IMAGE = 64L * 1024 * 1024;
+    private static final long MAX_HEAP_GROWTH = 96L * 1024 * 1024;
+    private static final long MAX_POOLED_BYTES = 32L * 1024 * 1024;
+
+    private static final AtomicLong receivedBytes = new AtomicLong();
+    // Buffers de heap con pool: lo que se libera se reutiliza y el heap solo
+    // crece con los buffers que la subida retiene
+    private static final PooledByteBufAllocator allocator = new PooledByteBufAllocator(false);
+    private static final NettyDataBufferFactory buffers = new NettyDataBufferFactory(allocator);
+
+    private static DisposableServer supabase;
+    private static WebClient webClient;
+
+    @BeforeAll
+    static void setUp() {
+        supabase = HttpServer.create()
+                .port(0)
+                .handle((request, response) -> request.receive()
+                        .doOnNext(buffer -> receivedBytes.addAndGet(buffer.readableBytes()))
+                        .then()
+                        .then(response.sendString(Mono.just("{\"Key\":\"ok\"}")).then()))
+                .bindNow();
+
+        // El servicio construye https://<proyecto>.supabase.co/...: se envía al servidor local
+        webClient = WebClient.builder()
+                .filter(ExchangeFilterFunction.ofRequestProcessor(request -> Mono.just(ClientRequest.from(request)
+                        .url(UriComponentsBuilder.fromUri(request.url())
+                                .scheme("http").host("localhost").port(supabase.port())
+                                .build(true).toUri())
+                        .build())))
+                .build();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        supabase.disposeNow();
+    }
+
+    @Test
+    void heapStaysFlatAsImageSizeGrows() {
+        SupabaseStorageService service = service(128L * 1024 * 1024);
+
+        Peak small = peak(service, SMALL_IMAGE);
+        Peak large = peak(service, LARGE_IMAGE);
+
+        System.out.printf("Pico de heap: %d MB (1 MB), %d MB (64 MB); en el pool: %d MB, %d MB%n",
+                small.heap() >> 20, large.heap() >> 20, small.pooled() >> 20, large.pooled() >> 20);
+        assertThat(large.heap()).isLessThan(MAX_HEAP_GROWTH);
+        // El pool cuenta solo buffers vivos: no le afecta la basura pendiente del GC
+        assertThat(large.pooled()).isLessThan(MAX_POOLED_BYTES);
+    }
+
+    @Test
+    void uploadOverTheLimitIsCutWith413() {
+        long maxUploadBytes = 1024 * 1024;
+        SupabaseStorageService service = service(maxUploadBytes);
+        receivedBytes.set(0);
+        AtomicLong generated = new AtomicLong();
+
+        assertThatThrownBy(() -> service.uploadImage(image(16 * maxUploadBytes, generated), "big.png")
+                .block(Duration.ofSeconds(30)))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE));
+
+        // La subida se corta en el primer bloque que supera el límite
+        assertThat(generated.get()).isEqualTo(maxUploadBytes + CHUNK);
+        assertThat(receivedBytes.get()).isLessThanOrEqualTo(maxUploadBytes);
+
+        // Justo en el límite se acepta
+        assertThat(service.uploadImage(image(maxUploadBytes, new AtomicLong()), "limit.png")
+                .block(Duration.ofSeconds(30))).endsWith("_limit.png");
+    }
+
+    private static SupabaseStorageService service(long maxUploadBytes) {
+        SupabaseStorageService service = new SupabaseStorageService(webClient, maxUploadBytes);
+        ReflectionTestUtils.setField(service, "supabaseUrl", "https://proyecto.supabase.co");
+        ReflectionTestUtils.setField(service, "supabaseKey", "clave");
+        ReflectionTestUtils.setField(service, "supabaseBucket", "imagenes");
+        return service;
+    }
+
+    private record Peak(long heap, long pooled) {
+    }
+
+    private static Peak peak(SupabaseStorageService service, long imageBytes) {
+        receivedBytes.set(0);
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long baseline = memory.getHeapMemoryUsage().getUsed();
+
+        AtomicLong peak = new AtomicLong(baseline);
+        AtomicLong pooled = new AtomicLong();
+        Thread sampler = Thread.ofPlatform().daemon().start(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                pooled.accumulateAndGet(allocator.metric().usedHeapMemory(), Math::max);
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+
+        try {
+            Flux.range(0, CONCURRENCY)
+                    .flatMap(i -> service.uploadImage(image(imageBytes, new AtomicLong()), "image-" + i + ".png"),
+                            CONCURRENCY)
+                    .blockLast(Duration.ofSeconds(120));
+
+            assertThat(receivedBytes.get()).isEqualTo(imageBytes * CONCURRENCY);
+        } finally {
+            sampler.interrupt();
+        }
+        return new Peak(peak.get() - baseline, pooled.get());
+    }
+
+    private static Flux<DataBuffer> image(long bytes, AtomicLong generated) {
+        return Flux.range(0, (int) (bytes / CHUNK))
+                .map(i -> {
+                    generated.addAndGet(CHUNK);
+                    DataBuffer buffer = buffers.allocateBuffer(CHUNK);
+                    return buffer.writePosition(CHUNK);
+                });
+    }
+}
@@ -0,0 +1,292 @@
+package com.main.spring.app.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.UnpooledByteBufAllocator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import javax.imageio.ImageIO;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link ThumbnailService#tee(Flux)} con buffers Netty con contador de
+ * referencias: la subida libera cada buffer como lo haría el cliente de
+ * Supabase al escribirlo, y al terminar ningún buffer puede quedar retenido,
+ * termine la subida bien, mal o sin empezar.
+ */
+class ThumbnailServiceTests {
+
+    private static final int CHUNK = 8 * 1024;
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final LeakTrackingBufferFactory buffers = new LeakTrackingBufferFactory();
+    // Un solo hilo: un generador bloqueado haría fallar la siguiente prueba
+    private final ThumbnailService service = new ThumbnailService(new SimpleMeterRegistry(), true, 1, 0.8f, 4);
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void validImageProducesEveryThumbnailSize() throws IOException {
+        byte[] image = png(2000, 1000);
+        ThumbnailService.TeedUpload upload = service.tee(content(image));
+        AtomicLong uploaded = new AtomicLong();
+
+        List<ThumbnailService.Thumbnail> thumbnails = Mono.zip(upload(upload.content(), uploaded),
+                upload.thumbnails()).block(TIMEOUT).getT2();
+
+        assertThat(uploaded.get()).isEqualTo(image.length);
+        assertThat(thumbnails).extracting(ThumbnailService.Thumbnail::size)
+                .containsExactlyInAnyOrderElementsOf(ThumbnailService.SIZES);
+        for (ThumbnailService.Thumbnail thumbnail : thumbnails) {
+            BufferedImage jpeg = ImageIO.read(new ByteArrayInputStream(thumbnail.jpeg()));
+            assertThat(jpeg.getWidth()).isEqualTo(thumbnail.size());
+            assertThat(jpeg.getHeight()).isEqualTo(thumbnail.size() / 2);
+        }
+        buffers.assertAllReleased();
+    }
+
+    @Test
+    void resizeKeepsAspectRatioAndNeverEnlarges() {
+        BufferedImage portrait = new BufferedImage(1000, 3000, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage small = new BufferedImage(100, 40, BufferedImage.TYPE_INT_RGB);
+
+        BufferedImage resized = ThumbnailService.resize(portrait, 480);
+        assertThat(resized.getWidth()).isEqualTo(160);
+        assertThat(resized.getHeight()).isEqualTo(480);
+
+        BufferedImage notEnlarged = ThumbnailService.resize(small, 1080);
+        assertThat(notEnlarged.getWidth()).isEqualTo(100);
+        assertThat(notEnlarged.getHeight()).isEqualTo(40);
+    }
+
+    @Test
+    void garbageInputIsUploadedWithoutThumbnails() {
+        byte[] garbage = new byte[20 * CHUNK];
+        new Random(7).nextBytes(garbage);
+        ThumbnailService.TeedUpload upload = service.tee(content(garbage));
+        AtomicLong uploaded = new AtomicLong();
+
+        List<ThumbnailService.Thumbnail> thumbnails = Mono.zip(upload(upload.content(), uploaded),
+                upload.thumbnails()).block(TIMEOUT).getT2();
+
+        assertThat(uploaded.get()).isEqualTo(garbage.length);
+        assertThat(thumbnails).isEmpty();
+        buffers.assertAllReleased();
+    }
+
+    @Test
+    void cancelledUploadEndsThumbnailsAndReleasesBuffers() throws Exception {
+        byte[] image = png(2000, 1000);
+        // El cliente deja de enviar a mitad de la imagen
+        Flux<DataBuffer> stalled = Flux.concat(content(image).take(image.length / CHUNK / 2), Flux.never());
+        ThumbnailService.TeedUpload upload = service.tee(stalled);
+        AtomicLong uploaded = new AtomicLong();
+
+        CompletableFuture<List<ThumbnailService.Thumbnail>> thumbnails = upload.thumbnails().toFuture();
+        Disposable uploading = upload(upload.content(), uploaded).subscribe();
+        awaitUntil(() -> uploaded.get() > 0);
+        uploading.dispose();
+
+        assertThat(thumbnails.get(TIMEOUT.toSeconds(), TimeUnit.SECONDS)).isEmpty();
+        buffers.assertAllReleased();
+        assertServiceStillWorks();
+    }
+
+    @Test
+    void uploadFailingBeforeSubscribingTheBodyReleasesBuffers() throws IOException {
+        byte[] image = png(2000, 1000);
+        AtomicInteger subscriptions = new AtomicInteger();
+        ThumbnailService.TeedUpload upload = service.tee(content(image)
+                .doOnSubscribe(subscription -> subscriptions.incrementAndGet()));
+
+        // Como PostRepositoryImpl: la subida falla al conectar con Supabase y
+        // zip cancela las miniaturas, que ya estaban esperando la imagen
+        Mono<String> failedUpload = Mono.delay(Duration.ofMillis(200))
+                .then(Mono.error(new ConnectException("Connection refused")));
+        Mono<Object> post = Mono.zip(failedUpload, upload.thumbnails()).cast(Object.class)
+                .onErrorResume(ConnectException.class, e -> Mono.just("error"));
+
+        assertThat(post.block(TIMEOUT)).isEqualTo("error");
+        assertThat(subscriptions.get()).isZero();
+        buffers.assertAllReleased();
+        assertServiceStillWorks();
+    }
+
+    @Test
+    void uploadWaitsWhenTheCopyQueueIsFull() throws IOException {
+        byte[] image = png(2000, 1000);
+        ThumbnailService.TeedUpload upload = service.tee(content(image));
+        AtomicInteger uploadedChunks = new AtomicInteger();
+
+        // Sin generador leyendo, la subida se para con la cola llena (4 buffers)
+        Disposable uploading = upload.content()
+                .doOnNext(buffer -> {
+                    uploadedChunks.incrementAndGet();
+                    DataBufferUtils.release(buffer);
+                })
+                .subscribe();
+        awaitUntil(() -> uploadedChunks.get() == 4);
+        sleep(200);
+        assertThat(uploadedChunks.get()).isEqualTo(4);
+        // Más el que espera hueco y el que concatMap pide por adelantado
+        assertThat(buffers.allocated()).isEqualTo(6);
+
+        List<ThumbnailService.Thumbnail> thumbnails = upload.thumbnails().block(TIMEOUT);
+
+        assertThat(thumbnails).hasSize(ThumbnailService.SIZES.size());
+        awaitUntil(uploading::isDisposed);
+        assertThat(uploadedChunks.get()).isEqualTo((image.length + CHUNK - 1) / CHUNK);
+        buffers.assertAllReleased();
+    }
+
+    private void assertServiceStillWorks() throws IOException {
+        byte[] image = png(400, 200);
+        ThumbnailService.TeedUpload upload = service.tee(content(image));
+
+        List<ThumbnailService.Thumbnail> thumbnails = Mono.zip(upload(upload.content(), new AtomicLong()),
+                upload.thumbnails()).block(TIMEOUT).getT2();
+
+        assertThat(thumbnails).hasSize(ThumbnailService.SIZES.size());
+    }
+
+    // Los buffers se crean al pedirlos, como los de una subida real
+    private Flux<DataBuffer> content(byte[] bytes) {
+        return Flux.range(0, (bytes.length + CHUNK - 1) / CHUNK)
+                .map(i -> {
+                    int offset = i * CHUNK;
+                    int length = Math.min(CHUNK, bytes.length - offset);
+                    return buffers.allocateBuffer(length).write(bytes, offset, length);
+                });
+    }
+
+    private static Mono<Long> upload(Flux<DataBuffer> content, AtomicLong uploaded) {
+        return content
+                .doOnNext(buffer -> {
+                    uploaded.addAndGet(buffer.readableByteCount());
+                    DataBufferUtils.release(buffer);
+                })
+                .then(Mono.fromSupplier(uploaded::get));
+    }
+
+    // Ruido para que el PNG ocupe muchos buffers
+    private static byte[] png(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, width / 2, height / 2);
+        g.dispose();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+        return output.toByteArray();
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("tiempo de espera agotado").isLessThan(deadline);
+            sleep(10);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Buffers Netty sin pool que recuerda todo lo que reparte, para comprobar
+     * al final que el contador de referencias de cada uno llegó a cero.
+     */
+    private static final class LeakTrackingBufferFactory implements DataBufferFactory {
+
+        private final NettyDataBufferFactory delegate = new NettyDataBufferFactory(new UnpooledByteBufAllocator(false));
+        private final List<NettyDataBuffer> issued = new CopyOnWriteArrayList<>();
+
+        int allocated() {
+            return issued.size();
+        }
+
+        void assertAllReleased() {
+            awaitUntil(() -> issued.stream().allMatch(buffer -> buffer.getNativeBuffer().refCnt() == 0));
+        }
+
+        private <T extends DataBuffer> T track(T buffer) {
+            issued.add((NettyDataBuffer) buffer);
+            return buffer;
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public DataBuffer allocateBuffer() {
+            return track(delegate.allocateBuffer());
+        }
+
+        @Override
+        public DataBuffer allocateBuffer(int initialCapacity) {
+            return track(delegate.allocateBuffer(initialCapacity));
+        }
+
+        @Override
+        public DataBuffer wrap(ByteBuffer byteBuffer) {
+            return track(delegate.wrap(byteBuffer));
+        }
+
+        @Override
+        public DataBuffer wrap(byte[] bytes) {
+            return track(delegate.wrap(bytes));
+        }
+
+        @Override
+        public DataBuffer join(List<? extends DataBuffer> dataBuffers) {
+            return track(delegate.join(dataBuffers));
+        }
+
+        @Override
+        public boolean isDirect() {
+            return delegate.isDirect();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.main.spring.app.service.cpu;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import reactor.core.Disposable;
+import reactor.util.retry.Retry;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Límites de {@link CpuFilterEngine}: píxeles por imagen, tamaño de kernel e
+ * imágenes en curso a la vez.
+ */
+class CpuFilterEngineTests {
+
+    private final CpuFilterEngine engine = new CpuFilterEngine(new SimpleMeterRegistry(), true, 1,
+            20 * 1024 * 1024, 4_000_000, 1);
+
+    @AfterEach
+    void tearDown() {
+        engine.shutdown();
+    }
+
+    @Test
+    void imageOverPixelLimitIsRejectedWith413() throws IOException {
+        byte[] huge = png(2001, 2000);
+
+        assertThatThrownBy(() -> engine.apply("negative", huge, Map.of()).block(Duration.ofSeconds(10)))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE));
+    }
+
+    @Test
+    void kernelOverMaximumIsRejectedWith400() throws IOException {
+        byte[] image = png(64, 64);
+
+        assertThatThrownBy(() -> engine.apply("gaussian", image,
+                Map.of("kernel_size", CpuFilters.MAX_KERNEL_SIZE + 2)).block(Duration.ofSeconds(10)))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+    }
+
+    @Test
+    void requestOverConcurrencyLimitFailsFastWith503() throws IOException {
+        byte[] slow = png(2000, 2000);
+        byte[] small = png(64, 64);
+
+        // El permiso se toma al suscribirse, antes de pasar al pool
+        Disposable running = engine.apply("gaussian", slow, Map.of("kernel_size", CpuFilters.MAX_KERNEL_SIZE))
+                .subscribe();
+        try {
+            assertThatThrownBy(() -> engine.apply("negative", small, Map.of()).block(Duration.ofSeconds(1)))
+                    .isInstanceOfSatisfying(ResponseStatusException.class,
+                            e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+        } finally {
+            running.dispose();
+        }
+
+        // La tarea cancelada sigue hasta terminar y después devuelve el permiso
+        byte[] result = engine.apply("negative", small, Map.of())
+                .retryWhen(Retry.fixedDelay(300, Duration.ofMillis(100))
+                        .filter(e -> e instanceof ResponseStatusException))
+                .block(Duration.ofSeconds(60));
+        assertThat(result).isNotEmpty();
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+        return output.toByteArray();
+    }
+}
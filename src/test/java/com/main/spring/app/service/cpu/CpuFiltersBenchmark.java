@@ -0,0 +1,97 @@
+package com.main.spring.app.service.cpu;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks JMH de {@link CpuFilters} por filtro y tamaño de imagen, con
+ * los parámetros por defecto de {@code ImageProcessingController}.
+ *
+ * No se ejecutan con {@code mvn test}. Para lanzarlos:
+ * {@code ./mvnw test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.main.spring.app.service.cpu.CpuFiltersBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CpuFiltersBenchmark {
+
+    @Param({ "640x480", "1920x1080", "4000x3000" })
+    public String size;
+
+    private ForkJoinPool pool;
+    private int[] pixels;
+    private int width;
+    private int height;
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        width = Integer.parseInt(dimensions[0]);
+        height = Integer.parseInt(dimensions[1]);
+
+        // Ruido más un degradado, para que Canny encuentre bordes
+        Random random = new Random(42);
+        pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int base = (x * 255 / width + y * 255 / height) / 2;
+                int noise = random.nextInt(32);
+                int v = Math.min(255, base + noise);
+                pixels[y * width + x] = 0xFF000000 | (v << 16) | ((255 - v) << 8) | (v / 2);
+            }
+        }
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public int[] negative() {
+        return CpuFilters.negative(pool, pixels, width, height);
+    }
+
+    @Benchmark
+    public int[] gaussian() {
+        return CpuFilters.gaussian(pool, pixels, width, height, 5, 1.4f);
+    }
+
+    @Benchmark
+    public int[] emboss() {
+        return CpuFilters.emboss(pool, pixels, width, height, 3, 128);
+    }
+
+    @Benchmark
+    public int[] canny() {
+        return CpuFilters.canny(pool, pixels, width, height, 5, 1.4f, null, null);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CpuFiltersBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
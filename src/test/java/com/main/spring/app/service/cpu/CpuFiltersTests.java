@@ -0,0 +1,80 @@
+package com.main.spring.app.service.cpu;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Propiedades de {@link CpuFilters} que no dependen de coincidir píxel a píxel
+ * con FastAPI. Las imágenes superan {@link CpuFilters#TILE_PIXELS} para que
+ * el trabajo se reparta en varias franjas.
+ */
+class CpuFiltersTests {
+
+    private static final int WIDTH = 512;
+    private static final int HEIGHT = 300;
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int BLACK = 0xFF000000;
+
+    private static final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @AfterAll
+    static void shutdown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void negativeTwiceReturnsTheOriginal() {
+        Random random = new Random(42);
+        int[] src = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = random.nextInt();
+        }
+
+        int[] twice = CpuFilters.negative(pool, CpuFilters.negative(pool, src, WIDTH, HEIGHT), WIDTH, HEIGHT);
+
+        assertThat(twice).isEqualTo(src);
+    }
+
+    @Test
+    void gaussianLeavesAConstantImageUnchanged() {
+        int[] src = new int[WIDTH * HEIGHT];
+        Arrays.fill(src, 0xFF3C78B4);
+
+        int[] blurred = CpuFilters.gaussian(pool, src, WIDTH, HEIGHT, CpuFilters.MAX_KERNEL_SIZE, 0);
+
+        assertThat(blurred).isEqualTo(src);
+    }
+
+    @Test
+    void cannyMarksOnlyAVerticalStepEdge() {
+        int edge = WIDTH / 2;
+        int[] src = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            Arrays.fill(src, y * WIDTH, y * WIDTH + edge, BLACK);
+            Arrays.fill(src, y * WIDTH + edge, (y + 1) * WIDTH, WHITE);
+        }
+
+        int[] edges = CpuFilters.canny(pool, src, WIDTH, HEIGHT, 5, 1.4f, 50.0, 150.0);
+
+        // Canny no marca la primera ni la última fila
+        for (int y = 1; y < HEIGHT - 1; y++) {
+            boolean marked = false;
+            for (int x = 0; x < WIDTH; x++) {
+                int pixel = edges[y * WIDTH + x];
+                if (pixel == WHITE) {
+                    assertThat(x).as("borde en la fila %d", y).isBetween(edge - 1, edge);
+                    marked = true;
+                } else {
+                    assertThat(pixel).isEqualTo(BLACK);
+                }
+            }
+            assertThat(marked).as("fila %d sin borde", y).isTrue();
+        }
+    }
+}